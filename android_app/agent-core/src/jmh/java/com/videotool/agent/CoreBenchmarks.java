@@ -0,0 +1,128 @@
+package com.videotool.agent;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Agent hot paths on the JVM: pull decoding (streaming and the org.json
+// fallback), plan compilation, task persistence and the prefetch queue.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CoreBenchmarks {
+    private static final String[] TYPES = {"comment_warmup", "tiktok_dm", "zalo_im", "wa_im"};
+    private static final String[] CHANNELS = {"auto", "auto", "zalo", "wa"};
+
+    @Param({"1", "10"})
+    public int batch;
+
+    private String body;
+    private List<AgentTask> tasks;
+    private JSONArray persistedQueue;
+
+    @Setup
+    public void setUp() throws Exception {
+        body = pullBody(batch);
+        tasks = AgentResponseDecoder.decodePull(new StringReader(body)).data.tasks;
+        AgentTaskQueue queue = new AgentTaskQueue(tasks.size());
+        queue.offerAll(tasks, AgentTaskQueue.DEFAULT_LEASE_TTL_MS);
+        persistedQueue = queue.toJson();
+    }
+
+    @Benchmark
+    public AgentApiClient.PullResult decodePullStream() throws IOException {
+        return AgentResponseDecoder.decodePull(new StringReader(body)).data;
+    }
+
+    @Benchmark
+    public void decodePullOrgJson(Blackhole bh) throws JSONException {
+        JSONArray items = new JSONObject(body).getJSONObject("data").getJSONArray("tasks");
+        for (int i = 0; i < items.length(); i++) {
+            bh.consume(AgentTask.fromJson(items.getJSONObject(i)));
+        }
+    }
+
+    @Benchmark
+    public void planCompile(Blackhole bh) {
+        for (AgentTask task : tasks) {
+            bh.consume(ExecutionPlan.compile(task));
+        }
+    }
+
+    @Benchmark
+    public void taskToJson(Blackhole bh) {
+        for (AgentTask task : tasks) {
+            bh.consume(task.toJson().toString());
+        }
+    }
+
+    @Benchmark
+    public void queueRestoreAndDrain(Blackhole bh) {
+        AgentTaskQueue queue = new AgentTaskQueue(tasks.size());
+        queue.restore(persistedQueue);
+        AgentTask task;
+        while ((task = queue.poll()) != null) {
+            bh.consume(task);
+        }
+    }
+
+    // Same shape as MobileAgent::pull, with a tasks array for prefetching.
+    private static String pullBody(int batch) throws JSONException {
+        JSONArray tasks = new JSONArray();
+        for (int i = 0; i < batch; i++) {
+            int id = i + 1;
+            JSONObject channels = new JSONObject();
+            channels.put("whatsapp", "+84 912 345 " + String.format("%03d", id));
+            channels.put("zalo", "0912345" + String.format("%03d", id));
+            channels.put("wa_me", "");
+            channels.put("zalo_open", "");
+            JSONObject payload = new JSONObject();
+            payload.put("channels", channels);
+            payload.put("template_id", 3);
+            payload.put("product_id", 0);
+            payload.put("remark", "");
+            payload.put("comment_text", "Video hay quá bạn ơi #" + id);
+            JSONObject influencer = new JSONObject();
+            influencer.put("id", id);
+            influencer.put("tiktok_id", "@creator_" + id);
+            influencer.put("nickname", "Creator " + id);
+            influencer.put("region", "VN");
+            influencer.put("last_contacted_at", "");
+            influencer.put("last_commented_at", "");
+            JSONObject task = new JSONObject();
+            task.put("id", id);
+            task.put("task_type", TYPES[i % TYPES.length]);
+            task.put("target_channel", CHANNELS[i % CHANNELS.length]);
+            task.put("priority", 100 + (i % 3) * 60);
+            task.put("payload", payload);
+            task.put("rendered_text", "Xin chào Creator " + id + ", bên mình muốn hợp tác với bạn.");
+            task.put("execution_hint", "auto_fill_then_wait_manual_send");
+            task.put("influencer", influencer);
+            tasks.put(task);
+        }
+        JSONObject data = new JSONObject();
+        data.put("task", tasks.get(0));
+        data.put("tasks", tasks);
+        data.put("lease_ttl_sec", 600);
+        data.put("server_time", "2024-01-01 00:00:00");
+        JSONObject root = new JSONObject();
+        root.put("code", 0);
+        root.put("msg", "ok");
+        root.put("data", data);
+        return root.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package com.videotool.agent;
+
+import java.util.Random;
+
+public class AdaptivePollScheduler implements PollScheduler {
+    public static final long MAX_IDLE_DELAY_MS = 60000L;
+    public static final long MAX_ERROR_DELAY_MS = 120000L;
+    private static final long ERROR_BASE_DELAY_MS = 5000L;
+    private static final long LONG_POLL_REARM_MS = 100L;
+    private static final int MAX_SHIFT = 10;
+
+    private final long baseDelayMs;
+    private final Random random;
+    private int emptyStreak = 0;
+    private int errorStreak = 0;
+
+    public AdaptivePollScheduler(AgentConfig config) {
+        this(config == null ? AgentConfig.DEFAULT_POLL_INTERVAL_SEC * 1000L : config.getPollIntervalSec() * 1000L, new Random());
+    }
+
+    public AdaptivePollScheduler(long baseDelayMs, Random random) {
+        this.baseDelayMs = Math.max(200L, baseDelayMs);
+        this.random = random == null ? new Random() : random;
+    }
+
+    @Override
+    public synchronized long onTaskReceived() {
+        emptyStreak = 0;
+        errorStreak = 0;
+        return 0L;
+    }
+
+    @Override
+    public synchronized long onTaskCompleted() {
+        emptyStreak = 0;
+        errorStreak = 0;
+        return 0L;
+    }
+
+    @Override
+    public synchronized long onEmpty(String reason, boolean longPolled) {
+        errorStreak = 0;
+        if (longPolled) {
+            // The server already held the request for the wait window; re-arm right away.
+            emptyStreak = 0;
+            return LONG_POLL_REARM_MS;
+        }
+        emptyStreak++;
+        return jitter(backoff(baseDelayMs, emptyStreak, MAX_IDLE_DELAY_MS));
+    }
+
+    @Override
+    public synchronized long onError(String errorMessage) {
+        errorStreak++;
+        long base = Math.max(ERROR_BASE_DELAY_MS, baseDelayMs);
+        return jitter(backoff(base, errorStreak, MAX_ERROR_DELAY_MS));
+    }
+
+    @Override
+    public synchronized void reset() {
+        emptyStreak = 0;
+        errorStreak = 0;
+    }
+
+    private static long backoff(long base, int streak, long cap) {
+        int shift = Math.max(0, Math.min(MAX_SHIFT, streak - 1));
+        long delay = base << shift;
+        return Math.min(cap, Math.max(base, delay));
+    }
+
+    // Equal jitter: keep half of the delay, randomize the rest so a fleet does not poll in lockstep.
+    private long jitter(long delay) {
+        long half = delay / 2;
+        if (half <= 0) {
+            return delay;
+        }
+        return half + (long) (random.nextDouble() * half);
+    }
+}
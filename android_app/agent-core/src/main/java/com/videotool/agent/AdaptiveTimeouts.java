@@ -0,0 +1,156 @@
+package com.videotool.agent;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Learns how long an operation normally takes on this device, per key (a
+// channel, or an app's automation step), and derives its timeout as
+// p99 x 1.5 clamped to [minMs, maxMs]. Until a key has MIN_SAMPLES
+// samples the caller's default applies. Counts are halved once they
+// reach MAX_SAMPLES, so an app update or a slower network shows up within a
+// few hundred tasks instead of being outvoted by old history.
+//
+// A timeout is a censored sample: the operation took at least as long as the
+// limit. It is recorded at the limit, so if timeouts become common p99 climbs
+// past it and the timeout grows back. After FALLBACK_AFTER_TIMEOUTS in a row
+// the caller's default applies again until the next completion.
+public class AdaptiveTimeouts {
+    static final int MIN_SAMPLES = 20;
+    static final int MAX_SAMPLES = 400;
+    static final int FALLBACK_AFTER_TIMEOUTS = 3;
+    private static final double HEADROOM = 1.5d;
+    // Scripted steps keep a second, waited-only series next to their own.
+    private static final int MAX_KEYS = 128;
+
+    private final long minMs;
+    private final long maxMs;
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> timeoutStreaks = new ConcurrentHashMap<>();
+
+    public AdaptiveTimeouts(long minMs, long maxMs) {
+        this.minMs = minMs;
+        this.maxMs = Math.max(minMs, maxMs);
+    }
+
+    public void record(String key, long durationMs) {
+        if (key == null || key.isEmpty() || durationMs < 0) {
+            return;
+        }
+        timeoutStreaks.remove(key);
+        addSample(key, durationMs);
+    }
+
+    // limitMs is the timeout that just expired.
+    public void recordTimeout(String key, long limitMs) {
+        if (key == null || key.isEmpty() || limitMs < 0) {
+            return;
+        }
+        AtomicInteger streak = timeoutStreaks.get(key);
+        if (streak == null) {
+            timeoutStreaks.putIfAbsent(key, new AtomicInteger());
+            streak = timeoutStreaks.get(key);
+        }
+        streak.incrementAndGet();
+        addSample(key, limitMs);
+    }
+
+    public long timeoutFor(String key, long defaultMs) {
+        LatencyHistogram histogram = key == null ? null : histograms.get(key);
+        if (histogram == null || histogram.getCount() < MIN_SAMPLES) {
+            return defaultMs;
+        }
+        long learned = clamp((long) (histogram.percentile(0.99) * HEADROOM));
+        AtomicInteger streak = timeoutStreaks.get(key);
+        if (streak != null && streak.get() >= FALLBACK_AFTER_TIMEOUTS) {
+            return Math.max(defaultMs, learned);
+        }
+        return learned;
+    }
+
+    // Median completion time, for spacing retries: re-checking much sooner
+    // than the UI usually takes is wasted work.
+    public long typicalFor(String key, long defaultMs) {
+        LatencyHistogram histogram = key == null ? null : histograms.get(key);
+        if (histogram == null || histogram.getCount() < MIN_SAMPLES) {
+            return defaultMs;
+        }
+        return histogram.percentile(0.50);
+    }
+
+    public long samples(String key) {
+        LatencyHistogram histogram = key == null ? null : histograms.get(key);
+        return histogram == null ? 0L : histogram.getCount();
+    }
+
+    public JSONObject toJson() throws JSONException {
+        JSONObject out = new JSONObject();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            JSONArray buckets = new JSONArray();
+            for (long n : histogram.bucketCounts()) {
+                buckets.put(n);
+            }
+            JSONObject item = new JSONObject();
+            item.put("buckets", buckets);
+            item.put("sum", histogram.getSum());
+            item.put("max", histogram.getMax());
+            out.put(entry.getKey(), item);
+        }
+        return out;
+    }
+
+    public void restore(JSONObject raw) {
+        if (raw == null) {
+            return;
+        }
+        Iterator<String> keys = raw.keys();
+        while (keys.hasNext() && histograms.size() < MAX_KEYS) {
+            String key = keys.next();
+            JSONObject item = raw.optJSONObject(key);
+            JSONArray buckets = item == null ? null : item.optJSONArray("buckets");
+            if (buckets == null) {
+                continue;
+            }
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.optLong(i, 0L);
+            }
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.restore(counts, item.optLong("sum", 0L), item.optLong("max", 0L));
+            histograms.put(key, histogram);
+        }
+    }
+
+    private void addSample(String key, long durationMs) {
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            if (histograms.size() >= MAX_KEYS) {
+                return;
+            }
+            histograms.putIfAbsent(key, new LatencyHistogram());
+            histogram = histograms.get(key);
+        }
+        histogram.record(durationMs);
+        if (histogram.getCount() >= MAX_SAMPLES) {
+            decay(histogram);
+        }
+    }
+
+    private static void decay(LatencyHistogram histogram) {
+        long[] counts = histogram.bucketCounts();
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] /= 2;
+        }
+        histogram.restore(counts, histogram.getSum() / 2, histogram.getMax());
+    }
+
+    private long clamp(long value) {
+        return Math.max(minMs, Math.min(maxMs, value));
+    }
+}
@@ -0,0 +1,659 @@
+package com.videotool.agent;
+
+import com.google.gson.stream.MalformedJsonException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class AgentApiClient {
+    public static final String AGENT_VERSION = "android-agent/1.1.0";
+    public static final String IDEMPOTENCY_HEADER = "Idempotency-Key";
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final long RETRY_AFTER_MAX_MS = 5 * 60 * 1000L;
+    private static ScheduledExecutorService retryTimer;
+
+    private final OkHttpClient client;
+    private final CircuitBreaker breaker = new CircuitBreaker();
+    private final RetryPolicy pullPolicy = RetryPolicy.forPull();
+    private final RetryPolicy reportPolicy = RetryPolicy.forReport();
+    private OkHttpClient longPollClient;
+    private int longPollClientWaitSec = -1;
+
+    public AgentApiClient() {
+        this(NetworkStack.agent());
+    }
+
+    public AgentApiClient(OkHttpClient client) {
+        this.client = client;
+    }
+
+    public void prewarm(AgentConfig config) {
+        if (config != null && config.isValid()) {
+            NetworkStack.prewarm(config.getAdminBase());
+        }
+    }
+
+    public OkHttpClient getHttpClient() {
+        return client;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    // How long callers should hold off before the next call will be let through.
+    public long retryAfterMs() {
+        return breaker.remainingOpenMs();
+    }
+
+    public static String newIdempotencyKey() {
+        return UUID.randomUUID().toString();
+    }
+
+    public interface ApiCallback<T> {
+        void onSuccess(T result);
+
+        void onError(String errorMessage);
+    }
+
+    public static class PullResult {
+        public final AgentTask task;
+        public final List<AgentTask> tasks;
+        public final String reason;
+        public final String serverTime;
+        public final long leaseTtlMs;
+        public final boolean longPolled;
+        public final String pushUrl;
+        // Raw JSON of server-provided UI selectors, empty when the server sends none.
+        public final String selectors;
+        // Raw JSON of a server automation script update, empty when none.
+        public final String scripts;
+
+        public PullResult(AgentTask task, String reason, String serverTime) {
+            this(task == null ? null : Collections.singletonList(task), reason, serverTime, 0L, false, "", "", "");
+        }
+
+        public PullResult(
+                List<AgentTask> tasks,
+                String reason,
+                String serverTime,
+                long leaseTtlMs,
+                boolean longPolled,
+                String pushUrl,
+                String selectors,
+                String scripts
+        ) {
+            List<AgentTask> list = new ArrayList<>();
+            if (tasks != null) {
+                for (AgentTask item : tasks) {
+                    if (item != null) {
+                        list.add(item);
+                    }
+                }
+            }
+            this.tasks = Collections.unmodifiableList(list);
+            this.task = list.isEmpty() ? null : list.get(0);
+            this.reason = reason == null ? "" : reason;
+            this.serverTime = serverTime == null ? "" : serverTime;
+            this.leaseTtlMs = Math.max(0L, leaseTtlMs);
+            this.longPolled = longPolled;
+            this.pushUrl = pushUrl == null ? "" : pushUrl.trim();
+            this.selectors = selectors == null ? "" : selectors;
+            this.scripts = scripts == null ? "" : scripts;
+        }
+    }
+
+    public interface BatchCallback {
+        void onSuccess(List<ReportResult> results);
+
+        void onUnsupported();
+
+        void onError(String errorMessage, boolean retryable);
+    }
+
+    public static class ReportResult {
+        public final int taskStatus;
+        public final String event;
+        public final String error;
+
+        public ReportResult(int taskStatus, String event) {
+            this(taskStatus, event, "");
+        }
+
+        public ReportResult(int taskStatus, String event, String error) {
+            this.taskStatus = taskStatus;
+            this.event = event == null ? "" : event;
+            this.error = error == null ? "" : error;
+        }
+    }
+
+    public void pullTask(final AgentConfig config, final ApiCallback<PullResult> callback) {
+        pullTaskInternal(config, 1, 0, callback, false, null);
+    }
+
+    public void pullTaskAuto(final AgentConfig config, final ApiCallback<PullResult> callback) {
+        pullTaskInternal(config, 1, 0, callback, true, null);
+    }
+
+    public void pullTasks(final AgentConfig config, final int limit, final ApiCallback<PullResult> callback) {
+        pullTaskInternal(config, limit, config.getLongPollSec(), callback, false, null);
+    }
+
+    public void pullTasksAuto(final AgentConfig config, final int limit, final ApiCallback<PullResult> callback) {
+        pullTaskInternal(config, limit, config.getLongPollSec(), callback, true, null);
+    }
+
+    // Comment warmups from the regular queue, for auto mode: pull_auto only serves
+    // auto DMs. No long poll, this follows an auto pull that already waited.
+    public void pullCommentTasks(final AgentConfig config, final int limit, final ApiCallback<PullResult> callback) {
+        pullTaskInternal(config, limit, 0, callback, false,
+                Collections.singletonList("comment_warmup"));
+    }
+
+    public void report(
+            final AgentConfig config,
+            final int taskId,
+            final String event,
+            final String renderedText,
+            final String errorCode,
+            final String errorMessage,
+            final String screenshotPath,
+            final ApiCallback<ReportResult> callback
+    ) {
+        report(config, adHocEvent(taskId, event, renderedText, errorCode, errorMessage, screenshotPath, false), callback);
+    }
+
+    public void reportAuto(
+            final AgentConfig config,
+            final int taskId,
+            final String event,
+            final String renderedText,
+            final String errorCode,
+            final String errorMessage,
+            final String screenshotPath,
+            final ApiCallback<ReportResult> callback
+    ) {
+        report(config, adHocEvent(taskId, event, renderedText, errorCode, errorMessage, screenshotPath, true), callback);
+    }
+
+    // Sends one outbox event to report or report_auto, depending on the event's mode.
+    public void report(final AgentConfig config, final ReportOutbox.Event event, final ApiCallback<ReportResult> callback) {
+        reportInternal(config, event, callback);
+    }
+
+    private void pullTaskInternal(
+            final AgentConfig config,
+            final int limit,
+            final int waitSec,
+            final ApiCallback<PullResult> callback,
+            final boolean autoMode,
+            final List<String> onlyTypes
+    ) {
+        try {
+            String url = config.getAdminBase() + (autoMode ? "/mobile_agent/pull_auto" : "/mobile_agent/pull");
+            JSONObject payload = new JSONObject();
+            payload.put("token", config.getToken());
+            payload.put("device_code", config.getDeviceCode());
+            payload.put("agent_version", AGENT_VERSION);
+            payload.put("limit", Math.max(1, Math.min(10, limit)));
+            if (waitSec > 0) {
+                payload.put("wait_sec", waitSec);
+            }
+            JSONArray taskTypes = new JSONArray();
+            if (onlyTypes != null) {
+                for (String type : onlyTypes) {
+                    taskTypes.put(type);
+                }
+            } else if (autoMode) {
+                boolean includeZalo = false;
+                boolean includeWa = false;
+                for (String type : config.getTaskTypes()) {
+                    String key = type == null ? "" : type.trim().toLowerCase();
+                    if ("zalo_im".equals(key)) {
+                        includeZalo = true;
+                    }
+                    if ("wa_im".equals(key)) {
+                        includeWa = true;
+                    }
+                }
+                if (!includeZalo && !includeWa) {
+                    includeZalo = true;
+                    includeWa = true;
+                }
+                if (includeZalo) {
+                    taskTypes.put("zalo_auto_dm");
+                }
+                if (includeWa) {
+                    taskTypes.put("wa_auto_dm");
+                }
+            } else {
+                for (String type : config.getTaskTypes()) {
+                    taskTypes.put(type);
+                }
+            }
+            payload.put("task_types", taskTypes);
+            JSONObject metrics = AgentMetrics.get().takeUploadIfDue();
+            if (metrics != null) {
+                payload.put("metrics", metrics);
+            }
+
+            Request request = buildPostRequest(url, config, payload, "");
+            send(clientForWait(waitSec), request, pullPolicy, "pull", new Exchange() {
+                @Override
+                public void onFailure(String errorMessage, boolean retryable) {
+                    callback.onError(errorMessage);
+                }
+
+                @Override
+                public void onResponse(Response response) throws IOException {
+                    if (!response.isSuccessful()) {
+                        callback.onError("pull_http_" + response.code() + ": " + truncate(readBody(response)));
+                        return;
+                    }
+                    AgentResponseDecoder.Envelope<PullResult> envelope;
+                    try (ResponseBody body = response.body()) {
+                        if (body == null) {
+                            callback.onError("pull_non_json: empty_body");
+                            return;
+                        }
+                        envelope = AgentResponseDecoder.decodePull(body.charStream());
+                    } catch (IOException | RuntimeException e) {
+                        if (isMalformed(e)) {
+                            callback.onError("pull_non_json: " + safeMessage(e));
+                        } else {
+                            callback.onError("pull_request_failed: " + safeMessage(e));
+                        }
+                        return;
+                    }
+                    if (!envelope.isOk()) {
+                        callback.onError("pull_failed: " + (envelope.msg.isEmpty() ? "unknown" : envelope.msg));
+                        return;
+                    }
+                    callback.onSuccess(envelope.data);
+                }
+            });
+        } catch (Exception e) {
+            callback.onError("pull_build_error: " + safeMessage(e));
+        }
+    }
+
+    private void reportInternal(
+            final AgentConfig config,
+            final ReportOutbox.Event event,
+            final ApiCallback<ReportResult> callback
+    ) {
+        try {
+            String url = config.getAdminBase() + (event.autoMode ? "/mobile_agent/report_auto" : "/mobile_agent/report");
+            JSONObject payload = new JSONObject();
+            payload.put("token", config.getToken());
+            payload.put("device_code", config.getDeviceCode());
+            payload.put("task_id", event.taskId);
+            payload.put("event", event.event);
+            payload.put("rendered_text", event.renderedText);
+            payload.put("error_code", event.errorCode);
+            payload.put("error_message", event.errorMessage);
+            payload.put("screenshot_path", event.screenshotPath);
+            payload.put("duration_ms", event.durationMs);
+            putTimings(payload, event.timings);
+            payload.put("agent_version", AGENT_VERSION);
+            payload.put("idempotency_key", event.idempotencyKey);
+
+            Request request = buildPostRequest(url, config, payload, event.idempotencyKey);
+            send(client, request, reportPolicy, "report", new Exchange() {
+                @Override
+                public void onFailure(String errorMessage, boolean retryable) {
+                    callback.onError(errorMessage);
+                }
+
+                @Override
+                public void onResponse(Response response) throws IOException {
+                    if (!response.isSuccessful()) {
+                        callback.onError("report_http_" + response.code() + ": " + truncate(readBody(response)));
+                        return;
+                    }
+                    AgentResponseDecoder.Envelope<ReportResult> envelope;
+                    try (ResponseBody body = response.body()) {
+                        if (body == null) {
+                            callback.onError("report_non_json: empty_body");
+                            return;
+                        }
+                        envelope = AgentResponseDecoder.decodeReport(body.charStream());
+                    } catch (IOException | RuntimeException e) {
+                        if (isMalformed(e)) {
+                            callback.onError("report_non_json: " + safeMessage(e));
+                        } else {
+                            callback.onError("report_request_failed: " + safeMessage(e));
+                        }
+                        return;
+                    }
+                    if (!envelope.isOk()) {
+                        callback.onError("report_failed: " + (envelope.msg.isEmpty() ? "unknown" : envelope.msg));
+                        return;
+                    }
+                    callback.onSuccess(envelope.data);
+                }
+            });
+        } catch (Exception e) {
+            callback.onError("report_build_error: " + safeMessage(e));
+        }
+    }
+
+    public void reportBatch(
+            final AgentConfig config,
+            final List<ReportOutbox.Event> events,
+            final boolean autoMode,
+            final BatchCallback callback
+    ) {
+        try {
+            String url = config.getAdminBase() + (autoMode ? "/mobile_agent/report_auto_batch" : "/mobile_agent/report_batch");
+            JSONObject payload = new JSONObject();
+            payload.put("token", config.getToken());
+            payload.put("device_code", config.getDeviceCode());
+            payload.put("agent_version", AGENT_VERSION);
+            JSONArray items = new JSONArray();
+            for (ReportOutbox.Event event : events) {
+                JSONObject item = new JSONObject();
+                item.put("client_seq", event.seq);
+                item.put("task_id", event.taskId);
+                item.put("event", event.event);
+                item.put("rendered_text", event.renderedText);
+                item.put("error_code", event.errorCode);
+                item.put("error_message", event.errorMessage);
+                item.put("screenshot_path", event.screenshotPath);
+                item.put("duration_ms", event.durationMs);
+                putTimings(item, event.timings);
+                item.put("created_at_ms", event.createdAt);
+                item.put("idempotency_key", event.idempotencyKey);
+                items.put(item);
+            }
+            payload.put("events", items);
+
+            Request request = buildPostRequest(url, config, payload, "");
+            send(client, request, reportPolicy, "report_batch", new Exchange() {
+                @Override
+                public void onFailure(String errorMessage, boolean retryable) {
+                    callback.onError(errorMessage, retryable);
+                }
+
+                @Override
+                public void onResponse(Response response) throws IOException {
+                    int status = response.code();
+                    if (status == 404 || status == 405) {
+                        response.close();
+                        callback.onUnsupported();
+                        return;
+                    }
+                    if (!response.isSuccessful()) {
+                        boolean retryable = status >= 500 || status == 408 || status == 429;
+                        callback.onError("report_batch_http_" + status + ": " + truncate(readBody(response)), retryable);
+                        return;
+                    }
+                    AgentResponseDecoder.Envelope<List<ReportResult>> envelope;
+                    try (ResponseBody body = response.body()) {
+                        if (body == null) {
+                            callback.onUnsupported();
+                            return;
+                        }
+                        envelope = AgentResponseDecoder.decodeReportBatch(body.charStream());
+                    } catch (IOException | RuntimeException e) {
+                        if (isMalformed(e)) {
+                            // Routers without the batch action often fall through to an HTML page.
+                            callback.onUnsupported();
+                        } else {
+                            callback.onError("report_batch_request_failed: " + safeMessage(e), true);
+                        }
+                        return;
+                    }
+                    if (!envelope.isOk()) {
+                        callback.onError("report_batch_failed: " + (envelope.msg.isEmpty() ? "unknown" : envelope.msg), false);
+                        return;
+                    }
+                    List<ReportResult> out = new ArrayList<>(events.size());
+                    for (int i = 0; i < events.size(); i++) {
+                        ReportResult item = i < envelope.data.size() ? envelope.data.get(i) : null;
+                        out.add(item == null ? new ReportResult(0, events.get(i).event) : item);
+                    }
+                    callback.onSuccess(out);
+                }
+            });
+        } catch (Exception e) {
+            callback.onError("report_batch_build_error: " + safeMessage(e), false);
+        }
+    }
+
+    private static ReportOutbox.Event adHocEvent(
+            int taskId,
+            String event,
+            String renderedText,
+            String errorCode,
+            String errorMessage,
+            String screenshotPath,
+            boolean autoMode
+    ) {
+        return new ReportOutbox.Event(0L, taskId, event, renderedText, errorCode, errorMessage, screenshotPath,
+                autoMode, System.currentTimeMillis(), 0L, "", newIdempotencyKey());
+    }
+
+    private static void putTimings(JSONObject target, String timings) {
+        if (timings == null || timings.isEmpty()) {
+            return;
+        }
+        try {
+            target.put("timings", new JSONObject(timings));
+        } catch (JSONException ignore) {
+        }
+    }
+
+    private interface Exchange {
+        // Receives the final response, after any retries; the implementation closes it.
+        void onResponse(Response response) throws IOException;
+
+        void onFailure(String errorMessage, boolean retryable);
+    }
+
+    private void send(
+            final OkHttpClient http,
+            final Request request,
+            final RetryPolicy policy,
+            final String prefix,
+            final Exchange exchange
+    ) {
+        send(http, request, policy, prefix, exchange, 1);
+    }
+
+    private void send(
+            final OkHttpClient http,
+            final Request request,
+            final RetryPolicy policy,
+            final String prefix,
+            final Exchange exchange,
+            final int attempt
+    ) {
+        long wait = breaker.acquire();
+        if (wait > 0) {
+            exchange.onFailure(prefix + "_circuit_open: retry_in_" + wait + "ms", true);
+            return;
+        }
+        http.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                breaker.onFailure(0L);
+                if (policy.shouldRetry(attempt, e)
+                        && scheduleRetry(http, request, policy, prefix, exchange, attempt, 0L)) {
+                    return;
+                }
+                exchange.onFailure(prefix + "_request_failed: " + safeMessage(e), true);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                int status = response.code();
+                if (!RetryPolicy.isRetryableStatus(status)) {
+                    // Any answer that is not a server-side failure proves the server is healthy.
+                    breaker.onSuccess();
+                    policy.onSuccess();
+                    deliver(exchange, response, prefix);
+                    return;
+                }
+                long retryAfter = parseRetryAfterMs(response.header("Retry-After"));
+                breaker.onFailure(retryAfter);
+                if (retryAfter <= policy.getMaxDelayMs() && policy.shouldRetry(attempt, status)) {
+                    response.close();
+                    if (scheduleRetry(http, request, policy, prefix, exchange, attempt, retryAfter)) {
+                        return;
+                    }
+                    exchange.onFailure(prefix + "_http_" + status + ": retry_rejected", true);
+                    return;
+                }
+                deliver(exchange, response, prefix);
+            }
+        });
+    }
+
+    // OkHttp only logs what escapes onResponse, so a reset while reading a body
+    // would leave the caller waiting forever; turn it into a normal failure.
+    private static void deliver(Exchange exchange, Response response, String prefix) {
+        try {
+            exchange.onResponse(response);
+        } catch (IOException | RuntimeException e) {
+            response.close();
+            exchange.onFailure(prefix + "_request_failed: " + safeMessage(e), true);
+        }
+    }
+
+    private boolean scheduleRetry(
+            final OkHttpClient http,
+            final Request request,
+            final RetryPolicy policy,
+            final String prefix,
+            final Exchange exchange,
+            final int attempt,
+            long minDelayMs
+    ) {
+        long delay = Math.max(minDelayMs, policy.backoffMs(attempt));
+        try {
+            retryTimer().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    send(http, request, policy, prefix, exchange, attempt + 1);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private static synchronized ScheduledExecutorService retryTimer() {
+        if (retryTimer == null) {
+            retryTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "agent-api-retry");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return retryTimer;
+    }
+
+    static long parseRetryAfterMs(String header) {
+        if (header == null || header.trim().isEmpty()) {
+            return 0L;
+        }
+        try {
+            long sec = Long.parseLong(header.trim());
+            return Math.max(0L, Math.min(RETRY_AFTER_MAX_MS, sec * 1000L));
+        } catch (NumberFormatException e) {
+            // HTTP-date form is not used by this backend; fall back to our own backoff.
+            return 0L;
+        }
+    }
+
+    private synchronized OkHttpClient clientForWait(int waitSec) {
+        if (waitSec <= 0) {
+            return client;
+        }
+        if (longPollClient == null || longPollClientWaitSec != waitSec) {
+            longPollClient = client.newBuilder()
+                    .readTimeout(waitSec + 15L, TimeUnit.SECONDS)
+                    .callTimeout(waitSec + 30L, TimeUnit.SECONDS)
+                    .build();
+            longPollClientWaitSec = waitSec;
+        }
+        return longPollClient;
+    }
+
+    private Request buildPostRequest(String url, AgentConfig config, JSONObject payload, String idempotencyKey) {
+        RequestBody body = RequestBody.create(payload.toString(), JSON);
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .header("Accept", "application/json")
+                .header("Content-Type", "application/json; charset=utf-8")
+                .header("X-Mobile-Agent-Token", config.getToken())
+                .header("X-Device-Code", config.getDeviceCode())
+                .header("User-Agent", AGENT_VERSION);
+        if (idempotencyKey != null && !idempotencyKey.isEmpty()) {
+            builder.header(IDEMPOTENCY_HEADER, idempotencyKey);
+        }
+        return builder.post(body).build();
+    }
+
+    // Error bodies are only for the message; a body cut off mid-read must not hide the status.
+    private static String readBody(Response response) {
+        try {
+            return response.body() == null ? "" : response.body().string();
+        } catch (IOException e) {
+            response.close();
+            return "";
+        }
+    }
+
+    private static boolean isMalformed(Exception e) {
+        return e instanceof MalformedJsonException
+                || e instanceof EOFException
+                || e instanceof IllegalStateException
+                || e instanceof NumberFormatException;
+    }
+
+    private static String safeMessage(Throwable e) {
+        if (e == null || e.getMessage() == null || e.getMessage().trim().isEmpty()) {
+            return "unknown_error";
+        }
+        return e.getMessage().trim();
+    }
+
+    private static String truncate(String text) {
+        if (text == null) {
+            return "";
+        }
+        String value = text.trim();
+        if (value.length() <= 280) {
+            return value;
+        }
+        return value.substring(0, 280);
+    }
+}
@@ -10,11 +10,17 @@ import java.util.List;
 
 public class AgentConfig {
     public static final int DEFAULT_POLL_INTERVAL_SEC = 3;
+    public static final int DEFAULT_PREFETCH_SIZE = 3;
+    public static final int DEFAULT_LONG_POLL_SEC = 25;
 
     private String adminBase;
     private String token;
     private String deviceCode;
     private int pollIntervalSec;
+    private int prefetchSize;
+    private int longPollSec;
+    private boolean adaptivePolling;
+    private String pushUrl;
     private List<String> taskTypes;
     private boolean autoMode;
 
@@ -23,6 +29,10 @@ public class AgentConfig {
         this.token = "";
         this.deviceCode = "";
         this.pollIntervalSec = DEFAULT_POLL_INTERVAL_SEC;
+        this.prefetchSize = DEFAULT_PREFETCH_SIZE;
+        this.longPollSec = DEFAULT_LONG_POLL_SEC;
+        this.adaptivePolling = true;
+        this.pushUrl = "";
         this.taskTypes = defaultTaskTypes();
         this.autoMode = false;
     }
@@ -67,6 +77,39 @@ public class AgentConfig {
         this.pollIntervalSec = Math.max(2, Math.min(60, pollIntervalSec));
     }
 
+    public int getPrefetchSize() {
+        return prefetchSize;
+    }
+
+    public void setPrefetchSize(int prefetchSize) {
+        this.prefetchSize = Math.max(1, Math.min(10, prefetchSize));
+    }
+
+    public int getLongPollSec() {
+        return longPollSec;
+    }
+
+    public void setLongPollSec(int longPollSec) {
+        this.longPollSec = Math.max(0, Math.min(50, longPollSec));
+    }
+
+    public boolean isAdaptivePolling() {
+        return adaptivePolling;
+    }
+
+    public void setAdaptivePolling(boolean adaptivePolling) {
+        this.adaptivePolling = adaptivePolling;
+    }
+
+    // Empty means "use the push_url the server advertises in pull responses, if any".
+    public String getPushUrl() {
+        return pushUrl;
+    }
+
+    public void setPushUrl(String pushUrl) {
+        this.pushUrl = pushUrl == null ? "" : pushUrl.trim();
+    }
+
     public List<String> getTaskTypes() {
         return new ArrayList<>(taskTypes);
     }
@@ -105,6 +148,10 @@ public class AgentConfig {
         obj.put("token", getToken());
         obj.put("device_code", getDeviceCode());
         obj.put("poll_interval_sec", getPollIntervalSec());
+        obj.put("prefetch_size", getPrefetchSize());
+        obj.put("long_poll_sec", getLongPollSec());
+        obj.put("adaptive_polling", isAdaptivePolling() ? 1 : 0);
+        obj.put("push_url", getPushUrl());
         obj.put("auto_mode", isAutoMode() ? 1 : 0);
         JSONArray arr = new JSONArray();
         for (String type : getTaskTypes()) {
@@ -123,6 +170,10 @@ public class AgentConfig {
         config.setToken(obj.optString("token", ""));
         config.setDeviceCode(obj.optString("device_code", ""));
         config.setPollIntervalSec(obj.optInt("poll_interval_sec", DEFAULT_POLL_INTERVAL_SEC));
+        config.setPrefetchSize(obj.optInt("prefetch_size", DEFAULT_PREFETCH_SIZE));
+        config.setLongPollSec(obj.optInt("long_poll_sec", DEFAULT_LONG_POLL_SEC));
+        config.setAdaptivePolling(obj.optInt("adaptive_polling", 1) == 1);
+        config.setPushUrl(obj.optString("push_url", ""));
         config.setAutoMode(obj.optInt("auto_mode", 0) == 1 || obj.optBoolean("auto_mode", false));
 
         List<String> types = new ArrayList<>();
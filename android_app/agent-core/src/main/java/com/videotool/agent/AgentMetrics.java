@@ -0,0 +1,219 @@
+package com.videotool.agent;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Process-wide counters, gauges and latency histograms for the agent pipeline.
+// Recording never takes a lock. Uploads carry cumulative values plus a per-process
+// boot id, so the server derives deltas itself and a lost upload loses nothing.
+public final class AgentMetrics {
+    public static final String PULL_RTT = "pull_rtt";
+    public static final String QUEUE_WAIT = "queue_wait";
+    public static final String PREPARE = "prepare";
+    public static final String AUTOMATION = "automation";
+    public static final String A11Y_RUN = "a11y_run";
+    public static final String SEND_CONFIRM = "send_confirm";
+    public static final String REPORT_RTT = "report_rtt";
+    public static final String TASK_TOTAL = "task_total";
+
+    public static final String PULLS = "pulls";
+    public static final String PULLS_EMPTY = "pulls_empty";
+    public static final String PULL_ERRORS = "pull_errors";
+    public static final String TASKS_LEASED = "tasks_leased";
+    public static final String TASKS_PUSHED = "tasks_pushed";
+    public static final String TASKS_DONE = "tasks_done";
+    public static final String TASKS_FAILED = "tasks_failed";
+    public static final String REPORTS_SENT = "reports_sent";
+    public static final String REPORTS_DROPPED = "reports_dropped";
+    public static final String REPORT_RETRIES = "report_retries";
+    public static final String A11Y_RETRIES = "a11y_retries";
+    public static final String AUTO_SEND_TIMEOUTS = "auto_send_timeouts";
+    public static final String SENDS_UNCONFIRMED = "sends_unconfirmed";
+    public static final String FAILURE_PREFIX = "fail.";
+
+    public static final String QUEUE_SIZE = "queue_size";
+    public static final String OUTBOX_PENDING = "outbox_pending";
+    public static final String CIRCUIT_OPEN = "circuit_open";
+
+    public static final long UPLOAD_INTERVAL_MS = 60 * 1000L;
+    private static final int MAX_FAILURE_CODES = 32;
+
+    private static final AgentMetrics INSTANCE = new AgentMetrics();
+
+    private final String bootId = UUID.randomUUID().toString().substring(0, 8);
+    private final long startedAt = TaskTimeline.now();
+    private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final AtomicLong lastUploadAt = new AtomicLong(0L);
+
+    private AgentMetrics() {
+    }
+
+    public static AgentMetrics get() {
+        return INSTANCE;
+    }
+
+    public void increment(String name) {
+        add(name, 1L);
+    }
+
+    public void add(String name, long delta) {
+        cell(counters, name).addAndGet(delta);
+    }
+
+    // Error codes come from the server and automation; cap the key space.
+    public void recordFailure(String errorCode) {
+        String code = errorCode == null || errorCode.trim().isEmpty() ? "unknown" : errorCode.trim();
+        String key = FAILURE_PREFIX + code;
+        if (!counters.containsKey(key) && countFailureCodes() >= MAX_FAILURE_CODES) {
+            key = FAILURE_PREFIX + "other";
+        }
+        increment(key);
+    }
+
+    public void setGauge(String name, long value) {
+        cell(gauges, name).set(value);
+    }
+
+    public long counter(String name) {
+        AtomicLong value = counters.get(name);
+        return value == null ? 0L : value.get();
+    }
+
+    public long gauge(String name) {
+        AtomicLong value = gauges.get(name);
+        return value == null ? 0L : value.get();
+    }
+
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    public void recordLatency(String name, long valueMs) {
+        if (valueMs >= 0) {
+            histogram(name).record(valueMs);
+        }
+    }
+
+    // Records the stage durations of a finished task.
+    public void recordTimeline(TaskTimeline timeline) {
+        if (timeline == null) {
+            return;
+        }
+        recordLatency(QUEUE_WAIT, timeline.queueMs());
+        recordLatency(PREPARE, timeline.prepareMs());
+        recordLatency(AUTOMATION, timeline.automationMs());
+        recordLatency(TASK_TOTAL, timeline.totalMs());
+    }
+
+    public Map<String, LatencyHistogram> histograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    // Compact upload form:
+    // {"b":boot,"up":uptimeSec,"c":{name:n},"g":{name:v},"h":{name:[count,p50,p95,p99,max]}}
+    public JSONObject encode() {
+        JSONObject root = new JSONObject();
+        try {
+            root.put("b", bootId);
+            root.put("up", (TaskTimeline.now() - startedAt) / 1000L);
+            root.put("c", encodeCells(counters));
+            root.put("g", encodeCells(gauges));
+            JSONObject h = new JSONObject();
+            for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+                LatencyHistogram histogram = entry.getValue();
+                if (histogram.getCount() == 0) {
+                    continue;
+                }
+                JSONArray row = new JSONArray();
+                row.put(histogram.getCount());
+                row.put(histogram.percentile(0.50));
+                row.put(histogram.percentile(0.95));
+                row.put(histogram.percentile(0.99));
+                row.put(histogram.getMax());
+                h.put(entry.getKey(), row);
+            }
+            root.put("h", h);
+        } catch (JSONException ignore) {
+        }
+        return root;
+    }
+
+    // Returns a snapshot at most once per UPLOAD_INTERVAL_MS, otherwise null.
+    public JSONObject takeUploadIfDue() {
+        long now = TaskTimeline.now();
+        long last = lastUploadAt.get();
+        if (last > 0 && now - last < UPLOAD_INTERVAL_MS) {
+            return null;
+        }
+        if (!lastUploadAt.compareAndSet(last, now)) {
+            return null;
+        }
+        return encode();
+    }
+
+    // Multi-line text for the control screen.
+    public String render() {
+        StringBuilder out = new StringBuilder();
+        out.append("uptime ").append((TaskTimeline.now() - startedAt) / 1000L).append("s\n");
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(counters).entrySet()) {
+            out.append(entry.getKey()).append(" = ").append(entry.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(gauges).entrySet()) {
+            out.append(entry.getKey()).append(" : ").append(entry.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            if (entry.getValue().getCount() == 0) {
+                continue;
+            }
+            out.append(entry.getKey()).append(" ms ").append(entry.getValue().summary()).append('\n');
+        }
+        return out.toString().trim();
+    }
+
+    private int countFailureCodes() {
+        int count = 0;
+        for (String key : counters.keySet()) {
+            if (key.startsWith(FAILURE_PREFIX)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static JSONObject encodeCells(Map<String, AtomicLong> cells) throws JSONException {
+        JSONObject obj = new JSONObject();
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(cells).entrySet()) {
+            obj.put(entry.getKey(), entry.getValue().get());
+        }
+        return obj;
+    }
+
+    private static AtomicLong cell(ConcurrentHashMap<String, AtomicLong> map, String name) {
+        AtomicLong value = map.get(name);
+        if (value == null) {
+            AtomicLong created = new AtomicLong();
+            value = map.putIfAbsent(name, created);
+            if (value == null) {
+                value = created;
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,292 @@
+package com.videotool.agent;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+// Optional WebSocket the server can use to announce or hand over tasks.
+// Polling stays the source of truth; this only shortens the time to dispatch.
+public class AgentPushChannel {
+    private static final long PING_INTERVAL_SEC = 30L;
+    private static final long RECONNECT_BASE_MS = 1000L;
+    private static final long RECONNECT_MAX_MS = 60 * 1000L;
+    private static final long UNSUPPORTED_RETRY_MS = 10 * 60 * 1000L;
+    private static final int NORMAL_CLOSURE = 1000;
+
+    public interface Listener {
+        void onConnected();
+
+        void onDisconnected(String reason);
+
+        void onTaskAvailable();
+
+        void onTaskPushed(AgentTask task, long leaseTtlMs);
+    }
+
+    private final OkHttpClient client;
+    private final Listener listener;
+    private final ScheduledExecutorService io;
+    private final Random random = new Random();
+
+    private AgentConfig config;
+    private String url = "";
+    private boolean autoMode = false;
+    private boolean started = false;
+    private boolean connected = false;
+    private int failureStreak = 0;
+    private WebSocket socket;
+    private ScheduledFuture<?> reconnectFuture;
+
+    public AgentPushChannel(OkHttpClient baseClient, Listener listener) {
+        this.client = baseClient.newBuilder()
+                .pingInterval(PING_INTERVAL_SEC, TimeUnit.SECONDS)
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .callTimeout(0, TimeUnit.MILLISECONDS)
+                .build();
+        this.listener = listener;
+        this.io = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "agent-push");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static String resolveUrl(AgentConfig config, String advertisedUrl) {
+        if (config != null && !config.getPushUrl().isEmpty()) {
+            return config.getPushUrl();
+        }
+        return advertisedUrl == null ? "" : advertisedUrl.trim();
+    }
+
+    public synchronized boolean isStarted() {
+        return started;
+    }
+
+    public synchronized boolean isConnected() {
+        return connected;
+    }
+
+    public synchronized void start(AgentConfig config, String url, boolean autoMode) {
+        String target = url == null ? "" : url.trim();
+        if (config == null || !config.isValid() || target.isEmpty()) {
+            return;
+        }
+        if (started && target.equals(this.url) && autoMode == this.autoMode) {
+            this.config = config;
+            return;
+        }
+        closeLocked("restart");
+        this.config = config;
+        this.url = target;
+        this.autoMode = autoMode;
+        this.started = true;
+        this.failureStreak = 0;
+        connectLocked();
+    }
+
+    public synchronized void stop() {
+        started = false;
+        closeLocked("agent_stopped");
+    }
+
+    public void shutdown() {
+        stop();
+        io.shutdownNow();
+    }
+
+    public synchronized boolean ack(int taskId, boolean accepted, String reason) {
+        if (socket == null || !connected) {
+            return false;
+        }
+        JSONObject msg = new JSONObject();
+        try {
+            msg.put("type", "ack");
+            msg.put("task_id", taskId);
+            msg.put("accepted", accepted ? 1 : 0);
+            msg.put("reason", reason == null ? "" : reason);
+        } catch (JSONException e) {
+            return false;
+        }
+        return socket.send(msg.toString());
+    }
+
+    private void connectLocked() {
+        Request request;
+        try {
+            request = new Request.Builder()
+                    .url(url)
+                    .header("X-Mobile-Agent-Token", config.getToken())
+                    .header("X-Device-Code", config.getDeviceCode())
+                    .header("User-Agent", AgentApiClient.AGENT_VERSION)
+                    .build();
+        } catch (IllegalArgumentException e) {
+            // A malformed URL will not fix itself; stay on polling.
+            started = false;
+            return;
+        }
+        socket = client.newWebSocket(request, new SocketListener());
+    }
+
+    private void closeLocked(String reason) {
+        if (reconnectFuture != null) {
+            reconnectFuture.cancel(false);
+            reconnectFuture = null;
+        }
+        if (socket != null) {
+            socket.close(NORMAL_CLOSURE, reason);
+            socket = null;
+        }
+        connected = false;
+    }
+
+    private synchronized void handleOpen(WebSocket webSocket) {
+        if (webSocket != socket) {
+            webSocket.close(NORMAL_CLOSURE, "stale");
+            return;
+        }
+        connected = true;
+        failureStreak = 0;
+        webSocket.send(buildHello().toString());
+    }
+
+    // Returns true when the caller should notify the listener.
+    private synchronized boolean handleDrop(WebSocket webSocket, boolean unsupported) {
+        if (webSocket != socket) {
+            return false;
+        }
+        boolean wasConnected = connected;
+        connected = false;
+        socket = null;
+        if (!started) {
+            return wasConnected;
+        }
+        failureStreak++;
+        long delay;
+        if (unsupported) {
+            delay = UNSUPPORTED_RETRY_MS;
+        } else {
+            int shift = Math.min(6, failureStreak - 1);
+            delay = Math.min(RECONNECT_MAX_MS, RECONNECT_BASE_MS << shift);
+            delay = delay / 2 + (long) (random.nextDouble() * (delay / 2));
+        }
+        try {
+            reconnectFuture = io.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (AgentPushChannel.this) {
+                        reconnectFuture = null;
+                        if (started && socket == null) {
+                            connectLocked();
+                        }
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignore) {
+        }
+        return wasConnected;
+    }
+
+    private JSONObject buildHello() {
+        JSONObject hello = new JSONObject();
+        try {
+            hello.put("type", "hello");
+            hello.put("device_code", config.getDeviceCode());
+            hello.put("agent_version", AgentApiClient.AGENT_VERSION);
+            hello.put("mode", autoMode ? "auto" : "manual");
+            JSONArray types = new JSONArray();
+            for (String type : config.getTaskTypes()) {
+                types.put(type);
+            }
+            hello.put("task_types", types);
+        } catch (JSONException ignore) {
+        }
+        return hello;
+    }
+
+    private void handleMessage(WebSocket webSocket, String text) {
+        AgentResponseDecoder.PushMessage message;
+        try {
+            message = AgentResponseDecoder.decodePushMessage(new StringReader(text));
+        } catch (Exception e) {
+            return;
+        }
+        if (webSocket != currentSocket()) {
+            return;
+        }
+        switch (message.type) {
+            case "ping":
+                webSocket.send("{\"type\":\"pong\"}");
+                break;
+            case "task_available":
+                listener.onTaskAvailable();
+                break;
+            case "task":
+                if (message.task != null && message.task.getId() > 0) {
+                    listener.onTaskPushed(message.task, message.leaseTtlMs);
+                } else {
+                    listener.onTaskAvailable();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private synchronized WebSocket currentSocket() {
+        return socket;
+    }
+
+    private class SocketListener extends WebSocketListener {
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            handleOpen(webSocket);
+            if (webSocket == currentSocket()) {
+                listener.onConnected();
+            }
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            handleMessage(webSocket, text);
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            webSocket.close(NORMAL_CLOSURE, null);
+        }
+
+        @Override
+        public void onClosed(WebSocket webSocket, int code, String reason) {
+            if (handleDrop(webSocket, false)) {
+                listener.onDisconnected("push_closed_" + code);
+            }
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            int status = response == null ? 0 : response.code();
+            boolean unsupported = status == 404 || status == 405 || status == 200;
+            if (handleDrop(webSocket, unsupported)) {
+                listener.onDisconnected(status > 0 ? "push_http_" + status : "push_failed");
+            }
+        }
+    }
+}
@@ -0,0 +1,566 @@
+package com.videotool.agent;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streams agent API responses straight into typed records. Only the fields
+// the agent uses are materialized; a task's payload is kept as compact UTF-8
+// bytes and only parsed into a JSONObject when someone asks for it.
+public final class AgentResponseDecoder {
+    public static final class Envelope<T> {
+        public final int code;
+        public final String msg;
+        public final T data;
+
+        Envelope(int code, String msg, T data) {
+            this.code = code;
+            this.msg = msg == null ? "" : msg;
+            this.data = data;
+        }
+
+        public boolean isOk() {
+            return code == 0;
+        }
+    }
+
+    public static final class PushMessage {
+        public final String type;
+        public final AgentTask task;
+        public final long leaseTtlMs;
+
+        PushMessage(String type, AgentTask task, long leaseTtlMs) {
+            this.type = type == null ? "" : type;
+            this.task = task;
+            this.leaseTtlMs = Math.max(0L, leaseTtlMs);
+        }
+    }
+
+    private interface DataReader<T> {
+        T read(JsonReader reader) throws IOException;
+
+        T empty();
+    }
+
+    private AgentResponseDecoder() {
+    }
+
+    public static Envelope<AgentApiClient.PullResult> decodePull(Reader source) throws IOException {
+        return decodeEnvelope(source, new DataReader<AgentApiClient.PullResult>() {
+            @Override
+            public AgentApiClient.PullResult read(JsonReader reader) throws IOException {
+                return readPullData(reader);
+            }
+
+            @Override
+            public AgentApiClient.PullResult empty() {
+                return new AgentApiClient.PullResult(null, "", "");
+            }
+        });
+    }
+
+    public static Envelope<AgentApiClient.ReportResult> decodeReport(Reader source) throws IOException {
+        return decodeEnvelope(source, new DataReader<AgentApiClient.ReportResult>() {
+            @Override
+            public AgentApiClient.ReportResult read(JsonReader reader) throws IOException {
+                return readReportResult(reader, "");
+            }
+
+            @Override
+            public AgentApiClient.ReportResult empty() {
+                return new AgentApiClient.ReportResult(0, "");
+            }
+        });
+    }
+
+    // Results are positional; missing entries are left null for the caller to fill in.
+    public static Envelope<List<AgentApiClient.ReportResult>> decodeReportBatch(Reader source) throws IOException {
+        return decodeEnvelope(source, new DataReader<List<AgentApiClient.ReportResult>>() {
+            @Override
+            public List<AgentApiClient.ReportResult> read(JsonReader reader) throws IOException {
+                List<AgentApiClient.ReportResult> out = new ArrayList<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!"results".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                            out.add(readReportResult(reader, ""));
+                        } else {
+                            reader.skipValue();
+                            out.add(null);
+                        }
+                    }
+                    reader.endArray();
+                }
+                reader.endObject();
+                return out;
+            }
+
+            @Override
+            public List<AgentApiClient.ReportResult> empty() {
+                return new ArrayList<>();
+            }
+        });
+    }
+
+    public static PushMessage decodePushMessage(Reader source) throws IOException {
+        JsonReader reader = new JsonReader(source);
+        String type = "";
+        AgentTask task = null;
+        long leaseTtlSec = 0L;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("type".equals(name)) {
+                type = readString(reader, "");
+            } else if ("task".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                task = readTask(reader);
+            } else if ("lease_ttl_sec".equals(name)) {
+                leaseTtlSec = readLong(reader, 0L);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new PushMessage(type, task, leaseTtlSec * 1000L);
+    }
+
+    private static <T> Envelope<T> decodeEnvelope(Reader source, DataReader<T> dataReader) throws IOException {
+        JsonReader reader = new JsonReader(source);
+        int code = 1;
+        String msg = "";
+        T data = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("code".equals(name)) {
+                code = readInt(reader, 1);
+            } else if ("msg".equals(name)) {
+                msg = readString(reader, "");
+            } else if ("data".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                data = dataReader.read(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Envelope<>(code, msg, data == null ? dataReader.empty() : data);
+    }
+
+    private static AgentApiClient.PullResult readPullData(JsonReader reader) throws IOException {
+        List<AgentTask> tasks = new ArrayList<>();
+        AgentTask single = null;
+        boolean hasTaskArray = false;
+        String reason = "";
+        String serverTime = "";
+        long leaseTtlSec = 0L;
+        boolean longPolled = false;
+        String pushUrl = "";
+        String selectors = "";
+        String scripts = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "tasks":
+                    if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                        reader.skipValue();
+                        break;
+                    }
+                    hasTaskArray = true;
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                            tasks.add(readTask(reader));
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                case "task":
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        single = readTask(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                case "reason":
+                    reason = readString(reader, "");
+                    break;
+                case "server_time":
+                    serverTime = readString(reader, "");
+                    break;
+                case "lease_ttl_sec":
+                    leaseTtlSec = readLong(reader, 0L);
+                    break;
+                case "long_poll":
+                    longPolled = readFlag(reader);
+                    break;
+                case "push_url":
+                    pushUrl = readString(reader, "");
+                    break;
+                case "selectors":
+                    selectors = reader.peek() == JsonToken.BEGIN_OBJECT ? readRaw(reader) : skip(reader);
+                    break;
+                case "scripts":
+                    scripts = reader.peek() == JsonToken.BEGIN_OBJECT ? readRaw(reader) : skip(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if (!hasTaskArray && single != null) {
+            tasks.add(single);
+        }
+        return new AgentApiClient.PullResult(tasks, reason, serverTime, leaseTtlSec * 1000L, longPolled, pushUrl, selectors, scripts);
+    }
+
+    private static AgentApiClient.ReportResult readReportResult(JsonReader reader, String fallbackEvent) throws IOException {
+        int taskStatus = 0;
+        String event = fallbackEvent;
+        String error = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("task_status".equals(name)) {
+                taskStatus = readInt(reader, 0);
+            } else if ("event".equals(name)) {
+                event = readString(reader, "");
+            } else if ("error".equals(name)) {
+                error = readString(reader, "");
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new AgentApiClient.ReportResult(taskStatus, event, error);
+    }
+
+    // Mirrors the field precedence of AgentTask.fromJson().
+    static AgentTask readTask(JsonReader reader) throws IOException {
+        int id = 0;
+        int priority = 0;
+        String taskType = null;
+        String targetChannel = null;
+        String renderedText = "";
+        String waUrl = "";
+        String zaloUrl = "";
+        String influencerTiktokId = "";
+        String influencerNickname = null;
+        PayloadFields payload = new PayloadFields();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "id":
+                    id = readInt(reader, 0);
+                    break;
+                case "priority":
+                    priority = readInt(reader, 0);
+                    break;
+                case "task_type":
+                    taskType = readString(reader, null);
+                    break;
+                case "target_channel":
+                    targetChannel = readString(reader, null);
+                    break;
+                case "rendered_text":
+                    renderedText = readString(reader, "");
+                    break;
+                case "wa_url":
+                    waUrl = readString(reader, "");
+                    break;
+                case "zalo_url":
+                    zaloUrl = readString(reader, "");
+                    break;
+                case "payload":
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        payload.capture(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                case "influencer":
+                    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String key = reader.nextName();
+                        if ("tiktok_id".equals(key)) {
+                            influencerTiktokId = readString(reader, "");
+                        } else if ("nickname".equals(key)) {
+                            influencerNickname = readString(reader, null);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        String tiktokId = influencerTiktokId.isEmpty() ? payload.tiktokId : influencerTiktokId;
+        if (waUrl.isEmpty()) {
+            waUrl = payload.waUrl != null ? payload.waUrl : payload.waMe;
+        }
+        if (zaloUrl.isEmpty()) {
+            zaloUrl = payload.zaloUrl != null ? payload.zaloUrl : payload.zaloOpen;
+        }
+        return new AgentTask(
+                id,
+                taskType != null ? taskType : payload.taskType,
+                targetChannel != null ? targetChannel : (payload.targetChannel != null ? payload.targetChannel : "auto"),
+                priority,
+                renderedText,
+                payload.commentText,
+                tiktokId,
+                influencerNickname != null ? influencerNickname : payload.nickname,
+                payload.whatsapp,
+                payload.zalo,
+                waUrl,
+                zaloUrl,
+                payload.toBytes()
+        );
+    }
+
+    private static final class PayloadFields {
+        String taskType = "";
+        String targetChannel;
+        String commentText = "";
+        String tiktokId = "";
+        String nickname = "";
+        String waUrl;
+        String zaloUrl;
+        String whatsapp = "";
+        String zalo = "";
+        String waMe = "";
+        String zaloOpen = "";
+        private ByteArrayOutputStream bytes;
+
+        // Copies the payload object token by token while picking out the known fields.
+        void capture(JsonReader in) throws IOException {
+            bytes = new ByteArrayOutputStream(256);
+            JsonWriter out = new JsonWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8));
+            out.setSerializeNulls(true);
+            in.beginObject();
+            out.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                out.name(name);
+                switch (name) {
+                    case "task_type":
+                        taskType = copyString(in, out, "");
+                        break;
+                    case "target_channel":
+                        targetChannel = copyString(in, out, null);
+                        break;
+                    case "comment_text":
+                        commentText = copyString(in, out, "");
+                        break;
+                    case "tiktok_id":
+                        tiktokId = copyString(in, out, "");
+                        break;
+                    case "nickname":
+                        nickname = copyString(in, out, "");
+                        break;
+                    case "wa_url":
+                        waUrl = copyString(in, out, null);
+                        break;
+                    case "zalo_url":
+                        zaloUrl = copyString(in, out, null);
+                        break;
+                    case "channels":
+                        if (in.peek() == JsonToken.BEGIN_OBJECT) {
+                            captureChannels(in, out);
+                        } else {
+                            copyValue(in, out);
+                        }
+                        break;
+                    default:
+                        copyValue(in, out);
+                        break;
+                }
+            }
+            in.endObject();
+            out.endObject();
+            out.flush();
+        }
+
+        private void captureChannels(JsonReader in, JsonWriter out) throws IOException {
+            in.beginObject();
+            out.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                out.name(name);
+                switch (name) {
+                    case "whatsapp":
+                        whatsapp = copyString(in, out, "");
+                        break;
+                    case "zalo":
+                        zalo = copyString(in, out, "");
+                        break;
+                    case "wa_me":
+                        waMe = copyString(in, out, "");
+                        break;
+                    case "zalo_open":
+                        zaloOpen = copyString(in, out, "");
+                        break;
+                    default:
+                        copyValue(in, out);
+                        break;
+                }
+            }
+            in.endObject();
+            out.endObject();
+        }
+
+        byte[] toBytes() {
+            return bytes == null ? null : bytes.toByteArray();
+        }
+    }
+
+    private static String copyString(JsonReader in, JsonWriter out, String fallback) throws IOException {
+        switch (in.peek()) {
+            case STRING: {
+                String value = in.nextString();
+                out.value(value);
+                return value;
+            }
+            case NUMBER: {
+                String value = in.nextString();
+                out.jsonValue(value);
+                return value;
+            }
+            case BOOLEAN: {
+                boolean value = in.nextBoolean();
+                out.value(value);
+                return String.valueOf(value);
+            }
+            case NULL:
+                in.nextNull();
+                out.nullValue();
+                return fallback;
+            default:
+                copyValue(in, out);
+                return fallback;
+        }
+    }
+
+    private static void copyValue(JsonReader in, JsonWriter out) throws IOException {
+        switch (in.peek()) {
+            case BEGIN_OBJECT:
+                in.beginObject();
+                out.beginObject();
+                while (in.hasNext()) {
+                    out.name(in.nextName());
+                    copyValue(in, out);
+                }
+                in.endObject();
+                out.endObject();
+                break;
+            case BEGIN_ARRAY:
+                in.beginArray();
+                out.beginArray();
+                while (in.hasNext()) {
+                    copyValue(in, out);
+                }
+                in.endArray();
+                out.endArray();
+                break;
+            case STRING:
+                out.value(in.nextString());
+                break;
+            case NUMBER:
+                out.jsonValue(in.nextString());
+                break;
+            case BOOLEAN:
+                out.value(in.nextBoolean());
+                break;
+            case NULL:
+                in.nextNull();
+                out.nullValue();
+                break;
+            default:
+                in.skipValue();
+                break;
+        }
+    }
+
+    // Re-serializes one value compactly for consumers that parse it themselves.
+    private static String readRaw(JsonReader in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        JsonWriter out = new JsonWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8));
+        out.setSerializeNulls(true);
+        copyValue(in, out);
+        out.flush();
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String skip(JsonReader reader) throws IOException {
+        reader.skipValue();
+        return "";
+    }
+
+    private static String readString(JsonReader reader, String fallback) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case NULL:
+                reader.nextNull();
+                return fallback;
+            default:
+                reader.skipValue();
+                return fallback;
+        }
+    }
+
+    private static int readInt(JsonReader reader, int fallback) throws IOException {
+        return (int) readLong(reader, fallback);
+    }
+
+    private static long readLong(JsonReader reader, long fallback) throws IOException {
+        String raw = readString(reader, null);
+        if (raw == null) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(raw.trim());
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(raw.trim());
+            } catch (NumberFormatException ignore) {
+                return fallback;
+            }
+        }
+    }
+
+    private static boolean readFlag(JsonReader reader) throws IOException {
+        String raw = readString(reader, "");
+        return "1".equals(raw) || "true".equalsIgnoreCase(raw);
+    }
+}
@@ -0,0 +1,94 @@
+package com.videotool.agent;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+public class AgentStateMachine {
+    public enum State {
+        STOPPED,
+        IDLE,
+        POLLING,
+        PREPARING,
+        AWAITING,
+        AUTO_SENDING,
+        REPORTING
+    }
+
+    public interface Listener {
+        void onTransition(State from, State to, String reason);
+
+        void onRejected(State from, State to, String reason);
+    }
+
+    private static final Map<State, EnumSet<State>> ALLOWED = new EnumMap<>(State.class);
+
+    static {
+        ALLOWED.put(State.STOPPED, EnumSet.of(State.IDLE, State.AWAITING, State.AUTO_SENDING));
+        ALLOWED.put(State.IDLE, EnumSet.of(State.POLLING, State.PREPARING, State.STOPPED));
+        ALLOWED.put(State.POLLING, EnumSet.of(State.IDLE, State.PREPARING, State.STOPPED));
+        ALLOWED.put(State.PREPARING, EnumSet.of(State.AWAITING, State.AUTO_SENDING, State.REPORTING, State.STOPPED));
+        ALLOWED.put(State.AWAITING, EnumSet.of(State.REPORTING, State.STOPPED));
+        ALLOWED.put(State.AUTO_SENDING, EnumSet.of(State.REPORTING, State.STOPPED));
+        ALLOWED.put(State.REPORTING, EnumSet.of(State.IDLE, State.PREPARING, State.STOPPED));
+    }
+
+    private State state = State.STOPPED;
+    private Listener listener;
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized boolean is(State expected) {
+        return state == expected;
+    }
+
+    public synchronized boolean isRunning() {
+        return state != State.STOPPED;
+    }
+
+    public synchronized boolean hasTask() {
+        return state == State.PREPARING
+                || state == State.AWAITING
+                || state == State.AUTO_SENDING
+                || state == State.REPORTING;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public static boolean canTransition(State from, State to) {
+        if (from == null || to == null) {
+            return false;
+        }
+        EnumSet<State> targets = ALLOWED.get(from);
+        return targets != null && targets.contains(to);
+    }
+
+    public boolean transition(State to, String reason) {
+        State from;
+        Listener target;
+        boolean ok;
+        synchronized (this) {
+            from = state;
+            if (from == to) {
+                return true;
+            }
+            ok = canTransition(from, to);
+            if (ok) {
+                state = to;
+            }
+            target = listener;
+        }
+        if (target != null) {
+            if (ok) {
+                target.onTransition(from, to, reason == null ? "" : reason);
+            } else {
+                target.onRejected(from, to, reason == null ? "" : reason);
+            }
+        }
+        return ok;
+    }
+}
@@ -0,0 +1,280 @@
+package com.videotool.agent;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Hot agent state lives in memory; changes are coalesced and appended to a
+// small JSON-lines log instead of rewriting a SharedPreferences XML per event.
+public class AgentStateStore {
+    public enum SyncPolicy {
+        ALWAYS,
+        DURABLE_ONLY,
+        NEVER
+    }
+
+    public static final String KEY_RUNNING = "running";
+    public static final String KEY_LAST_LOG = "last_log";
+    public static final String KEY_LAST_STATUS = "last_status";
+    public static final String KEY_CURRENT_TASK = "current_task";
+    public static final String KEY_TASK_QUEUE = "task_queue";
+    public static final String KEY_SEND_TIMINGS = "send_timings";
+
+    private static final String LOG_NAME = "agent_state.jsonl";
+    private static final long HOT_FLUSH_DELAY_MS = 5000L;
+    private static final int COMPACT_THRESHOLD = 100;
+
+    private static AgentStateStore instance;
+
+    private final File log;
+    private final ScheduledExecutorService io;
+    private final Map<String, Object> values = new LinkedHashMap<>();
+    private final Map<String, Object> dirty = new LinkedHashMap<>();
+    private SyncPolicy syncPolicy = SyncPolicy.DURABLE_ONLY;
+    private boolean dirtyDurable = false;
+    private ScheduledFuture<?> flushFuture;
+    private long flushDueAt = Long.MAX_VALUE;
+    private int logLines = 0;
+
+    public static synchronized AgentStateStore get(File dir) {
+        if (instance == null) {
+            instance = new AgentStateStore(dir);
+        }
+        return instance;
+    }
+
+    AgentStateStore(File dir) {
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        this.log = new File(dir, LOG_NAME);
+        this.io = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "agent-state-store");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        replay();
+    }
+
+    public synchronized void setSyncPolicy(SyncPolicy policy) {
+        if (policy != null) {
+            syncPolicy = policy;
+        }
+    }
+
+    public synchronized boolean has(String key) {
+        return values.containsKey(key);
+    }
+
+    public synchronized String getString(String key, String fallback) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : fallback;
+    }
+
+    public synchronized boolean getBoolean(String key, boolean fallback) {
+        Object value = values.get(key);
+        return value instanceof Boolean ? (Boolean) value : fallback;
+    }
+
+    // Status, log and running flag: cheap to lose, so they ride the next coalesced flush.
+    public void putHot(String key, Object value) {
+        put(key, value, false);
+    }
+
+    // Checkpoints that must survive process death: flushed right away and fsynced.
+    public void putDurable(String key, Object value) {
+        put(key, value, true);
+    }
+
+    public void flushNow() {
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                flushPending();
+            }
+        };
+        try {
+            io.submit(task).get(2, TimeUnit.SECONDS);
+        } catch (Exception ignore) {
+        }
+    }
+
+    private void put(String key, Object value, boolean durable) {
+        Object normalized = value == null ? JSONObject.NULL : value;
+        synchronized (this) {
+            Object current = values.containsKey(key) ? values.get(key) : JSONObject.NULL;
+            if (current.equals(normalized)) {
+                return;
+            }
+            if (normalized == JSONObject.NULL) {
+                values.remove(key);
+            } else {
+                values.put(key, normalized);
+            }
+            dirty.put(key, normalized);
+            dirtyDurable = dirtyDurable || durable;
+            scheduleFlushLocked(durable ? 0L : HOT_FLUSH_DELAY_MS);
+        }
+    }
+
+    private void scheduleFlushLocked(long delayMs) {
+        long dueAt = System.currentTimeMillis() + delayMs;
+        if (flushFuture != null && !flushFuture.isDone()) {
+            if (flushDueAt <= dueAt) {
+                return;
+            }
+            flushFuture.cancel(false);
+        }
+        flushDueAt = dueAt;
+        try {
+            flushFuture = io.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flushPending();
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignore) {
+        }
+    }
+
+    private void flushPending() {
+        JSONObject delta = new JSONObject();
+        boolean sync;
+        Map<String, Object> snapshot = null;
+        synchronized (this) {
+            flushDueAt = Long.MAX_VALUE;
+            if (dirty.isEmpty()) {
+                return;
+            }
+            try {
+                for (Map.Entry<String, Object> entry : dirty.entrySet()) {
+                    delta.put(entry.getKey(), entry.getValue());
+                }
+            } catch (JSONException e) {
+                dirty.clear();
+                return;
+            }
+            sync = syncPolicy == SyncPolicy.ALWAYS || (syncPolicy == SyncPolicy.DURABLE_ONLY && dirtyDurable);
+            dirty.clear();
+            dirtyDurable = false;
+            if (logLines + 1 >= COMPACT_THRESHOLD) {
+                snapshot = new LinkedHashMap<>(values);
+            }
+        }
+        if (snapshot != null && compact(snapshot, sync)) {
+            return;
+        }
+        appendLine(delta, sync);
+    }
+
+    private void appendLine(JSONObject obj, boolean sync) {
+        try (FileOutputStream out = new FileOutputStream(log, true)) {
+            out.write((obj.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+            if (sync) {
+                out.getFD().sync();
+            }
+            logLines++;
+        } catch (IOException ignore) {
+        }
+    }
+
+    private boolean compact(Map<String, Object> snapshot, boolean sync) {
+        File tmp = new File(log.getParentFile(), LOG_NAME + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp, false)) {
+            out.write((new JSONObject(snapshot).toString() + "\n").getBytes(StandardCharsets.UTF_8));
+            if (sync) {
+                out.getFD().sync();
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            return false;
+        }
+        if (!tmp.renameTo(log)) {
+            return false;
+        }
+        logLines = 1;
+        return true;
+    }
+
+    private synchronized void replay() {
+        values.clear();
+        logLines = 0;
+        if (!log.exists()) {
+            return;
+        }
+        boolean torn = !endsWithNewline(log);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(log), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                logLines++;
+                try {
+                    JSONObject obj = new JSONObject(line);
+                    Iterator<String> keys = obj.keys();
+                    while (keys.hasNext()) {
+                        String key = keys.next();
+                        Object value = obj.get(key);
+                        if (value == JSONObject.NULL) {
+                            values.remove(key);
+                        } else {
+                            values.put(key, value);
+                        }
+                    }
+                } catch (JSONException ignore) {
+                    // A torn final line after process death is expected; skip it.
+                    torn = true;
+                }
+            }
+        } catch (IOException ignore) {
+        }
+        // Otherwise the next delta is appended onto the torn line and lost with it,
+        // bringing back whatever it overwrote (e.g. a finished task's checkpoint).
+        if (torn && !compact(new LinkedHashMap<>(values), true)) {
+            terminateLine();
+        }
+    }
+
+    private static boolean endsWithNewline(File file) {
+        long length = file.length();
+        if (length == 0) {
+            return true;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(length - 1);
+            return raf.read() == '\n';
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void terminateLine() {
+        try (FileOutputStream out = new FileOutputStream(log, true)) {
+            out.write('\n');
+            out.getFD().sync();
+        } catch (IOException ignore) {
+        }
+    }
+}
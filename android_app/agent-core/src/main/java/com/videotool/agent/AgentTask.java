@@ -3,7 +3,6 @@ package com.videotool.agent;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 
 public class AgentTask {
@@ -19,7 +18,11 @@ public class AgentTask {
     private final String zaloId;
     private final String waUrl;
     private final String zaloUrl;
-    private final JSONObject rawPayload;
+    private final byte[] rawPayloadJson;
+    private JSONObject rawPayload;
+    private final ExecutionPlan plan;
+    // Runtime only; not persisted with the task.
+    private final TaskTimeline timeline = new TaskTimeline();
 
     public AgentTask(
             int id,
@@ -35,6 +38,27 @@ public class AgentTask {
             String waUrl,
             String zaloUrl,
             JSONObject rawPayload
+    ) {
+        this(id, taskType, targetChannel, priority, renderedText, commentText, tiktokId, nickname,
+                waNumber, zaloId, waUrl, zaloUrl,
+                rawPayload == null ? null : rawPayload.toString().getBytes(StandardCharsets.UTF_8));
+        this.rawPayload = rawPayload;
+    }
+
+    public AgentTask(
+            int id,
+            String taskType,
+            String targetChannel,
+            int priority,
+            String renderedText,
+            String commentText,
+            String tiktokId,
+            String nickname,
+            String waNumber,
+            String zaloId,
+            String waUrl,
+            String zaloUrl,
+            byte[] rawPayloadJson
     ) {
         this.id = id;
         this.taskType = safe(taskType);
@@ -48,7 +72,8 @@ public class AgentTask {
         this.zaloId = safe(zaloId);
         this.waUrl = safe(waUrl);
         this.zaloUrl = safe(zaloUrl);
-        this.rawPayload = rawPayload == null ? new JSONObject() : rawPayload;
+        this.rawPayloadJson = rawPayloadJson == null || rawPayloadJson.length == 0 ? null : rawPayloadJson;
+        this.plan = ExecutionPlan.compile(this);
     }
 
     public static AgentTask fromJson(JSONObject taskObj) throws JSONException {
@@ -56,6 +81,26 @@ public class AgentTask {
             throw new JSONException("task is null");
         }
         JSONObject payload = taskObj.optJSONObject("payload");
+        // toJson() always writes payload_raw, empty when the server sent "payload": [].
+        if (payload == null && taskObj.has("payload_raw")) {
+            String payloadRaw = taskObj.optString("payload_raw", "");
+            // Persisted by toJson(); the top-level copies are authoritative, so keep the payload opaque.
+            return new AgentTask(
+                    taskObj.optInt("id", 0),
+                    taskObj.optString("task_type", ""),
+                    taskObj.optString("target_channel", "auto"),
+                    taskObj.optInt("priority", 0),
+                    taskObj.optString("rendered_text", ""),
+                    taskObj.optString("comment_text", ""),
+                    taskObj.optString("tiktok_id", ""),
+                    taskObj.optString("nickname", ""),
+                    taskObj.optString("wa_number", ""),
+                    taskObj.optString("zalo_id", ""),
+                    taskObj.optString("wa_url", ""),
+                    taskObj.optString("zalo_url", ""),
+                    payloadRaw.getBytes(StandardCharsets.UTF_8)
+            );
+        }
         if (payload == null) {
             payload = new JSONObject();
         }
@@ -68,9 +113,10 @@ public class AgentTask {
             channels = new JSONObject();
         }
 
+        // The top-level fallbacks cover tasks persisted before payload_raw was always written.
         String tiktokId = influencer.optString("tiktok_id", "");
         if (tiktokId.isEmpty()) {
-            tiktokId = payload.optString("tiktok_id", "");
+            tiktokId = payload.optString("tiktok_id", taskObj.optString("tiktok_id", ""));
         }
 
         String waUrl = taskObj.optString("wa_url", "");
@@ -88,11 +134,11 @@ public class AgentTask {
                 taskObj.optString("target_channel", payload.optString("target_channel", "auto")),
                 taskObj.optInt("priority", 0),
                 taskObj.optString("rendered_text", ""),
-                payload.optString("comment_text", ""),
+                payload.optString("comment_text", taskObj.optString("comment_text", "")),
                 tiktokId,
-                influencer.optString("nickname", payload.optString("nickname", "")),
-                channels.optString("whatsapp", ""),
-                channels.optString("zalo", ""),
+                influencer.optString("nickname", payload.optString("nickname", taskObj.optString("nickname", ""))),
+                channels.optString("whatsapp", taskObj.optString("wa_number", "")),
+                channels.optString("zalo", taskObj.optString("zalo_id", "")),
                 waUrl,
                 zaloUrl,
                 payload
@@ -114,7 +160,7 @@ public class AgentTask {
             obj.put("zalo_id", zaloId);
             obj.put("wa_url", waUrl);
             obj.put("zalo_url", zaloUrl);
-            obj.put("payload", rawPayload);
+            obj.put("payload_raw", rawPayloadJson == null ? "" : new String(rawPayloadJson, StandardCharsets.UTF_8));
         } catch (JSONException ignore) {
         }
         return obj;
@@ -168,10 +214,28 @@ public class AgentTask {
         return zaloUrl;
     }
 
-    public JSONObject getRawPayload() {
+    public synchronized JSONObject getRawPayload() {
+        if (rawPayload == null) {
+            JSONObject parsed = null;
+            if (rawPayloadJson != null) {
+                try {
+                    parsed = new JSONObject(new String(rawPayloadJson, StandardCharsets.UTF_8));
+                } catch (JSONException ignore) {
+                }
+            }
+            rawPayload = parsed == null ? new JSONObject() : parsed;
+        }
         return rawPayload;
     }
 
+    public ExecutionPlan getPlan() {
+        return plan;
+    }
+
+    public TaskTimeline getTimeline() {
+        return timeline;
+    }
+
     public String getDisplayName() {
         String nick = nickname.trim();
         if (!nick.isEmpty()) {
@@ -181,173 +245,57 @@ public class AgentTask {
     }
 
     public boolean isCommentTask() {
-        return "comment_warmup".equalsIgnoreCase(taskType);
+        return plan.isComment();
     }
 
     public boolean isAutoDmTask() {
-        String value = taskType == null ? "" : taskType.trim().toLowerCase();
-        return "zalo_auto_dm".equals(value) || "wa_auto_dm".equals(value);
+        return plan.isAutoDm();
     }
 
     public String getPreparedEvent() {
-        if (isAutoDmTask()) {
-            return "sending";
-        }
-        if (isCommentTask()) {
-            return "comment_prepared";
-        }
-        if ("tiktok_dm".equalsIgnoreCase(taskType)) {
-            return "dm_prepared";
-        }
-        return "im_prepared";
+        return plan.preparedEvent;
     }
 
     public String getDoneEvent() {
-        if (isAutoDmTask()) {
-            return "sent";
-        }
-        if (isCommentTask()) {
-            return "comment_sent";
-        }
-        return "done";
+        return plan.doneEvent;
     }
 
     public String getAutoSendingEvent() {
-        return "sending";
+        return ExecutionPlan.AUTO_SENDING_EVENT;
     }
 
     public String getAutoDoneEvent() {
-        return "sent";
+        return ExecutionPlan.AUTO_DONE_EVENT;
     }
 
     public String getBestText() {
-        if (!renderedText.trim().isEmpty()) {
-            return renderedText.trim();
-        }
-        return commentText.trim();
+        return plan.bestText;
     }
 
     public String resolveTiktokUrl() {
-        String handle = safe(tiktokId).trim();
-        if (handle.isEmpty()) {
-            return "";
-        }
-        if (handle.startsWith("@")) {
-            handle = handle.substring(1);
-        }
-        if (handle.isEmpty()) {
-            return "";
-        }
-        return "https://www.tiktok.com/@" + handle;
+        return ExecutionPlan.resolveTiktokUrl(this);
     }
 
     public String resolveZaloUrl() {
-        String normalizedId = normalizeDigits(zaloId);
-        if (!normalizedId.isEmpty()) {
-            return "https://zalo.me/" + normalizedId;
-        }
-
-        String rawUrl = zaloUrl.trim();
-        if (rawUrl.isEmpty()) {
-            return "";
-        }
-
-        String extracted = extractDigitsFromZaloUrl(rawUrl);
-        if (!extracted.isEmpty()) {
-            return "https://zalo.me/" + extracted;
-        }
-
-        return rawUrl;
+        return ExecutionPlan.resolveZaloUrl(this);
     }
 
     public String resolveWaUrl(String text) {
-        if (!waUrl.trim().isEmpty()) {
-            if (!text.trim().isEmpty() && !waUrl.contains("?text=")) {
-                return waUrl + (waUrl.contains("?") ? "&" : "?") + "text=" + encode(text.trim());
-            }
-            return waUrl.trim();
-        }
-        String digits = waNumber.replaceAll("[^0-9]", "");
-        if (digits.isEmpty()) {
-            return "";
-        }
-        if (text == null || text.trim().isEmpty()) {
-            return "https://wa.me/" + digits;
-        }
-        return "https://wa.me/" + digits + "?text=" + encode(text.trim());
+        return ExecutionPlan.resolveWaUrl(this, text);
     }
 
     public String resolveTargetUrl(String text) {
-        String channel = targetChannel.trim().toLowerCase();
-        if ("wa".equals(channel) || "whatsapp".equals(channel)) {
-            String wa = resolveWaUrl(text);
-            if (!wa.isEmpty()) {
-                return wa;
-            }
-        }
-        if ("zalo".equals(channel)) {
-            String zalo = resolveZaloUrl();
-            if (!zalo.isEmpty()) {
-                return zalo;
-            }
-        }
-        String tiktok = resolveTiktokUrl();
-        if (!tiktok.isEmpty()) {
-            return tiktok;
-        }
-        if ("zalo".equals(channel)) {
-            return resolveZaloUrl();
+        if (text != null && text.trim().equals(plan.bestText)) {
+            return plan.targetUrl;
         }
-        if ("wa".equals(channel) || "whatsapp".equals(channel)) {
-            return resolveWaUrl(text);
-        }
-        return "";
+        return ExecutionPlan.resolveTargetUrl(this, plan.channel, text);
     }
 
     public String getTargetPackageName() {
-        String channel = targetChannel.trim().toLowerCase();
-        if ("wa".equals(channel) || "whatsapp".equals(channel)) {
-            return "com.whatsapp";
-        }
-        if ("zalo".equals(channel)) {
-            return "com.zing.zalo";
-        }
-        return "com.zhiliaoapp.musically";
+        return plan.packageName;
     }
 
     private static String safe(String value) {
         return value == null ? "" : value;
     }
-
-    private static String encode(String value) {
-        try {
-            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
-        } catch (Exception e) {
-            return "";
-        }
-    }
-
-    private static String normalizeDigits(String value) {
-        return safe(value).replaceAll("[^0-9]", "");
-    }
-
-    private static String extractDigitsFromZaloUrl(String url) {
-        String raw = safe(url).trim();
-        if (raw.isEmpty()) {
-            return "";
-        }
-        int slash = raw.lastIndexOf('/');
-        if (slash >= 0 && slash + 1 < raw.length()) {
-            String tail = raw.substring(slash + 1);
-            int q = tail.indexOf('?');
-            if (q > 0) {
-                tail = tail.substring(0, q);
-            }
-            String digits = normalizeDigits(tail);
-            if (!digits.isEmpty()) {
-                return digits;
-            }
-        }
-        return normalizeDigits(raw);
-    }
 }
@@ -0,0 +1,196 @@
+package com.videotool.agent;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class AgentTaskQueue {
+    public static final long DEFAULT_LEASE_TTL_MS = 10 * 60 * 1000L;
+
+    private final int capacity;
+    private final int lowWaterMark;
+    private final PriorityQueue<Entry> entries;
+    private long nextSeq = 0;
+
+    public AgentTaskQueue(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.lowWaterMark = Math.max(1, (this.capacity + 1) / 2);
+        this.entries = new PriorityQueue<>(this.capacity, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                if (a.task.getPriority() != b.task.getPriority()) {
+                    return a.task.getPriority() > b.task.getPriority() ? -1 : 1;
+                }
+                return Long.compare(a.seq, b.seq);
+            }
+        });
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getLowWaterMark() {
+        return lowWaterMark;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public synchronized int remainingCapacity() {
+        return Math.max(0, capacity - entries.size());
+    }
+
+    public synchronized boolean needsRefill() {
+        return entries.size() < lowWaterMark;
+    }
+
+    public synchronized boolean contains(int taskId) {
+        for (Entry entry : entries) {
+            if (entry.task.getId() == taskId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Tasks that do not fit are returned so their leases can be handed back.
+    public synchronized List<AgentTask> offerAll(List<AgentTask> tasks, long leaseTtlMs) {
+        List<AgentTask> rejected = new ArrayList<>();
+        if (tasks == null) {
+            return rejected;
+        }
+        long ttl = leaseTtlMs > 0 ? leaseTtlMs : DEFAULT_LEASE_TTL_MS;
+        long expiresAt = System.currentTimeMillis() + ttl;
+        for (AgentTask task : tasks) {
+            if (task == null || task.getId() <= 0) {
+                continue;
+            }
+            if (contains(task.getId())) {
+                continue;
+            }
+            if (entries.size() >= capacity) {
+                rejected.add(task);
+                continue;
+            }
+            entries.add(new Entry(task, expiresAt, nextSeq++));
+        }
+        return rejected;
+    }
+
+    // Expired entries are left in place for drainExpired().
+    public synchronized AgentTask poll() {
+        long now = System.currentTimeMillis();
+        List<Entry> expired = new ArrayList<>();
+        AgentTask next = null;
+        while (!entries.isEmpty()) {
+            Entry head = entries.poll();
+            if (head.leaseExpiresAt <= now) {
+                expired.add(head);
+                continue;
+            }
+            next = head.task;
+            break;
+        }
+        entries.addAll(expired);
+        return next;
+    }
+
+    // Highest-priority live task of the given kind, skipping others; used to keep
+    // a comment batch going while comment tasks are queued. Null when none.
+    public synchronized AgentTask pollKind(ExecutionPlan.TaskKind kind) {
+        long now = System.currentTimeMillis();
+        List<Entry> skipped = new ArrayList<>();
+        AgentTask next = null;
+        while (!entries.isEmpty()) {
+            Entry head = entries.poll();
+            if (head.leaseExpiresAt > now && head.task.getPlan().kind == kind) {
+                next = head.task;
+                break;
+            }
+            skipped.add(head);
+        }
+        entries.addAll(skipped);
+        return next;
+    }
+
+    public synchronized List<AgentTask> drainExpired() {
+        long now = System.currentTimeMillis();
+        List<AgentTask> out = new ArrayList<>();
+        Iterator<Entry> it = entries.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.leaseExpiresAt <= now) {
+                out.add(entry.task);
+                it.remove();
+            }
+        }
+        return out;
+    }
+
+    public synchronized List<AgentTask> drainAll() {
+        List<AgentTask> out = new ArrayList<>();
+        while (!entries.isEmpty()) {
+            out.add(entries.poll().task);
+        }
+        return out;
+    }
+
+    public synchronized JSONArray toJson() {
+        JSONArray arr = new JSONArray();
+        for (Entry entry : entries) {
+            JSONObject obj = new JSONObject();
+            try {
+                obj.put("task", entry.task.toJson());
+                obj.put("lease_expires_at", entry.leaseExpiresAt);
+            } catch (JSONException ignore) {
+                continue;
+            }
+            arr.put(obj);
+        }
+        return arr;
+    }
+
+    public synchronized void restore(JSONArray arr) {
+        if (arr == null) {
+            return;
+        }
+        for (int i = 0; i < arr.length(); i++) {
+            JSONObject obj = arr.optJSONObject(i);
+            if (obj == null || entries.size() >= capacity) {
+                continue;
+            }
+            try {
+                AgentTask task = AgentTask.fromJson(obj.optJSONObject("task"));
+                if (task.getId() <= 0 || contains(task.getId())) {
+                    continue;
+                }
+                entries.add(new Entry(task, obj.optLong("lease_expires_at", 0L), nextSeq++));
+            } catch (JSONException ignore) {
+            }
+        }
+    }
+
+    private static class Entry {
+        final AgentTask task;
+        final long leaseExpiresAt;
+        final long seq;
+
+        Entry(AgentTask task, long leaseExpiresAt, long seq) {
+            this.task = task;
+            this.leaseExpiresAt = leaseExpiresAt;
+            this.seq = seq;
+        }
+    }
+}
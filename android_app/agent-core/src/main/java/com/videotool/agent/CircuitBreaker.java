@@ -0,0 +1,99 @@
+package com.videotool.agent;
+
+import java.util.Random;
+
+// Stops a device from hammering a server that is already failing. After
+// FAILURE_THRESHOLD consecutive failures the breaker opens for a jittered,
+// growing window; when it expires a single probe is let through.
+public class CircuitBreaker {
+    public static final int FAILURE_THRESHOLD = 5;
+    private static final long OPEN_BASE_MS = 15 * 1000L;
+    private static final long OPEN_MAX_MS = 5 * 60 * 1000L;
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openBaseMs;
+    private final long openMaxMs;
+    private final Random random;
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private int tripCount = 0;
+    private long openUntil = 0L;
+    private boolean probeInFlight = false;
+
+    public CircuitBreaker() {
+        this(FAILURE_THRESHOLD, OPEN_BASE_MS, OPEN_MAX_MS, new Random());
+    }
+
+    public CircuitBreaker(int failureThreshold, long openBaseMs, long openMaxMs, Random random) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openBaseMs = Math.max(1L, openBaseMs);
+        this.openMaxMs = Math.max(this.openBaseMs, openMaxMs);
+        this.random = random == null ? new Random() : random;
+    }
+
+    // Returns 0 when the call may go out, otherwise how long the caller should wait.
+    public synchronized long acquire() {
+        if (state == State.CLOSED) {
+            return 0L;
+        }
+        if (state == State.OPEN) {
+            long remaining = openUntil - now();
+            if (remaining > 0) {
+                return remaining;
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (probeInFlight) {
+            return openBaseMs;
+        }
+        probeInFlight = true;
+        return 0L;
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        tripCount = 0;
+        probeInFlight = false;
+    }
+
+    // retryAfterMs comes from a Retry-After header; it forces the breaker open for at least that long.
+    public synchronized void onFailure(long retryAfterMs) {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold || retryAfterMs > 0) {
+            trip(retryAfterMs);
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && openUntil <= now()) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized long remainingOpenMs() {
+        return state == State.OPEN ? Math.max(0L, openUntil - now()) : 0L;
+    }
+
+    private void trip(long retryAfterMs) {
+        tripCount++;
+        int shift = Math.min(8, tripCount - 1);
+        long window = Math.min(openMaxMs, openBaseMs << shift);
+        window = window / 2 + (long) (random.nextDouble() * (window / 2));
+        state = State.OPEN;
+        probeInFlight = false;
+        openUntil = now() + Math.max(window, Math.min(openMaxMs, retryAfterMs));
+    }
+
+    protected long now() {
+        return System.nanoTime() / 1000000L;
+    }
+}
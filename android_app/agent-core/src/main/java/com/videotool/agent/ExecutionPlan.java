@@ -0,0 +1,233 @@
+package com.videotool.agent;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+// Everything the service and the automation layer need to act on a task,
+// resolved once when the task is decoded. All channel routing rules live here.
+public final class ExecutionPlan {
+    public enum Channel {
+        TIKTOK("tiktok", "com.zhiliaoapp.musically"),
+        WHATSAPP("wa", "com.whatsapp"),
+        ZALO("zalo", "com.zing.zalo");
+
+        public final String wireName;
+        public final String packageName;
+
+        Channel(String wireName, String packageName) {
+            this.wireName = wireName;
+            this.packageName = packageName;
+        }
+
+        public static Channel fromWire(String value) {
+            String channel = value == null ? "" : value.trim();
+            if ("wa".equalsIgnoreCase(channel) || "whatsapp".equalsIgnoreCase(channel)) {
+                return WHATSAPP;
+            }
+            if ("zalo".equalsIgnoreCase(channel)) {
+                return ZALO;
+            }
+            return TIKTOK;
+        }
+    }
+
+    public enum TaskKind {
+        COMMENT_WARMUP("comment_prepared", "comment_sent"),
+        TIKTOK_DM("dm_prepared", "done"),
+        ZALO_AUTO_DM("sending", "sent"),
+        WA_AUTO_DM("sending", "sent"),
+        IM("im_prepared", "done");
+
+        public final String preparedEvent;
+        public final String doneEvent;
+
+        TaskKind(String preparedEvent, String doneEvent) {
+            this.preparedEvent = preparedEvent;
+            this.doneEvent = doneEvent;
+        }
+
+        public boolean isAutoDm() {
+            return this == ZALO_AUTO_DM || this == WA_AUTO_DM;
+        }
+
+        public static TaskKind fromWire(String value) {
+            String type = value == null ? "" : value.trim();
+            if ("comment_warmup".equalsIgnoreCase(type)) {
+                return COMMENT_WARMUP;
+            }
+            if ("tiktok_dm".equalsIgnoreCase(type)) {
+                return TIKTOK_DM;
+            }
+            if ("zalo_auto_dm".equalsIgnoreCase(type)) {
+                return ZALO_AUTO_DM;
+            }
+            if ("wa_auto_dm".equalsIgnoreCase(type)) {
+                return WA_AUTO_DM;
+            }
+            return IM;
+        }
+    }
+
+    public static final String AUTO_SENDING_EVENT = "sending";
+    public static final String AUTO_DONE_EVENT = "sent";
+
+    public final Channel channel;
+    public final Channel route;
+    public final TaskKind kind;
+    public final String bestText;
+    public final String targetUrl;
+    public final String packageName;
+    public final String preparedEvent;
+    public final String doneEvent;
+
+    private ExecutionPlan(Channel channel, Channel route, TaskKind kind, String bestText, String targetUrl) {
+        this.channel = channel;
+        this.route = route;
+        this.kind = kind;
+        this.bestText = bestText;
+        this.targetUrl = targetUrl;
+        this.packageName = route.packageName;
+        this.preparedEvent = kind.preparedEvent;
+        this.doneEvent = kind.doneEvent;
+    }
+
+    public static ExecutionPlan compile(AgentTask task) {
+        Channel channel = Channel.fromWire(task.getTargetChannel());
+        TaskKind kind = TaskKind.fromWire(task.getTaskType());
+        String text = task.getRenderedText().trim();
+        if (text.isEmpty()) {
+            text = task.getCommentText().trim();
+        }
+        String url = resolveChannelUrl(task, channel, text);
+        Channel route = channel;
+        if (url.isEmpty()) {
+            url = resolveTiktokUrl(task);
+            route = Channel.TIKTOK;
+        }
+        return new ExecutionPlan(channel, route, kind, text, url);
+    }
+
+    public boolean isAutoDm() {
+        return kind.isAutoDm();
+    }
+
+    public boolean isComment() {
+        return kind == TaskKind.COMMENT_WARMUP;
+    }
+
+    public boolean hasTarget() {
+        return !targetUrl.isEmpty();
+    }
+
+    // WA and Zalo fall back to the TikTok profile when their own link cannot be built.
+    static String resolveTargetUrl(AgentTask task, Channel channel, String text) {
+        String url = resolveChannelUrl(task, channel, text);
+        return url.isEmpty() ? resolveTiktokUrl(task) : url;
+    }
+
+    private static String resolveChannelUrl(AgentTask task, Channel channel, String text) {
+        if (channel == Channel.WHATSAPP) {
+            return resolveWaUrl(task, text);
+        }
+        if (channel == Channel.ZALO) {
+            return resolveZaloUrl(task);
+        }
+        return "";
+    }
+
+    static String resolveTiktokUrl(AgentTask task) {
+        String handle = task.getTiktokId().trim();
+        if (handle.startsWith("@")) {
+            handle = handle.substring(1);
+        }
+        if (handle.isEmpty()) {
+            return "";
+        }
+        return "https://www.tiktok.com/@" + handle;
+    }
+
+    static String resolveZaloUrl(AgentTask task) {
+        String normalizedId = digitsOnly(task.getZaloId());
+        if (!normalizedId.isEmpty()) {
+            return "https://zalo.me/" + normalizedId;
+        }
+
+        String rawUrl = task.getZaloUrl().trim();
+        if (rawUrl.isEmpty()) {
+            return "";
+        }
+
+        String extracted = extractDigitsFromZaloUrl(rawUrl);
+        if (!extracted.isEmpty()) {
+            return "https://zalo.me/" + extracted;
+        }
+
+        return rawUrl;
+    }
+
+    static String resolveWaUrl(AgentTask task, String text) {
+        String value = text == null ? "" : text.trim();
+        String waUrl = task.getWaUrl();
+        if (!waUrl.trim().isEmpty()) {
+            if (!value.isEmpty() && !waUrl.contains("?text=")) {
+                return waUrl + (waUrl.contains("?") ? "&" : "?") + "text=" + encode(value);
+            }
+            return waUrl.trim();
+        }
+        String digits = digitsOnly(task.getWaNumber());
+        if (digits.isEmpty()) {
+            return "";
+        }
+        if (value.isEmpty()) {
+            return "https://wa.me/" + digits;
+        }
+        return "https://wa.me/" + digits + "?text=" + encode(value);
+    }
+
+    static String digitsOnly(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+        StringBuilder out = null;
+        int len = value.length();
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            boolean digit = c >= '0' && c <= '9';
+            if (out == null) {
+                if (digit) {
+                    continue;
+                }
+                out = new StringBuilder(len);
+                out.append(value, 0, i);
+                continue;
+            }
+            if (digit) {
+                out.append(c);
+            }
+        }
+        return out == null ? value : out.toString();
+    }
+
+    private static String extractDigitsFromZaloUrl(String url) {
+        int slash = url.lastIndexOf('/');
+        if (slash >= 0 && slash + 1 < url.length()) {
+            int end = url.indexOf('?', slash + 1);
+            if (end <= slash + 1) {
+                end = url.length();
+            }
+            String digits = digitsOnly(url.substring(slash + 1, end));
+            if (!digits.isEmpty()) {
+                return digits;
+            }
+        }
+        return digitsOnly(url);
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (Exception e) {
+            return "";
+        }
+    }
+}
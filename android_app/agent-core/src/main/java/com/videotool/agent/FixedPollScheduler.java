@@ -0,0 +1,34 @@
+package com.videotool.agent;
+
+public class FixedPollScheduler implements PollScheduler {
+    private final long intervalMs;
+
+    public FixedPollScheduler(AgentConfig config) {
+        int sec = config == null ? AgentConfig.DEFAULT_POLL_INTERVAL_SEC : config.getPollIntervalSec();
+        this.intervalMs = sec * 1000L;
+    }
+
+    @Override
+    public long onTaskReceived() {
+        return 0L;
+    }
+
+    @Override
+    public long onTaskCompleted() {
+        return 500L;
+    }
+
+    @Override
+    public long onEmpty(String reason, boolean longPolled) {
+        return intervalMs;
+    }
+
+    @Override
+    public long onError(String errorMessage) {
+        return Math.max(5000L, intervalMs);
+    }
+
+    @Override
+    public void reset() {
+    }
+}
@@ -0,0 +1,116 @@
+package com.videotool.agent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Fixed-bucket latency histogram. Recording is lock-free; percentiles are
+// reported as the upper bound of the bucket they fall into.
+public class LatencyHistogram {
+    static final long[] BOUNDS_MS = {
+            5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 60000, 120000, 300000
+    };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long valueMs) {
+        long value = Math.max(0L, valueMs);
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0L : sum.get() / n;
+    }
+
+    public long percentile(double quantile) {
+        long total = 0;
+        long[] snapshot = new long[buckets.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(Math.max(0.0, Math.min(1.0, quantile)) * total);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0) {
+                return i < BOUNDS_MS.length ? Math.min(BOUNDS_MS[i], max.get()) : max.get();
+            }
+        }
+        return max.get();
+    }
+
+    public long[] bucketCounts() {
+        long[] out = new long[buckets.length()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = buckets.get(i);
+        }
+        return out;
+    }
+
+    // Replaces the contents with previously saved bucket counts (see bucketCounts()).
+    public void restore(long[] counts, long sumMs, long maxMs) {
+        reset();
+        long total = 0L;
+        for (int i = 0; counts != null && i < counts.length && i < buckets.length(); i++) {
+            long n = Math.max(0L, counts[i]);
+            buckets.set(i, n);
+            total += n;
+        }
+        count.set(total);
+        sum.set(Math.max(0L, sumMs));
+        max.set(Math.max(0L, maxMs));
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0L);
+        }
+        count.set(0L);
+        sum.set(0L);
+        max.set(0L);
+    }
+
+    public String summary() {
+        return "n=" + getCount()
+                + " p50=" + percentile(0.50)
+                + " p95=" + percentile(0.95)
+                + " p99=" + percentile(0.99)
+                + " max=" + getMax();
+    }
+
+    private static int bucketOf(long value) {
+        for (int i = 0; i < BOUNDS_MS.length; i++) {
+            if (value <= BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return BOUNDS_MS.length;
+    }
+}
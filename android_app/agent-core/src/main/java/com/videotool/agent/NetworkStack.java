@@ -0,0 +1,123 @@
+package com.videotool.agent;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.CookieJar;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+// One connection pool and one dispatcher for the whole app. Every client is
+// derived from base() with newBuilder(), so they all share sockets and threads
+// and differ only in cookie/redirect/timeout policy.
+public final class NetworkStack {
+    public static final long CONNECT_TIMEOUT_SEC = 10L;
+    public static final long READ_TIMEOUT_SEC = 20L;
+    public static final long WRITE_TIMEOUT_SEC = 20L;
+    public static final long CALL_TIMEOUT_SEC = 40L;
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MIN = 5L;
+    private static final int MAX_REQUESTS = 16;
+    private static final int MAX_REQUESTS_PER_HOST = 6;
+
+    private static OkHttpClient base;
+    private static OkHttpClient agent;
+
+    private NetworkStack() {
+    }
+
+    public static synchronized OkHttpClient base() {
+        if (base == null) {
+            final AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    0,
+                    Integer.MAX_VALUE,
+                    60L,
+                    TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "net-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }
+            );
+            Dispatcher dispatcher = new Dispatcher(pool);
+            dispatcher.setMaxRequests(MAX_REQUESTS);
+            dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+            base = new OkHttpClient.Builder()
+                    .dispatcher(dispatcher)
+                    .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MIN, TimeUnit.MINUTES))
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .connectTimeout(CONNECT_TIMEOUT_SEC, TimeUnit.SECONDS)
+                    .readTimeout(READ_TIMEOUT_SEC, TimeUnit.SECONDS)
+                    .writeTimeout(WRITE_TIMEOUT_SEC, TimeUnit.SECONDS)
+                    .callTimeout(CALL_TIMEOUT_SEC, TimeUnit.SECONDS)
+                    .retryOnConnectionFailure(true)
+                    .build();
+        }
+        return base;
+    }
+
+    // Token-authenticated agent API: never sends or stores session cookies.
+    public static synchronized OkHttpClient agent() {
+        if (agent == null) {
+            agent = base().newBuilder()
+                    .cookieJar(CookieJar.NO_COOKIES)
+                    .build();
+        }
+        return agent;
+    }
+
+    // Session-cookie console API.
+    public static OkHttpClient session(CookieJar cookieJar) {
+        return base().newBuilder()
+                .cookieJar(cookieJar == null ? CookieJar.NO_COOKIES : cookieJar)
+                .followRedirects(true)
+                .followSslRedirects(true)
+                .build();
+    }
+
+    // Opens (TLS + HTTP/2 negotiation) a pooled connection to the origin ahead of
+    // the first real request. Failures are ignored; the real call will report them.
+    public static void prewarm(String url) {
+        HttpUrl parsed = url == null ? null : HttpUrl.parse(url.trim());
+        if (parsed == null) {
+            return;
+        }
+        HttpUrl origin = new HttpUrl.Builder()
+                .scheme(parsed.scheme())
+                .host(parsed.host())
+                .port(parsed.port())
+                .build();
+        Request request = new Request.Builder()
+                .url(origin)
+                .head()
+                .header("User-Agent", AgentApiClient.AGENT_VERSION)
+                .build();
+        agent().newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+            }
+        });
+    }
+}
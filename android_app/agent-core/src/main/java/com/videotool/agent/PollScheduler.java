@@ -0,0 +1,13 @@
+package com.videotool.agent;
+
+public interface PollScheduler {
+    long onTaskReceived();
+
+    long onTaskCompleted();
+
+    long onEmpty(String reason, boolean longPolled);
+
+    long onError(String errorMessage);
+
+    void reset();
+}
@@ -0,0 +1,566 @@
+package com.videotool.agent;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class ReportOutbox {
+    public static final int BATCH_SIZE = 20;
+    private static final String JOURNAL_NAME = "report_outbox.jsonl";
+    private static final long RETRY_BASE_MS = 2000L;
+    private static final long RETRY_MAX_MS = 5 * 60 * 1000L;
+    private static final int COMPACT_THRESHOLD = 200;
+    // Server messages that are about the device or its token, not the event.
+    private static final String[] CONFIG_ERRORS = {
+            "token_required", "device_not_found", "device_disabled", "only_post"
+    };
+    // Server messages that reject the event itself; resending it can never succeed.
+    private static final String[] REJECTIONS = {
+            "task_not_found", "task_device_mismatch"
+    };
+
+    public interface Listener {
+        void onDelivered(Event event, AgentApiClient.ReportResult result);
+
+        void onDropped(Event event, String errorMessage);
+
+        void onRetryScheduled(int pending, long delayMs, String errorMessage);
+    }
+
+    public static class Event {
+        public final long seq;
+        public final int taskId;
+        public final String event;
+        public final String renderedText;
+        public final String errorCode;
+        public final String errorMessage;
+        public final String screenshotPath;
+        public final boolean autoMode;
+        public final long createdAt;
+        public final long durationMs;
+        // Stage durations as a JSON object, see TaskTimeline.toJson().
+        public final String timings;
+        // Sent with every delivery attempt so replays can be told apart server-side.
+        public final String idempotencyKey;
+
+        public Event(
+                long seq,
+                int taskId,
+                String event,
+                String renderedText,
+                String errorCode,
+                String errorMessage,
+                String screenshotPath,
+                boolean autoMode,
+                long createdAt,
+                long durationMs,
+                String timings,
+                String idempotencyKey
+        ) {
+            this.seq = seq;
+            this.taskId = taskId;
+            this.event = safe(event);
+            this.renderedText = safe(renderedText);
+            this.errorCode = safe(errorCode);
+            this.errorMessage = safe(errorMessage);
+            this.screenshotPath = safe(screenshotPath);
+            this.autoMode = autoMode;
+            this.createdAt = createdAt;
+            this.durationMs = Math.max(0L, durationMs);
+            this.timings = safe(timings);
+            this.idempotencyKey = idempotencyKey == null || idempotencyKey.isEmpty()
+                    ? "outbox-" + taskId + "-" + createdAt + "-" + seq
+                    : idempotencyKey;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject obj = new JSONObject();
+            obj.put("op", "add");
+            obj.put("seq", seq);
+            obj.put("task_id", taskId);
+            obj.put("event", event);
+            obj.put("rendered_text", renderedText);
+            obj.put("error_code", errorCode);
+            obj.put("error_message", errorMessage);
+            obj.put("screenshot_path", screenshotPath);
+            obj.put("auto", autoMode ? 1 : 0);
+            obj.put("created_at", createdAt);
+            obj.put("duration_ms", durationMs);
+            obj.put("timings", timings);
+            obj.put("idempotency_key", idempotencyKey);
+            return obj;
+        }
+
+        static Event fromJson(JSONObject obj) {
+            return new Event(
+                    obj.optLong("seq", 0L),
+                    obj.optInt("task_id", 0),
+                    obj.optString("event", ""),
+                    obj.optString("rendered_text", ""),
+                    obj.optString("error_code", ""),
+                    obj.optString("error_message", ""),
+                    obj.optString("screenshot_path", ""),
+                    obj.optInt("auto", 0) == 1,
+                    obj.optLong("created_at", 0L),
+                    obj.optLong("duration_ms", 0L),
+                    obj.optString("timings", ""),
+                    obj.optString("idempotency_key", "")
+            );
+        }
+    }
+
+    private final File journal;
+    private final AgentApiClient apiClient;
+    private final Listener listener;
+    private final ScheduledExecutorService io;
+    private final Random random = new Random();
+    private final TreeMap<Long, Event> pending = new TreeMap<>();
+
+    private volatile AgentConfig config;
+    private long nextSeq = 1;
+    private int journalLines = 0;
+    private int failureStreak = 0;
+    private boolean flushing = false;
+    private boolean batchUnsupported = false;
+    private ScheduledFuture<?> retryFuture;
+
+    public ReportOutbox(File dir, AgentApiClient apiClient, Listener listener) {
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        this.journal = new File(dir, JOURNAL_NAME);
+        this.apiClient = apiClient;
+        this.listener = listener;
+        this.io = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "agent-report-outbox");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        post(new Runnable() {
+            @Override
+            public void run() {
+                replayJournal();
+            }
+        });
+    }
+
+    public void setConfig(AgentConfig config) {
+        this.config = config;
+    }
+
+    public void enqueue(
+            final int taskId,
+            final String event,
+            final String renderedText,
+            final String errorCode,
+            final String errorMessage,
+            final String screenshotPath,
+            final boolean autoMode,
+            final long durationMs,
+            final String timings
+    ) {
+        final long createdAt = System.currentTimeMillis();
+        final String idempotencyKey = AgentApiClient.newIdempotencyKey();
+        post(new Runnable() {
+            @Override
+            public void run() {
+                Event item = new Event(nextSeq++, taskId, event, renderedText, errorCode, errorMessage,
+                        screenshotPath, autoMode, createdAt, durationMs, timings, idempotencyKey);
+                try {
+                    appendLine(item.toJson(), true);
+                } catch (JSONException ignore) {
+                }
+                pending.put(item.seq, item);
+                AgentMetrics.get().setGauge(AgentMetrics.OUTBOX_PENDING, pending.size());
+                flushLocked();
+            }
+        });
+    }
+
+    public void flushNow() {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                failureStreak = 0;
+                cancelRetry();
+                flushLocked();
+            }
+        });
+    }
+
+    public int pendingCount() {
+        try {
+            return io.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return pending.size();
+                }
+            }).get(2, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    public void shutdown() {
+        io.shutdown();
+    }
+
+    private void post(Runnable runnable) {
+        try {
+            io.execute(runnable);
+        } catch (RejectedExecutionException ignore) {
+            // Outbox was shut down; the journal still holds anything not acknowledged.
+        }
+    }
+
+    private void flushLocked() {
+        if (flushing || pending.isEmpty() || retryFuture != null) {
+            return;
+        }
+        AgentConfig cfg = config;
+        if (cfg == null || !cfg.isValid()) {
+            scheduleRetry("config_invalid");
+            return;
+        }
+        // Batches never mix manual and auto events because they go to different endpoints.
+        boolean mode = pending.firstEntry().getValue().autoMode;
+        final List<Event> batch = new ArrayList<>();
+        for (Event item : pending.values()) {
+            if (item.autoMode != mode) {
+                continue;
+            }
+            batch.add(item);
+            if (batch.size() >= (batchUnsupported ? 1 : BATCH_SIZE)) {
+                break;
+            }
+        }
+        flushing = true;
+        if (batchUnsupported) {
+            sendSingle(cfg, batch.get(0));
+        } else {
+            sendBatch(cfg, batch, mode);
+        }
+    }
+
+    private void sendBatch(final AgentConfig cfg, final List<Event> batch, final boolean autoMode) {
+        final long sentAt = TaskTimeline.now();
+        apiClient.reportBatch(cfg, batch, autoMode, new AgentApiClient.BatchCallback() {
+            @Override
+            public void onSuccess(final List<AgentApiClient.ReportResult> results) {
+                AgentMetrics.get().recordLatency(AgentMetrics.REPORT_RTT, TaskTimeline.now() - sentAt);
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushing = false;
+                        for (int i = 0; i < batch.size(); i++) {
+                            AgentApiClient.ReportResult result = i < results.size() ? results.get(i) : null;
+                            acknowledge(batch.get(i), result, result == null ? "" : result.error);
+                        }
+                        onFlushSucceeded();
+                    }
+                });
+            }
+
+            @Override
+            public void onUnsupported() {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushing = false;
+                        batchUnsupported = true;
+                        flushLocked();
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final String errorMessage, final boolean retryable) {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushing = false;
+                        // A whole-batch error (bad token, disabled device, a server
+                        // that rejects the request) says nothing about the events in
+                        // it; only per-item errors in a successful response drop events.
+                        scheduleRetry(errorMessage);
+                    }
+                });
+            }
+        });
+    }
+
+    private void sendSingle(final AgentConfig cfg, final Event item) {
+        final long sentAt = TaskTimeline.now();
+        AgentApiClient.ApiCallback<AgentApiClient.ReportResult> callback = new AgentApiClient.ApiCallback<AgentApiClient.ReportResult>() {
+            @Override
+            public void onSuccess(final AgentApiClient.ReportResult result) {
+                AgentMetrics.get().recordLatency(AgentMetrics.REPORT_RTT, TaskTimeline.now() - sentAt);
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushing = false;
+                        acknowledge(item, result, "");
+                        onFlushSucceeded();
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final String errorMessage) {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushing = false;
+                        // Only a decoded rejection drops the event; anything else (an HTML
+                        // page from a captive portal, a cut-off body) may not have reached us.
+                        if (!isRejected(errorMessage)) {
+                            scheduleRetry(errorMessage);
+                            return;
+                        }
+                        // The server rejected this event (unknown task, another device's task).
+                        acknowledge(item, null, errorMessage);
+                        onFlushSucceeded();
+                    }
+                });
+            }
+        };
+        apiClient.report(cfg, item, callback);
+    }
+
+    private void acknowledge(Event item, AgentApiClient.ReportResult result, String errorMessage) {
+        if (pending.remove(item.seq) == null) {
+            return;
+        }
+        JSONObject ack = new JSONObject();
+        try {
+            ack.put("op", "ack");
+            ack.put("seq", item.seq);
+        } catch (JSONException ignore) {
+        }
+        appendLine(ack, false);
+        AgentMetrics metrics = AgentMetrics.get();
+        metrics.setGauge(AgentMetrics.OUTBOX_PENDING, pending.size());
+        if (result != null && (errorMessage == null || errorMessage.isEmpty())) {
+            metrics.increment(AgentMetrics.REPORTS_SENT);
+        } else {
+            metrics.increment(AgentMetrics.REPORTS_DROPPED);
+        }
+        if (listener == null) {
+            return;
+        }
+        if (result != null && (errorMessage == null || errorMessage.isEmpty())) {
+            listener.onDelivered(item, result);
+        } else {
+            listener.onDropped(item, errorMessage == null || errorMessage.isEmpty() ? "rejected" : errorMessage);
+        }
+    }
+
+    private void onFlushSucceeded() {
+        failureStreak = 0;
+        maybeCompact();
+        flushLocked();
+    }
+
+    private void scheduleRetry(String errorMessage) {
+        if (retryFuture != null) {
+            return;
+        }
+        failureStreak++;
+        int shift = Math.min(8, failureStreak - 1);
+        long delay = Math.min(RETRY_MAX_MS, RETRY_BASE_MS << shift);
+        delay = delay / 2 + (long) (random.nextDouble() * (delay / 2));
+        // Never come back before the circuit breaker would let the request out.
+        delay = Math.max(delay, apiClient.retryAfterMs());
+        try {
+            retryFuture = io.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    retryFuture = null;
+                    flushLocked();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return;
+        }
+        AgentMetrics.get().increment(AgentMetrics.REPORT_RETRIES);
+        if (listener != null) {
+            listener.onRetryScheduled(pending.size(), delay, errorMessage);
+        }
+    }
+
+    private void cancelRetry() {
+        if (retryFuture != null) {
+            retryFuture.cancel(false);
+            retryFuture = null;
+        }
+    }
+
+    static boolean isRetryable(String errorMessage) {
+        String value = errorMessage == null ? "" : errorMessage;
+        if (value.contains("_request_failed") || value.contains("_build_error") || value.contains("_circuit_open")
+                || value.contains("_non_json")) {
+            return true;
+        }
+        int idx = value.indexOf("_http_");
+        if (idx < 0) {
+            return false;
+        }
+        String code = value.substring(idx + 6);
+        return code.startsWith("5") || code.startsWith("408") || code.startsWith("429");
+    }
+
+    static boolean isRejected(String errorMessage) {
+        String value = errorMessage == null ? "" : errorMessage;
+        if (!value.startsWith("report_failed: ")) {
+            return false;
+        }
+        for (String code : REJECTIONS) {
+            if (value.endsWith(": " + code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isConfigError(String errorMessage) {
+        String value = errorMessage == null ? "" : errorMessage;
+        if (value.contains("_http_401") || value.contains("_http_403")) {
+            return true;
+        }
+        for (String code : CONFIG_ERRORS) {
+            if (value.endsWith(": " + code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void replayJournal() {
+        pending.clear();
+        journalLines = 0;
+        if (!journal.exists()) {
+            return;
+        }
+        boolean torn = !endsWithNewline(journal);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journal), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                journalLines++;
+                try {
+                    JSONObject obj = new JSONObject(line);
+                    long seq = obj.optLong("seq", 0L);
+                    nextSeq = Math.max(nextSeq, seq + 1);
+                    if ("ack".equals(obj.optString("op", ""))) {
+                        pending.remove(seq);
+                    } else if (seq > 0) {
+                        pending.put(seq, Event.fromJson(obj));
+                    }
+                } catch (JSONException ignore) {
+                    // A torn final line after process death is expected; skip it.
+                    torn = true;
+                }
+            }
+        } catch (IOException ignore) {
+        }
+        // The next append would land on the torn line and be lost with it on the
+        // following replay, so rewrite the journal from what was recovered first.
+        if (torn) {
+            if (!compact()) {
+                terminateLine();
+            }
+        } else {
+            maybeCompact();
+        }
+        flushLocked();
+    }
+
+    private static boolean endsWithNewline(File file) {
+        long length = file.length();
+        if (length == 0) {
+            return true;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(length - 1);
+            return raf.read() == '\n';
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void appendLine(JSONObject obj, boolean sync) {
+        try (FileOutputStream out = new FileOutputStream(journal, true)) {
+            out.write((obj.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+            if (sync) {
+                out.getFD().sync();
+            }
+            journalLines++;
+        } catch (IOException ignore) {
+        }
+    }
+
+    private void maybeCompact() {
+        if (journalLines < COMPACT_THRESHOLD || journalLines < pending.size() * 2) {
+            return;
+        }
+        compact();
+    }
+
+    private boolean compact() {
+        File tmp = new File(journal.getParentFile(), JOURNAL_NAME + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp, false)) {
+            for (Map.Entry<Long, Event> entry : pending.entrySet()) {
+                out.write((entry.getValue().toJson().toString() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            out.getFD().sync();
+        } catch (IOException | JSONException e) {
+            tmp.delete();
+            return false;
+        }
+        if (!tmp.renameTo(journal)) {
+            return false;
+        }
+        journalLines = pending.size();
+        return true;
+    }
+
+    // Last resort when the journal cannot be rewritten: close off the torn line
+    // so the next record at least starts on a line of its own.
+    private void terminateLine() {
+        try (FileOutputStream out = new FileOutputStream(journal, true)) {
+            out.write('\n');
+            out.getFD().sync();
+        } catch (IOException ignore) {
+        }
+    }
+
+    private static String safe(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,93 @@
+package com.videotool.agent;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.Random;
+
+// Per-endpoint retry rules for AgentApiClient. Retries are paid for from a
+// token budget that only refills on successful calls, so a degraded server
+// sees a bounded amount of extra traffic instead of a retry storm.
+public class RetryPolicy {
+    private static final double BUDGET_MAX = 10.0;
+    private static final double BUDGET_PER_SUCCESS = 0.1;
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final boolean replaySafe;
+    private final Random random = new Random();
+    private double budget = BUDGET_MAX;
+
+    // replaySafe: the server can take the same request twice. Otherwise only
+    // failures where nothing was sent are retried.
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, boolean replaySafe) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = Math.max(1L, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+        this.replaySafe = replaySafe;
+    }
+
+    // Pulls lease tasks on the server, so they are only retried when the request never left the device.
+    public static RetryPolicy forPull() {
+        return new RetryPolicy(2, 1000L, 4000L, false);
+    }
+
+    // Reports carry an idempotency_key the backend dedupes on, so a replay after a
+    // timeout or 5xx is answered from the first delivery instead of applied again.
+    public static RetryPolicy forReport() {
+        return new RetryPolicy(3, 500L, 4000L, true);
+    }
+
+    public long getMaxDelayMs() {
+        return maxDelayMs;
+    }
+
+    public boolean shouldRetry(int attempt, IOException e) {
+        if (!replaySafe && !isUnsent(e)) {
+            return false;
+        }
+        return take(attempt);
+    }
+
+    public boolean shouldRetry(int attempt, int httpStatus) {
+        if (!isRetryableStatus(httpStatus)) {
+            return false;
+        }
+        // A 5xx may have been processed; 408/429 were rejected before any work was done.
+        if (!replaySafe && httpStatus != 408 && httpStatus != 429) {
+            return false;
+        }
+        return take(attempt);
+    }
+
+    public synchronized void onSuccess() {
+        budget = Math.min(BUDGET_MAX, budget + BUDGET_PER_SUCCESS);
+    }
+
+    // Equal jitter, same as the poll and outbox backoff.
+    public long backoffMs(int attempt) {
+        int shift = Math.max(0, Math.min(8, attempt - 1));
+        long delay = Math.min(maxDelayMs, baseDelayMs << shift);
+        return delay / 2 + (long) (random.nextDouble() * (delay / 2));
+    }
+
+    public static boolean isRetryableStatus(int httpStatus) {
+        return (httpStatus >= 500 && httpStatus != 501) || httpStatus == 408 || httpStatus == 429;
+    }
+
+    private synchronized boolean take(int attempt) {
+        if (attempt >= maxAttempts || budget < 1.0) {
+            return false;
+        }
+        budget -= 1.0;
+        return true;
+    }
+
+    private static boolean isUnsent(IOException e) {
+        return e instanceof ConnectException
+                || e instanceof UnknownHostException
+                || e instanceof NoRouteToHostException;
+    }
+}
@@ -0,0 +1,90 @@
+package com.videotool.agent;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Stage timestamps for one task, on the monotonic clock. A task restored from
+// disk after a restart has no pull mark; its durations start at dequeue.
+public class TaskTimeline {
+    private long pulledAt = 0L;
+    private long pullRttMs = -1L;
+    private long startedAt = 0L;
+    private long preparedAt = 0L;
+    private long finishedAt = 0L;
+
+    public static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    public synchronized void markPulled(long rttMs) {
+        pulledAt = now();
+        pullRttMs = rttMs;
+    }
+
+    public synchronized void markStarted() {
+        startedAt = now();
+        preparedAt = 0L;
+        finishedAt = 0L;
+    }
+
+    public synchronized void markPrepared() {
+        preparedAt = now();
+    }
+
+    public synchronized void markFinished() {
+        finishedAt = now();
+    }
+
+    public synchronized long pullRttMs() {
+        return pullRttMs;
+    }
+
+    public synchronized long queueMs() {
+        return span(pulledAt, startedAt);
+    }
+
+    public synchronized long prepareMs() {
+        return span(startedAt, preparedAt);
+    }
+
+    public synchronized long automationMs() {
+        return span(preparedAt, finishedAt);
+    }
+
+    public synchronized long totalMs() {
+        long from = pulledAt > 0 ? pulledAt : startedAt;
+        return span(from, finishedAt);
+    }
+
+    // Time from the first known mark until now; what duration_ms carries on each report.
+    public synchronized long elapsedMs() {
+        long from = pulledAt > 0 ? pulledAt : startedAt;
+        return from > 0 ? Math.max(0L, now() - from) : 0L;
+    }
+
+    public synchronized JSONObject toJson() {
+        JSONObject obj = new JSONObject();
+        try {
+            putIfKnown(obj, "pull_rtt_ms", pullRttMs);
+            putIfKnown(obj, "queue_ms", span(pulledAt, startedAt));
+            putIfKnown(obj, "prepare_ms", span(startedAt, preparedAt));
+            putIfKnown(obj, "automation_ms", span(preparedAt, finishedAt));
+            putIfKnown(obj, "total_ms", span(pulledAt > 0 ? pulledAt : startedAt, finishedAt));
+        } catch (JSONException ignore) {
+        }
+        return obj;
+    }
+
+    private static void putIfKnown(JSONObject obj, String key, long value) throws JSONException {
+        if (value >= 0) {
+            obj.put(key, value);
+        }
+    }
+
+    private static long span(long from, long to) {
+        if (from <= 0 || to <= 0 || to < from) {
+            return -1L;
+        }
+        return to - from;
+    }
+}
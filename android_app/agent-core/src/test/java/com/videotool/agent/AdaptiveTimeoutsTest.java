@@ -0,0 +1,61 @@
+package com.videotool.agent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveTimeoutsTest {
+    private static final String KEY = "im_auto_send/com.whatsapp/send";
+
+    @Test
+    public void defaultUntilEnoughSamples() {
+        AdaptiveTimeouts timings = new AdaptiveTimeouts(1000L, 20000L);
+        for (int i = 0; i < AdaptiveTimeouts.MIN_SAMPLES - 1; i++) {
+            timings.record(KEY, 400L);
+        }
+
+        assertEquals(3000L, timings.timeoutFor(KEY, 3000L));
+        timings.record(KEY, 400L);
+        assertTrue(timings.timeoutFor(KEY, 3000L) < 3000L);
+    }
+
+    @Test
+    public void fallsBackToDefaultAfterConsecutiveTimeouts() {
+        AdaptiveTimeouts timings = new AdaptiveTimeouts(1000L, 20000L);
+        for (int i = 0; i < 100; i++) {
+            timings.record(KEY, 400L);
+        }
+        long learned = timings.timeoutFor(KEY, 3000L);
+        assertTrue(learned < 3000L);
+
+        for (int i = 0; i < AdaptiveTimeouts.FALLBACK_AFTER_TIMEOUTS; i++) {
+            timings.recordTimeout(KEY, learned);
+        }
+        assertEquals(3000L, timings.timeoutFor(KEY, 3000L));
+
+        // One completion ends the streak.
+        timings.record(KEY, 400L);
+        assertTrue(timings.timeoutFor(KEY, 3000L) < 3000L);
+    }
+
+    @Test
+    public void timeoutsPushTheLimitBackUp() {
+        AdaptiveTimeouts timings = new AdaptiveTimeouts(1000L, 20000L);
+        for (int i = 0; i < 100; i++) {
+            timings.record(KEY, 400L);
+        }
+        long limit = timings.timeoutFor(KEY, 3000L);
+        // The app got slower: every attempt now runs into the limit, with a
+        // completion in between so the default fallback never kicks in.
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 20; i++) {
+                timings.recordTimeout(KEY, limit);
+            }
+            timings.record(KEY, limit);
+            limit = timings.timeoutFor(KEY, 3000L);
+        }
+
+        assertTrue("limit " + limit, limit >= 3000L);
+    }
+}
@@ -0,0 +1,103 @@
+package com.videotool.agent;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AgentApiClientTest {
+    private static final String TASK = "{\"code\":0,\"data\":{\"task\":{\"id\":9,\"task_type\":\"comment_warmup\","
+            + "\"rendered_text\":\"hi\",\"influencer\":{\"tiktok_id\":\"creator\"}}}}";
+
+    private MockWebServer server;
+    private AgentConfig config;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        config = new AgentConfig();
+        config.setAdminBase(server.url("/").toString());
+        config.setToken("token");
+        config.setDeviceCode("device");
+        config.setAutoMode(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void autoPullAsksForAutoDmTypes() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"code\":0,\"data\":{\"task\":null,\"reason\":\"empty_queue\"}}"));
+        Result result = new Result();
+        new AgentApiClient(new OkHttpClient()).pullTasksAuto(config, 1, result);
+
+        assertTrue(result.done.await(5, TimeUnit.SECONDS));
+        RecordedRequest request = server.takeRequest();
+        assertTrue(request.getPath().endsWith("/mobile_agent/pull_auto"));
+        JSONArray types = new JSONObject(request.getBody().readUtf8()).getJSONArray("task_types");
+        assertEquals("zalo_auto_dm", types.getString(0));
+        assertEquals("wa_auto_dm", types.getString(1));
+    }
+
+    @Test
+    public void commentPullUsesRegularQueue() throws Exception {
+        server.enqueue(new MockResponse().setBody(TASK));
+        Result result = new Result();
+        new AgentApiClient(new OkHttpClient()).pullCommentTasks(config, 3, result);
+
+        assertTrue(result.done.await(5, TimeUnit.SECONDS));
+        RecordedRequest request = server.takeRequest();
+        assertTrue(request.getPath().endsWith("/mobile_agent/pull"));
+        JSONObject body = new JSONObject(request.getBody().readUtf8());
+        assertEquals(1, body.getJSONArray("task_types").length());
+        assertEquals("comment_warmup", body.getJSONArray("task_types").getString(0));
+        assertTrue(!body.has("wait_sec"));
+        assertEquals(ExecutionPlan.TaskKind.COMMENT_WARMUP, result.value.get().tasks.get(0).getPlan().kind);
+    }
+
+    @Test
+    public void errorBodyCutOffStillCallsBack() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(502).setBody("<html>bad gateway</html>")
+                .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+        Result result = new Result();
+        new AgentApiClient(new OkHttpClient()).pullTasks(config, 1, result);
+
+        assertTrue(result.done.await(5, TimeUnit.SECONDS));
+        assertTrue(result.error.get().startsWith("pull_http_502"));
+    }
+
+    private static final class Result implements AgentApiClient.ApiCallback<AgentApiClient.PullResult> {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<AgentApiClient.PullResult> value = new AtomicReference<>();
+        final AtomicReference<String> error = new AtomicReference<>();
+
+        @Override
+        public void onSuccess(AgentApiClient.PullResult result) {
+            value.set(result);
+            done.countDown();
+        }
+
+        @Override
+        public void onError(String errorMessage) {
+            error.set(errorMessage);
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.videotool.agent;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AgentResponseDecoderTest {
+    // Shape of MobileAgent::pull on the PHP side.
+    private static final String PHP_PULL = "{\"code\":0,\"msg\":\"ok\",\"data\":{\"task\":{"
+            + "\"id\":42,\"task_type\":\"wa_im\",\"target_channel\":\"wa\",\"priority\":220,"
+            + "\"payload\":{\"channels\":{\"whatsapp\":\"+84 912 345\",\"wa_me\":\"\"},\"comment_text\":\"\","
+            + "\"template_id\":3,\"nested\":{\"a\":[1,2,{\"b\":null}]}},"
+            + "\"rendered_text\":\"Hello\",\"execution_hint\":\"auto_fill_then_wait_manual_send\","
+            + "\"influencer\":{\"id\":7,\"tiktok_id\":\"@creator\",\"nickname\":\"Creator\",\"region\":\"VN\"}},"
+            + "\"server_time\":\"2024-01-01 00:00:00\"}}";
+
+    @Test
+    public void decodesPhpPullResponse() throws Exception {
+        AgentResponseDecoder.Envelope<AgentApiClient.PullResult> envelope =
+                AgentResponseDecoder.decodePull(new StringReader(PHP_PULL));
+
+        assertTrue(envelope.isOk());
+        List<AgentTask> tasks = envelope.data.tasks;
+        assertEquals(1, tasks.size());
+        AgentTask task = tasks.get(0);
+        assertEquals(42, task.getId());
+        assertEquals(220, task.getPriority());
+        assertEquals("@creator", task.getTiktokId());
+        assertEquals("Creator", task.getNickname());
+        assertEquals("+84 912 345", task.getWaNumber());
+        assertEquals("https://wa.me/84912345?text=Hello", task.getPlan().targetUrl);
+        assertEquals(3, task.getRawPayload().getInt("template_id"));
+        assertEquals("2024-01-01 00:00:00", envelope.data.serverTime);
+    }
+
+    @Test
+    public void streamDecodeMatchesOrgJson() throws Exception {
+        AgentTask streamed = AgentResponseDecoder.decodePull(new StringReader(PHP_PULL)).data.task;
+        AgentTask parsed = AgentTask.fromJson(new JSONObject(PHP_PULL).getJSONObject("data").getJSONObject("task"));
+
+        // The raw payload keeps the server's key order only on the streaming path.
+        JSONObject expected = parsed.toJson();
+        JSONObject actual = streamed.toJson();
+        expected.remove("payload_raw");
+        actual.remove("payload_raw");
+        assertTrue(expected.similar(actual));
+        assertTrue(parsed.getRawPayload().similar(streamed.getRawPayload()));
+    }
+
+    @Test
+    public void emptyPayloadArraySurvivesPersistence() throws Exception {
+        String body = "{\"code\":0,\"data\":{\"task\":{\"id\":5,\"task_type\":\"comment_warmup\",\"payload\":[],"
+                + "\"rendered_text\":\"hi\",\"influencer\":{\"tiktok_id\":\"creator\",\"nickname\":\"N\"}}}}";
+        AgentTask task = AgentResponseDecoder.decodePull(new StringReader(body)).data.task;
+
+        AgentTask restored = AgentTask.fromJson(task.toJson());
+        assertEquals("creator", restored.getTiktokId());
+        assertEquals("N", restored.getNickname());
+        assertEquals("https://www.tiktok.com/@creator", restored.getPlan().targetUrl);
+    }
+
+    @Test
+    public void decodesTaskArrayWithLease() throws Exception {
+        String body = "{\"code\":0,\"data\":{\"tasks\":[{\"id\":1,\"task_type\":\"tiktok_dm\"},"
+                + "{\"id\":2,\"task_type\":\"comment_warmup\"}],\"task\":{\"id\":1},"
+                + "\"lease_ttl_sec\":120,\"long_poll\":1,\"push_url\":\" wss://push \"}}";
+        AgentApiClient.PullResult result = AgentResponseDecoder.decodePull(new StringReader(body)).data;
+
+        assertEquals(2, result.tasks.size());
+        assertEquals(ExecutionPlan.TaskKind.COMMENT_WARMUP, result.tasks.get(1).getPlan().kind);
+        assertEquals(120000L, result.leaseTtlMs);
+        assertTrue(result.longPolled);
+        assertEquals("wss://push", result.pushUrl);
+    }
+
+    @Test
+    public void emptyQueueKeepsReason() throws Exception {
+        String body = "{\"code\":0,\"msg\":\"ok\",\"data\":{\"task\":null,\"reason\":\"device_cooling\","
+                + "\"cooldown_until\":\"2024-01-01 00:15:00\"}}";
+        AgentApiClient.PullResult result = AgentResponseDecoder.decodePull(new StringReader(body)).data;
+
+        assertTrue(result.tasks.isEmpty());
+        assertEquals("device_cooling", result.reason);
+    }
+
+    @Test
+    public void errorEnvelopeIsNotOk() throws Exception {
+        String body = "{\"code\":401,\"msg\":\"token_required\",\"error_key\":\"common.forbidden\",\"data\":null}";
+        AgentResponseDecoder.Envelope<AgentApiClient.PullResult> envelope =
+                AgentResponseDecoder.decodePull(new StringReader(body));
+
+        assertFalse(envelope.isOk());
+        assertEquals("token_required", envelope.msg);
+        assertTrue(envelope.data.tasks.isEmpty());
+    }
+
+    @Test
+    public void decodesReportAndBatchResults() throws Exception {
+        AgentApiClient.ReportResult single = AgentResponseDecoder.decodeReport(new StringReader(
+                "{\"code\":0,\"data\":{\"accepted\":true,\"task_status\":3,\"event\":\"comment_sent\"}}")).data;
+        assertEquals(3, single.taskStatus);
+        assertEquals("comment_sent", single.event);
+
+        List<AgentApiClient.ReportResult> batch = AgentResponseDecoder.decodeReportBatch(new StringReader(
+                "{\"code\":0,\"data\":{\"results\":[{\"task_status\":3,\"event\":\"done\"},"
+                        + "{\"error\":\"task_not_found\"}]}}")).data;
+        assertEquals(2, batch.size());
+        assertEquals("", batch.get(0).error);
+        assertEquals("task_not_found", batch.get(1).error);
+    }
+}
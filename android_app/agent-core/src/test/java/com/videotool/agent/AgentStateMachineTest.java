@@ -0,0 +1,139 @@
+package com.videotool.agent;
+
+import com.videotool.agent.AgentStateMachine.State;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AgentStateMachineTest {
+    @Test
+    public void legalTransitions() {
+        assertAllowed(State.STOPPED, State.IDLE, State.AWAITING, State.AUTO_SENDING);
+        assertAllowed(State.IDLE, State.POLLING, State.PREPARING, State.STOPPED);
+        assertAllowed(State.POLLING, State.IDLE, State.PREPARING, State.STOPPED);
+        assertAllowed(State.PREPARING, State.AWAITING, State.AUTO_SENDING, State.REPORTING, State.STOPPED);
+        assertAllowed(State.AWAITING, State.REPORTING, State.STOPPED);
+        assertAllowed(State.AUTO_SENDING, State.REPORTING, State.STOPPED);
+        assertAllowed(State.REPORTING, State.IDLE, State.PREPARING, State.STOPPED);
+    }
+
+    @Test
+    public void everyStateCanStop() {
+        for (State from : State.values()) {
+            AgentStateMachine machine = machineIn(from);
+            assertTrue(from + " -> STOPPED", machine.transition(State.STOPPED, "stop"));
+            assertEquals(State.STOPPED, machine.getState());
+            assertFalse(machine.isRunning());
+        }
+    }
+
+    @Test
+    public void rejectedTransitionKeepsState() {
+        AgentStateMachine machine = machineIn(State.POLLING);
+        Recorder recorder = new Recorder();
+        machine.setListener(recorder);
+
+        assertFalse(machine.transition(State.REPORTING, "skip"));
+        assertEquals(State.POLLING, machine.getState());
+        assertEquals("POLLING->REPORTING:skip", recorder.rejected.get(0));
+        assertTrue(recorder.transitions.isEmpty());
+    }
+
+    @Test
+    public void sameStateIsNoOp() {
+        AgentStateMachine machine = machineIn(State.AWAITING);
+        Recorder recorder = new Recorder();
+        machine.setListener(recorder);
+
+        assertTrue(machine.transition(State.AWAITING, "again"));
+        assertTrue(recorder.transitions.isEmpty());
+        assertTrue(recorder.rejected.isEmpty());
+    }
+
+    @Test
+    public void listenerSeesTransitions() {
+        AgentStateMachine machine = new AgentStateMachine();
+        Recorder recorder = new Recorder();
+        machine.setListener(recorder);
+
+        machine.transition(State.IDLE, "start");
+        machine.transition(State.PREPARING, null);
+
+        assertEquals(2, recorder.transitions.size());
+        assertEquals("STOPPED->IDLE:start", recorder.transitions.get(0));
+        assertEquals("IDLE->PREPARING:", recorder.transitions.get(1));
+        assertTrue(machine.hasTask());
+    }
+
+    @Test
+    public void nullStatesAreRejected() {
+        assertFalse(AgentStateMachine.canTransition(null, State.IDLE));
+        assertFalse(AgentStateMachine.canTransition(State.IDLE, null));
+    }
+
+    private static void assertAllowed(State from, State... allowed) {
+        EnumSet<State> expected = EnumSet.noneOf(State.class);
+        for (State to : allowed) {
+            expected.add(to);
+        }
+        for (State to : State.values()) {
+            if (to == from) {
+                continue;
+            }
+            assertEquals(from + " -> " + to, expected.contains(to), AgentStateMachine.canTransition(from, to));
+            AgentStateMachine machine = machineIn(from);
+            assertEquals(from + " -> " + to, expected.contains(to), machine.transition(to, "test"));
+            assertEquals(expected.contains(to) ? to : from, machine.getState());
+        }
+    }
+
+    // Walks the usual task cycle from STOPPED to reach the requested state.
+    private static AgentStateMachine machineIn(State target) {
+        AgentStateMachine machine = new AgentStateMachine();
+        State[] path;
+        switch (target) {
+            case STOPPED:
+                path = new State[0];
+                break;
+            case IDLE:
+                path = new State[]{State.IDLE};
+                break;
+            case POLLING:
+                path = new State[]{State.IDLE, State.POLLING};
+                break;
+            case PREPARING:
+                path = new State[]{State.IDLE, State.PREPARING};
+                break;
+            default:
+                path = new State[]{State.IDLE, State.PREPARING, target};
+                break;
+        }
+        for (State step : path) {
+            assertTrue(machine.transition(step, "setup"));
+        }
+        assertEquals(target, machine.getState());
+        return machine;
+    }
+
+    private static final class Recorder implements AgentStateMachine.Listener {
+        final List<String> transitions = new ArrayList<>();
+        final List<String> rejected = new ArrayList<>();
+
+        @Override
+        public void onTransition(State from, State to, String reason) {
+            transitions.add(from + "->" + to + ":" + reason);
+        }
+
+        @Override
+        public void onRejected(State from, State to, String reason) {
+            rejected.add(from + "->" + to + ":" + reason);
+        }
+    }
+}
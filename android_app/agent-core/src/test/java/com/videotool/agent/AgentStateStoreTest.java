@@ -0,0 +1,51 @@
+package com.videotool.agent;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class AgentStateStoreTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void replaysDeltasInOrder() throws Exception {
+        File dir = tmp.newFolder("state");
+        AgentStateStore first = new AgentStateStore(dir);
+        first.putDurable(AgentStateStore.KEY_CURRENT_TASK, "{\"id\":7}");
+        first.putHot(AgentStateStore.KEY_LAST_LOG, "pulled");
+        first.flushNow();
+        first.putDurable(AgentStateStore.KEY_CURRENT_TASK, null);
+        first.flushNow();
+
+        AgentStateStore second = new AgentStateStore(dir);
+        assertFalse(second.has(AgentStateStore.KEY_CURRENT_TASK));
+        assertEquals("pulled", second.getString(AgentStateStore.KEY_LAST_LOG, ""));
+    }
+
+    @Test
+    public void tornLineDoesNotSwallowNextDelta() throws Exception {
+        File dir = tmp.newFolder("torn");
+        AgentStateStore first = new AgentStateStore(dir);
+        first.putDurable(AgentStateStore.KEY_CURRENT_TASK, "{\"id\":7}");
+        first.flushNow();
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "agent_state.jsonl"), true)) {
+            out.write("{\"last_log\":\"tas".getBytes(StandardCharsets.UTF_8));
+        }
+
+        AgentStateStore second = new AgentStateStore(dir);
+        assertEquals("{\"id\":7}", second.getString(AgentStateStore.KEY_CURRENT_TASK, ""));
+        second.putDurable(AgentStateStore.KEY_CURRENT_TASK, null);
+        second.flushNow();
+
+        AgentStateStore third = new AgentStateStore(dir);
+        assertFalse(third.has(AgentStateStore.KEY_CURRENT_TASK));
+    }
+}
@@ -0,0 +1,124 @@
+package com.videotool.agent;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AgentTaskQueueTest {
+    private static final long TTL_MS = 60000L;
+
+    @Test
+    public void pollsByPriorityThenArrival() {
+        AgentTaskQueue queue = new AgentTaskQueue(5);
+        queue.offerAll(Arrays.asList(task(1, 0, "tiktok_dm"), task(2, 5, "tiktok_dm"), task(3, 0, "tiktok_dm"),
+                task(4, 5, "tiktok_dm")), TTL_MS);
+
+        assertEquals(2, queue.poll().getId());
+        assertEquals(4, queue.poll().getId());
+        assertEquals(1, queue.poll().getId());
+        assertEquals(3, queue.poll().getId());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void returnsTasksThatDoNotFit() {
+        AgentTaskQueue queue = new AgentTaskQueue(2);
+        List<AgentTask> rejected = queue.offerAll(Arrays.asList(task(1, 0, "tiktok_dm"), task(2, 0, "tiktok_dm"),
+                task(3, 0, "tiktok_dm")), TTL_MS);
+
+        assertEquals(1, rejected.size());
+        assertEquals(3, rejected.get(0).getId());
+        assertEquals(0, queue.remainingCapacity());
+    }
+
+    @Test
+    public void ignoresDuplicatesAndInvalidIds() {
+        AgentTaskQueue queue = new AgentTaskQueue(3);
+        queue.offerAll(Arrays.asList(task(1, 0, "tiktok_dm"), task(1, 0, "tiktok_dm"), task(0, 0, "tiktok_dm")), TTL_MS);
+
+        assertEquals(1, queue.size());
+        assertTrue(queue.contains(1));
+    }
+
+    @Test
+    public void refillsBelowLowWaterMark() {
+        AgentTaskQueue queue = new AgentTaskQueue(4);
+        assertEquals(2, queue.getLowWaterMark());
+        queue.offerAll(Arrays.asList(task(1, 0, "tiktok_dm"), task(2, 0, "tiktok_dm")), TTL_MS);
+        assertFalse(queue.needsRefill());
+        queue.poll();
+        assertTrue(queue.needsRefill());
+    }
+
+    @Test
+    public void expiredLeasesAreSkippedAndDrained() throws Exception {
+        AgentTaskQueue queue = new AgentTaskQueue(3);
+        JSONArray persisted = new JSONArray();
+        persisted.put(entry(task(1, 9, "tiktok_dm"), 1L));
+        persisted.put(entry(task(2, 0, "tiktok_dm"), System.currentTimeMillis() + TTL_MS));
+        queue.restore(persisted);
+
+        assertEquals(2, queue.poll().getId());
+        assertNull(queue.poll());
+        List<AgentTask> expired = queue.drainExpired();
+        assertEquals(1, expired.size());
+        assertEquals(1, expired.get(0).getId());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void pollKindSkipsOtherKinds() {
+        AgentTaskQueue queue = new AgentTaskQueue(3);
+        queue.offerAll(Arrays.asList(task(1, 9, "tiktok_dm"), task(2, 0, "comment_warmup")), TTL_MS);
+
+        AgentTask comment = queue.pollKind(ExecutionPlan.TaskKind.COMMENT_WARMUP);
+        assertEquals(2, comment.getId());
+        assertNull(queue.pollKind(ExecutionPlan.TaskKind.COMMENT_WARMUP));
+        assertEquals(1, queue.poll().getId());
+    }
+
+    @Test
+    public void survivesPersistence() {
+        AgentTaskQueue queue = new AgentTaskQueue(3);
+        queue.offerAll(Arrays.asList(task(1, 0, "tiktok_dm"), task(2, 3, "comment_warmup")), TTL_MS);
+
+        AgentTaskQueue restored = new AgentTaskQueue(3);
+        restored.restore(queue.toJson());
+
+        assertEquals(2, restored.size());
+        AgentTask first = restored.poll();
+        assertEquals(2, first.getId());
+        assertEquals("https://www.tiktok.com/@user2", first.getPlan().targetUrl);
+        assertEquals(1, restored.poll().getId());
+    }
+
+    @Test
+    public void drainAllEmptiesTheQueue() {
+        AgentTaskQueue queue = new AgentTaskQueue(3);
+        queue.offerAll(Arrays.asList(task(1, 0, "tiktok_dm"), task(2, 0, "tiktok_dm")), TTL_MS);
+
+        assertEquals(2, queue.drainAll().size());
+        assertTrue(queue.isEmpty());
+        assertEquals(3, queue.remainingCapacity());
+    }
+
+    static AgentTask task(int id, int priority, String type) {
+        return new AgentTask(id, type, "auto", priority, "hello " + id, "", "@user" + id, "User " + id,
+                "", "", "", "", (JSONObject) null);
+    }
+
+    private static JSONObject entry(AgentTask task, long leaseExpiresAt) throws Exception {
+        JSONObject obj = new JSONObject();
+        obj.put("task", task.toJson());
+        obj.put("lease_expires_at", leaseExpiresAt);
+        return obj;
+    }
+}
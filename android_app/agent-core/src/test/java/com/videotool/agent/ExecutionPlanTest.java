@@ -0,0 +1,82 @@
+package com.videotool.agent;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutionPlanTest {
+    @Test
+    public void commentTaskTargetsTikTokProfile() {
+        ExecutionPlan plan = plan("comment_warmup", "auto", "", "nice video", "@creator", "", "", "");
+
+        assertEquals(ExecutionPlan.TaskKind.COMMENT_WARMUP, plan.kind);
+        assertTrue(plan.isComment());
+        assertEquals("nice video", plan.bestText);
+        assertEquals("https://www.tiktok.com/@creator", plan.targetUrl);
+        assertEquals(ExecutionPlan.Channel.TIKTOK.packageName, plan.packageName);
+        assertEquals("comment_prepared", plan.preparedEvent);
+        assertEquals("comment_sent", plan.doneEvent);
+    }
+
+    @Test
+    public void renderedTextWinsOverCommentText() {
+        ExecutionPlan plan = plan("tiktok_dm", "auto", "  hi there ", "fallback", "creator", "", "", "");
+
+        assertEquals("hi there", plan.bestText);
+        assertEquals("dm_prepared", plan.preparedEvent);
+    }
+
+    @Test
+    public void whatsappLinkCarriesEncodedText() {
+        ExecutionPlan plan = plan("wa_auto_dm", "wa", "xin chào & hi", "", "creator", "+84 912-345", "", "");
+
+        assertEquals(ExecutionPlan.Channel.WHATSAPP, plan.route);
+        assertTrue(plan.isAutoDm());
+        assertEquals("https://wa.me/84912345?text=xin+ch%C3%A0o+%26+hi", plan.targetUrl);
+        assertEquals("com.whatsapp", plan.packageName);
+        assertEquals(ExecutionPlan.AUTO_SENDING_EVENT, plan.preparedEvent);
+    }
+
+    @Test
+    public void zaloUsesDigitsFromIdOrUrl() {
+        ExecutionPlan byId = plan("zalo_im", "zalo", "hi", "", "creator", "", "0912 345 678", "");
+        ExecutionPlan byUrl = plan("zalo_im", "zalo", "hi", "", "creator", "", "", "https://zalo.me/0987654321?src=x");
+
+        assertEquals("https://zalo.me/0912345678", byId.targetUrl);
+        assertEquals("https://zalo.me/0987654321", byUrl.targetUrl);
+        assertEquals(ExecutionPlan.TaskKind.IM, byId.kind);
+        assertEquals("im_prepared", byId.preparedEvent);
+    }
+
+    @Test
+    public void missingChannelTargetFallsBackToTikTok() {
+        ExecutionPlan plan = plan("wa_im", "wa", "hi", "", "@creator", "", "", "");
+
+        assertEquals(ExecutionPlan.Channel.WHATSAPP, plan.channel);
+        assertEquals(ExecutionPlan.Channel.TIKTOK, plan.route);
+        assertEquals("https://www.tiktok.com/@creator", plan.targetUrl);
+    }
+
+    @Test
+    public void noTargetAtAll() {
+        ExecutionPlan plan = plan("tiktok_dm", "auto", "hi", "", "", "", "", "");
+
+        assertFalse(plan.hasTarget());
+    }
+
+    @Test
+    public void digitsOnlyKeepsPureDigitInput() {
+        assertEquals("12345", ExecutionPlan.digitsOnly("12345"));
+        assertEquals("12345", ExecutionPlan.digitsOnly("+1 (23) 45"));
+        assertEquals("", ExecutionPlan.digitsOnly(null));
+    }
+
+    private static ExecutionPlan plan(String type, String channel, String rendered, String comment, String tiktokId,
+                                      String waNumber, String zaloId, String zaloUrl) {
+        return new AgentTask(1, type, channel, 0, rendered, comment, tiktokId, "", waNumber, zaloId, "", zaloUrl,
+                (JSONObject) null).getPlan();
+    }
+}
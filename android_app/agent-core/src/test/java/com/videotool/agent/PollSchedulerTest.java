@@ -0,0 +1,68 @@
+package com.videotool.agent;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PollSchedulerTest {
+    @Test
+    public void emptyPollsBackOffWithinJitterBounds() {
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(1000L, new Random(7));
+        long expected = 1000L;
+        for (int i = 0; i < 12; i++) {
+            long delay = scheduler.onEmpty("empty_queue", false);
+            assertTrue("delay " + delay + " below " + expected / 2, delay >= expected / 2);
+            assertTrue("delay " + delay + " above " + expected, delay <= expected);
+            expected = Math.min(AdaptivePollScheduler.MAX_IDLE_DELAY_MS, expected * 2);
+        }
+    }
+
+    @Test
+    public void longPollRearmsRightAway() {
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(1000L, new Random(7));
+        scheduler.onEmpty("empty_queue", false);
+        scheduler.onEmpty("empty_queue", false);
+
+        assertTrue(scheduler.onEmpty("empty_queue", true) <= 100L);
+        // The empty streak starts over after a long poll.
+        assertTrue(scheduler.onEmpty("empty_queue", false) <= 1000L);
+    }
+
+    @Test
+    public void errorsBackOffFromFiveSeconds() {
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(1000L, new Random(7));
+        long first = scheduler.onError("pull_http_500");
+        long second = scheduler.onError("pull_http_500");
+
+        assertTrue(first >= 2500L && first <= 5000L);
+        assertTrue(second >= 5000L && second <= 10000L);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(scheduler.onError("pull_http_500") <= AdaptivePollScheduler.MAX_ERROR_DELAY_MS);
+        }
+    }
+
+    @Test
+    public void taskResetsStreaks() {
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(1000L, new Random(7));
+        for (int i = 0; i < 5; i++) {
+            scheduler.onEmpty("empty_queue", false);
+        }
+
+        assertEquals(0L, scheduler.onTaskReceived());
+        assertTrue(scheduler.onEmpty("empty_queue", false) <= 1000L);
+    }
+
+    @Test
+    public void fixedSchedulerFollowsConfig() {
+        AgentConfig config = new AgentConfig();
+        config.setPollIntervalSec(4);
+        FixedPollScheduler scheduler = new FixedPollScheduler(config);
+
+        assertEquals(4000L, scheduler.onEmpty("empty_queue", true));
+        assertEquals(5000L, scheduler.onError("pull_http_500"));
+        assertEquals(0L, scheduler.onTaskReceived());
+    }
+}
@@ -0,0 +1,260 @@
+package com.videotool.agent;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReportOutboxTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private MockWebServer server;
+    private final List<String> paths = new CopyOnWriteArrayList<>();
+    private volatile String batchBody = null;
+    private volatile int batchStatus = 200;
+    private volatile String singleBody = null;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                paths.add(path);
+                if (path.endsWith("/report_batch")) {
+                    if (batchStatus != 200) {
+                        return new MockResponse().setResponseCode(batchStatus);
+                    }
+                    return new MockResponse().setBody(batchBody != null ? batchBody : acceptAll(request));
+                }
+                if (singleBody != null) {
+                    return new MockResponse().setBody(singleBody);
+                }
+                return new MockResponse().setBody("{\"code\":0,\"data\":{\"task_status\":3,\"event\":\"done\"}}");
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void deliversThroughBatchEndpoint() throws Exception {
+        Recorder recorder = new Recorder(2);
+        ReportOutbox outbox = outbox(tmp.getRoot(), recorder);
+        enqueue(outbox, 1, "done");
+        enqueue(outbox, 2, "done");
+
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, recorder.delivered.size());
+        assertEquals(0, outbox.pendingCount());
+        assertTrue(paths.get(0).endsWith("/mobile_agent/report_batch"));
+        outbox.shutdown();
+    }
+
+    @Test
+    public void dropsOnlyPerItemRejections() throws Exception {
+        batchBody = "{\"code\":0,\"data\":{\"results\":[{\"error\":\"task_not_found\"}]}}";
+        Recorder recorder = new Recorder(1);
+        ReportOutbox outbox = outbox(tmp.getRoot(), recorder);
+        enqueue(outbox, 99, "done");
+
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, recorder.dropped.size());
+        assertEquals(0, outbox.pendingCount());
+        outbox.shutdown();
+    }
+
+    @Test
+    public void keepsEventsWhenWholeBatchIsRejected() throws Exception {
+        batchBody = "{\"code\":401,\"msg\":\"token_required\",\"data\":null}";
+        Recorder recorder = new Recorder(1);
+        ReportOutbox outbox = outbox(tmp.getRoot(), recorder);
+        enqueue(outbox, 1, "failed");
+
+        assertTrue(recorder.retried.await(5, TimeUnit.SECONDS));
+        assertEquals(0, recorder.dropped.size());
+        assertEquals(1, outbox.pendingCount());
+        outbox.shutdown();
+    }
+
+    @Test
+    public void fallsBackToSingleReports() throws Exception {
+        batchStatus = 404;
+        Recorder recorder = new Recorder(1);
+        ReportOutbox outbox = outbox(tmp.getRoot(), recorder);
+        enqueue(outbox, 1, "done");
+
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, recorder.delivered.size());
+        assertTrue(paths.get(paths.size() - 1).endsWith("/mobile_agent/report"));
+        outbox.shutdown();
+    }
+
+    @Test
+    public void keepsEventsOnNonJsonSingleReply() throws Exception {
+        batchStatus = 404;
+        singleBody = "<html>Sign in to Wi-Fi</html>";
+        Recorder recorder = new Recorder(1);
+        ReportOutbox outbox = outbox(tmp.getRoot(), recorder);
+        enqueue(outbox, 1, "done");
+
+        assertTrue(recorder.retried.await(5, TimeUnit.SECONDS));
+        assertEquals(0, recorder.dropped.size());
+        assertEquals(1, outbox.pendingCount());
+        outbox.shutdown();
+    }
+
+    @Test
+    public void dropsSingleReportOnRejection() throws Exception {
+        batchStatus = 404;
+        singleBody = "{\"code\":403,\"msg\":\"task_device_mismatch\",\"data\":null}";
+        Recorder recorder = new Recorder(1);
+        ReportOutbox outbox = outbox(tmp.getRoot(), recorder);
+        enqueue(outbox, 1, "done");
+
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, recorder.dropped.size());
+        assertEquals(0, outbox.pendingCount());
+        outbox.shutdown();
+    }
+
+    @Test
+    public void tornJournalLineDoesNotSwallowNextEvent() throws Exception {
+        File dir = tmp.newFolder("torn");
+        Recorder idle = new Recorder(1);
+        ReportOutbox first = new ReportOutbox(dir, new AgentApiClient(new OkHttpClient()), idle);
+        enqueue(first, 1, "done");
+        assertTrue(idle.retried.await(5, TimeUnit.SECONDS));
+        assertEquals(1, first.pendingCount());
+        first.shutdown();
+        File journal = new File(dir, "report_outbox.jsonl");
+        try (FileOutputStream out = new FileOutputStream(journal, true)) {
+            out.write("{\"op\":\"add\",\"seq\":2,\"task_".getBytes(StandardCharsets.UTF_8));
+        }
+
+        ReportOutbox second = new ReportOutbox(dir, new AgentApiClient(new OkHttpClient()), new Recorder(1));
+        enqueue(second, 3, "failed");
+        assertEquals(2, second.pendingCount());
+        second.shutdown();
+
+        Recorder recorder = new Recorder(2);
+        ReportOutbox third = outbox(dir, recorder);
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, recorder.delivered.get(0).taskId);
+        assertEquals(3, recorder.delivered.get(1).taskId);
+        third.shutdown();
+    }
+
+    @Test
+    public void replaysUnacknowledgedEventsFromJournal() throws Exception {
+        File dir = tmp.newFolder("outbox");
+        Recorder idle = new Recorder(1);
+        ReportOutbox first = new ReportOutbox(dir, new AgentApiClient(new OkHttpClient()), idle);
+        // No config yet: the event is journaled and waits.
+        enqueue(first, 7, "done");
+        assertTrue(idle.retried.await(5, TimeUnit.SECONDS));
+        first.shutdown();
+
+        Recorder recorder = new Recorder(1);
+        ReportOutbox second = outbox(dir, recorder);
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        assertEquals(7, recorder.delivered.get(0).taskId);
+        second.shutdown();
+    }
+
+    @Test
+    public void classifiesErrors() {
+        assertTrue(ReportOutbox.isRetryable("report_http_503: busy"));
+        assertTrue(ReportOutbox.isRetryable("report_request_failed: timeout"));
+        assertTrue(ReportOutbox.isConfigError("report_failed: token_required"));
+        assertTrue(ReportOutbox.isConfigError("report_http_401: "));
+        assertTrue(!ReportOutbox.isConfigError("report_failed: task_not_found"));
+        assertTrue(!ReportOutbox.isRetryable("report_failed: task_not_found"));
+        assertTrue(ReportOutbox.isRetryable("report_non_json: Expected BEGIN_OBJECT"));
+        assertTrue(ReportOutbox.isRejected("report_failed: task_not_found"));
+        assertTrue(!ReportOutbox.isRejected("report_non_json: empty_body"));
+        assertTrue(!ReportOutbox.isRejected("report_failed: token_required"));
+    }
+
+    private ReportOutbox outbox(File dir, Recorder recorder) {
+        ReportOutbox outbox = new ReportOutbox(dir, new AgentApiClient(new OkHttpClient()), recorder);
+        AgentConfig config = new AgentConfig();
+        config.setAdminBase(server.url("/").toString());
+        config.setToken("token");
+        config.setDeviceCode("device");
+        outbox.setConfig(config);
+        outbox.flushNow();
+        return outbox;
+    }
+
+    private static void enqueue(ReportOutbox outbox, int taskId, String event) {
+        outbox.enqueue(taskId, event, "text", "", "", "", false, 10L, "");
+    }
+
+    private static String acceptAll(RecordedRequest request) {
+        try {
+            JSONArray events = new JSONObject(request.getBody().readUtf8()).getJSONArray("events");
+            JSONArray results = new JSONArray();
+            for (int i = 0; i < events.length(); i++) {
+                results.put(new JSONObject().put("task_status", 3).put("event", "done"));
+            }
+            return new JSONObject().put("code", 0).put("data", new JSONObject().put("results", results)).toString();
+        } catch (Exception e) {
+            return "{\"code\":1,\"msg\":\"bad_request\"}";
+        }
+    }
+
+    private static final class Recorder implements ReportOutbox.Listener {
+        final List<ReportOutbox.Event> delivered = new CopyOnWriteArrayList<>();
+        final List<ReportOutbox.Event> dropped = new CopyOnWriteArrayList<>();
+        final CountDownLatch done;
+        final CountDownLatch retried = new CountDownLatch(1);
+
+        Recorder(int expected) {
+            done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onDelivered(ReportOutbox.Event event, AgentApiClient.ReportResult result) {
+            delivered.add(event);
+            done.countDown();
+        }
+
+        @Override
+        public void onDropped(ReportOutbox.Event event, String errorMessage) {
+            dropped.add(event);
+            done.countDown();
+        }
+
+        @Override
+        public void onRetryScheduled(int pending, long delayMs, String errorMessage) {
+            retried.countDown();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.videotool.agent;
+
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+    @Test
+    public void reportsReplayAfterTimeouts() {
+        RetryPolicy policy = RetryPolicy.forReport();
+
+        assertTrue(policy.shouldRetry(1, new ConnectException("refused")));
+        assertTrue(policy.shouldRetry(1, new SocketTimeoutException("read timed out")));
+        assertTrue(policy.shouldRetry(1, 503));
+        assertFalse(policy.shouldRetry(1, 501));
+    }
+
+    @Test
+    public void pullsRetryOnlyWhenNothingWasSent() {
+        RetryPolicy policy = RetryPolicy.forPull();
+
+        assertTrue(policy.shouldRetry(1, new ConnectException("refused")));
+        assertFalse(policy.shouldRetry(1, new SocketTimeoutException("read timed out")));
+        assertFalse(policy.shouldRetry(1, 503));
+        assertTrue(policy.shouldRetry(1, 429));
+    }
+
+    @Test
+    public void attemptsAreCapped() {
+        RetryPolicy policy = RetryPolicy.forPull();
+
+        assertTrue(policy.shouldRetry(1, new ConnectException("refused")));
+        assertFalse(policy.shouldRetry(2, new ConnectException("refused")));
+    }
+
+    @Test
+    public void budgetLimitsRetries() {
+        RetryPolicy policy = new RetryPolicy(100, 1L, 1L, true);
+        int granted = 0;
+        for (int i = 0; i < 50; i++) {
+            if (policy.shouldRetry(1, 503)) {
+                granted++;
+            }
+        }
+
+        assertEquals(10, granted);
+        policy.onSuccess();
+        assertFalse(policy.shouldRetry(1, 503));
+    }
+}
@@ -0,0 +1,189 @@
+package com.videotool.sim;
+
+import com.videotool.agent.AgentApiClient;
+import com.videotool.agent.AgentConfig;
+import com.videotool.agent.NetworkStack;
+import com.videotool.agent.TaskTimeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+// Runs N virtual agents against /mobile_agent/* and prints throughput, latency
+// percentiles, errors and duplicate leases.
+//
+//   gradlew :agent-sim:run --args="--base http://127.0.0.1:8080/admin.php --token T --devices 50"
+public class LoadSimulator {
+    static class Options {
+        String adminBase = "";
+        List<String> tokens = new ArrayList<>();
+        List<String> deviceCodes = new ArrayList<>();
+        String devicePrefix = "sim-";
+        int devices = 10;
+        List<String> taskTypes = AgentConfig.defaultTaskTypes();
+        boolean autoMode = false;
+        int limit = 1;
+        int longPollSec = 0;
+        long thinkMs = 500L;
+        long idleMs = 1000L;
+        int durationSec = 60;
+        int standInTasks = -1;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(usage());
+            System.exit(2);
+            return;
+        }
+        StandInServer standIn = null;
+        if (options.standInTasks >= 0) {
+            standIn = new StandInServer();
+            standIn.tasks().seed(options.standInTasks, options.taskTypes);
+            standIn.start(0);
+            options.adminBase = AgentConfig.normalizeAdminBase(standIn.adminBase());
+            System.out.println("stand-in at " + options.adminBase);
+        }
+        SimStats stats = run(options);
+        if (standIn != null) {
+            System.out.println("stand-in tasks by status " + standIn.tasks().statusCounts());
+            standIn.shutdown();
+        }
+        System.exit(stats.errorBreakdown().isEmpty() ? 0 : 1);
+    }
+
+    public static SimStats run(Options options) throws InterruptedException {
+        int agents = options.deviceCodes.isEmpty() ? options.devices : options.deviceCodes.size();
+        // Each virtual agent needs its own connection; the app-wide per-host limit would serialize them.
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(agents * 2);
+        dispatcher.setMaxRequestsPerHost(agents * 2);
+        OkHttpClient http = NetworkStack.base().newBuilder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(agents, 5, TimeUnit.MINUTES))
+                .build();
+
+        SimStats stats = new SimStats();
+        long startedAt = TaskTimeline.now();
+        long deadline = startedAt + options.durationSec * 1000L;
+        ExecutorService pool = Executors.newFixedThreadPool(agents);
+        for (int i = 0; i < agents; i++) {
+            AgentConfig config = new AgentConfig();
+            config.setAdminBase(options.adminBase);
+            config.setToken(pick(options.tokens, i));
+            config.setDeviceCode(options.deviceCodes.isEmpty()
+                    ? String.format("%s%03d", options.devicePrefix, i + 1)
+                    : options.deviceCodes.get(i));
+            config.setTaskTypes(options.taskTypes);
+            config.setAutoMode(options.autoMode);
+            config.setPrefetchSize(options.limit);
+            config.setLongPollSec(options.longPollSec);
+            pool.execute(new VirtualAgent(new AgentApiClient(http), config, stats,
+                    options.thinkMs, options.idleMs, deadline, i));
+        }
+        pool.shutdown();
+        // Agents finish the task in hand after the deadline; give them one call timeout.
+        pool.awaitTermination(options.durationSec + 180L, TimeUnit.SECONDS);
+        pool.shutdownNow();
+        System.out.print(stats.render(TaskTimeline.now() - startedAt, agents));
+        return stats;
+    }
+
+    static Options parse(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String key = args[i];
+            if ("--auto".equals(key)) {
+                options.autoMode = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value for " + key);
+            }
+            String value = args[++i];
+            switch (key) {
+                case "--base":
+                    options.adminBase = AgentConfig.normalizeAdminBase(value);
+                    break;
+                case "--token":
+                case "--tokens":
+                    options.tokens = split(value);
+                    break;
+                case "--devices":
+                    options.devices = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "--device-prefix":
+                    options.devicePrefix = value;
+                    break;
+                case "--device-codes":
+                    options.deviceCodes = split(value);
+                    break;
+                case "--types":
+                    options.taskTypes = split(value);
+                    break;
+                case "--limit":
+                    options.limit = Math.max(1, Math.min(10, Integer.parseInt(value)));
+                    break;
+                case "--long-poll-sec":
+                    options.longPollSec = Math.max(0, Integer.parseInt(value));
+                    break;
+                case "--think-ms":
+                    options.thinkMs = Math.max(0L, Long.parseLong(value));
+                    break;
+                case "--idle-ms":
+                    options.idleMs = Math.max(0L, Long.parseLong(value));
+                    break;
+                case "--duration-sec":
+                    options.durationSec = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "--stand-in":
+                    options.standInTasks = Math.max(0, Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + key);
+            }
+        }
+        if (options.standInTasks >= 0) {
+            // The in-process stand-in accepts any device and token.
+            if (options.tokens.isEmpty()) {
+                options.tokens.add("stand-in");
+            }
+            return options;
+        }
+        if (options.adminBase.isEmpty() || options.tokens.isEmpty()) {
+            throw new IllegalArgumentException("--base and --token are required (or --stand-in N)");
+        }
+        return options;
+    }
+
+    static String usage() {
+        return "usage: LoadSimulator (--base URL --token T[,T2,...] | --stand-in TASKS) [--devices N | --device-codes a,b,c]\n"
+                + "       [--device-prefix sim-] [--types comment_warmup,tiktok_dm,zalo_im,wa_im] [--auto]\n"
+                + "       [--limit 1] [--long-poll-sec 0] [--think-ms 500] [--idle-ms 1000] [--duration-sec 60]";
+    }
+
+    private static String pick(List<String> values, int index) {
+        return values.get(index % values.size());
+    }
+
+    private static List<String> split(String value) {
+        List<String> out = new ArrayList<>();
+        for (String item : Arrays.asList(value.split(","))) {
+            if (!item.trim().isEmpty()) {
+                out.add(item.trim());
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,108 @@
+package com.videotool.sim;
+
+import com.videotool.agent.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Shared across all virtual agents; every method is safe to call concurrently.
+public class SimStats {
+    private static final int MAX_DUPLICATE_SAMPLES = 20;
+
+    public final LatencyHistogram pullLatency = new LatencyHistogram();
+    public final LatencyHistogram reportLatency = new LatencyHistogram();
+    public final LatencyHistogram taskLatency = new LatencyHistogram();
+    public final AtomicLong pulls = new AtomicLong();
+    public final AtomicLong emptyPulls = new AtomicLong();
+    public final AtomicLong tasksLeased = new AtomicLong();
+    public final AtomicLong tasksCompleted = new AtomicLong();
+    public final AtomicLong reports = new AtomicLong();
+    public final AtomicLong duplicates = new AtomicLong();
+    public final AtomicLong redeliveries = new AtomicLong();
+
+    private final ConcurrentHashMap<String, AtomicLong> errors = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, String> owners = new ConcurrentHashMap<>();
+    private final List<String> duplicateSamples = new ArrayList<>();
+
+    public void recordError(String errorMessage) {
+        String code = errorMessage == null ? "unknown" : errorMessage;
+        int colon = code.indexOf(':');
+        if (colon > 0) {
+            code = code.substring(0, colon);
+        }
+        AtomicLong counter = errors.get(code);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = errors.putIfAbsent(code, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    // Returns false when another agent already holds (or finished) this task.
+    public boolean claim(int taskId, String deviceCode) {
+        String previous = owners.putIfAbsent(taskId, deviceCode);
+        if (previous == null) {
+            return true;
+        }
+        if (previous.equals(deviceCode)) {
+            redeliveries.incrementAndGet();
+            return true;
+        }
+        duplicates.incrementAndGet();
+        synchronized (duplicateSamples) {
+            if (duplicateSamples.size() < MAX_DUPLICATE_SAMPLES) {
+                duplicateSamples.add("task #" + taskId + ": " + previous + " and " + deviceCode);
+            }
+        }
+        return false;
+    }
+
+    public Map<String, Long> errorBreakdown() {
+        Map<String, Long> out = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : errors.entrySet()) {
+            out.put(entry.getKey(), entry.getValue().get());
+        }
+        return out;
+    }
+
+    public List<String> duplicateSamples() {
+        synchronized (duplicateSamples) {
+            return new ArrayList<>(duplicateSamples);
+        }
+    }
+
+    public String render(long elapsedMs, int agents) {
+        double seconds = Math.max(1L, elapsedMs) / 1000.0;
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("agents=%d elapsed=%.1fs%n", agents, seconds));
+        out.append(String.format("pulls=%d (%.1f/s) empty=%d leased=%d%n",
+                pulls.get(), pulls.get() / seconds, emptyPulls.get(), tasksLeased.get()));
+        out.append(String.format("tasks_completed=%d (%.2f/s) reports=%d (%.1f/s)%n",
+                tasksCompleted.get(), tasksCompleted.get() / seconds, reports.get(), reports.get() / seconds));
+        out.append("pull_ms   ").append(pullLatency.summary()).append('\n');
+        out.append("report_ms ").append(reportLatency.summary()).append('\n');
+        out.append("task_ms   ").append(taskLatency.summary()).append('\n');
+        Map<String, Long> breakdown = errorBreakdown();
+        if (breakdown.isEmpty()) {
+            out.append("errors: none\n");
+        } else {
+            out.append("errors:\n");
+            for (Map.Entry<String, Long> entry : breakdown.entrySet()) {
+                out.append("  ").append(entry.getKey()).append(" = ").append(entry.getValue()).append('\n');
+            }
+        }
+        out.append("duplicate_leases=").append(duplicates.get())
+                .append(" redeliveries=").append(redeliveries.get()).append('\n');
+        for (String sample : duplicateSamples()) {
+            out.append("  ").append(sample).append('\n');
+        }
+        return out.toString();
+    }
+}
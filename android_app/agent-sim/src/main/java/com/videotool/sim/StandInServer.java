@@ -0,0 +1,733 @@
+package com.videotool.sim;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+// JVM stand-in for the PHP backend: the /mobile_agent/* protocol plus the
+// console routes the app calls. Tasks live in a StandInTaskStore; latency,
+// error rate and one-off scripted responses can be injected per run, and every
+// request is recorded. By default it speaks exactly what the PHP backend
+// does; --batch, --multi-pull and --long-poll turn on the client extensions.
+//
+//   gradlew :agent-sim:standIn --args="--port 8080 --tasks 500"
+public class StandInServer {
+    private static final String ADMIN_ENTRY = "/admin.php";
+    private static final String SESSION_COOKIE = "PHPSESSID";
+    private static final int MAX_LONG_POLL_SEC = 30;
+
+    public static class LoggedRequest {
+        public final long receivedAt;
+        public final String method;
+        public final String route;
+        public final String deviceCode;
+        public final int status;
+        public final long delayMs;
+        public final String body;
+
+        LoggedRequest(long receivedAt, String method, String route, String deviceCode, int status, long delayMs, String body) {
+            this.receivedAt = receivedAt;
+            this.method = method;
+            this.route = route;
+            this.deviceCode = deviceCode;
+            this.status = status;
+            this.delayMs = delayMs;
+            this.body = body;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject obj = new JSONObject();
+            obj.put("at", receivedAt);
+            obj.put("method", method);
+            obj.put("route", route);
+            obj.put("device_code", deviceCode);
+            obj.put("status", status);
+            obj.put("delay_ms", delayMs);
+            obj.put("body", body);
+            return obj;
+        }
+    }
+
+    private final MockWebServer server = new MockWebServer();
+    private final StandInTaskStore store = new StandInTaskStore();
+    private final Random random = new Random();
+    private final AtomicLong traceSeq = new AtomicLong();
+    private final List<LoggedRequest> log = new CopyOnWriteArrayList<>();
+    private final Map<String, ConcurrentLinkedQueue<MockResponse>> scripted = new ConcurrentHashMap<>();
+    private final Map<String, String> deviceTokens = new ConcurrentHashMap<>();
+    // Event of each accepted report by task and idempotency_key, like the key column on the PHP log tables.
+    private final Map<String, String> acceptedReports = new HashMap<>();
+    private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> users = new ConcurrentHashMap<>();
+
+    private volatile long minLatencyMs = 0L;
+    private volatile long maxLatencyMs = 0L;
+    private volatile double errorRate = 0.0;
+    // Protocol extensions the PHP backend does not have; all off by default.
+    private volatile boolean batchSupported = false;
+    private volatile boolean multiPullSupported = false;
+    private volatile boolean longPollSupported = false;
+    private volatile Writer logWriter;
+
+    public StandInServer() {
+        users.put("admin", "admin");
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return StandInServer.this.dispatch(request);
+            }
+        });
+    }
+
+    public StandInTaskStore tasks() {
+        return store;
+    }
+
+    public void start(int port) throws IOException {
+        server.start(port);
+    }
+
+    public void shutdown() throws IOException {
+        server.shutdown();
+        Writer writer = logWriter;
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    // Base URL as the app stores it: http://host:port/admin.php
+    public String adminBase() {
+        return server.url(ADMIN_ENTRY).toString();
+    }
+
+    // Without registered devices any device code/token pair is accepted.
+    public void registerDevice(String deviceCode, String token) {
+        deviceTokens.put(deviceCode, token);
+    }
+
+    public void addUser(String username, String password) {
+        users.put(username, password);
+    }
+
+    public void setLatency(long minMs, long maxMs) {
+        minLatencyMs = Math.max(0L, minMs);
+        maxLatencyMs = Math.max(minLatencyMs, maxMs);
+    }
+
+    // Fraction of requests answered with a 503 before any state changes.
+    public void setErrorRate(double rate) {
+        errorRate = Math.max(0.0, Math.min(1.0, rate));
+    }
+
+    // report_batch/report_auto_batch routes; without them the client falls back to single reports.
+    public void setBatchSupported(boolean supported) {
+        batchSupported = supported;
+    }
+
+    // Honours the pull "limit" field and returns a "tasks" array next to "task".
+    public void setMultiPullSupported(boolean supported) {
+        multiPullSupported = supported;
+    }
+
+    // Honours the pull "wait_sec" field and holds empty pulls open.
+    public void setLongPollSupported(boolean supported) {
+        longPollSupported = supported;
+    }
+
+    // Queues a canned response for the next request to route, e.g. "mobile_agent/report".
+    public void script(String route, MockResponse response) {
+        ConcurrentLinkedQueue<MockResponse> queue = scripted.get(route);
+        if (queue == null) {
+            scripted.putIfAbsent(route, new ConcurrentLinkedQueue<MockResponse>());
+            queue = scripted.get(route);
+        }
+        queue.add(response);
+    }
+
+    public void logTo(String path) throws IOException {
+        logWriter = new OutputStreamWriter(Files.newOutputStream(Paths.get(path),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8);
+    }
+
+    public List<LoggedRequest> requests() {
+        return new ArrayList<>(log);
+    }
+
+    public int requestCount(String route) {
+        int count = 0;
+        for (LoggedRequest item : log) {
+            if (item.route.equals(route)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    MockResponse dispatch(RecordedRequest request) {
+        long receivedAt = System.currentTimeMillis();
+        String route = routeOf(request.getRequestUrl());
+        String body = request.getBody().readUtf8();
+        JSONObject json = parseJson(body);
+        String deviceCode = deviceOf(request, json);
+        MockResponse response;
+        ConcurrentLinkedQueue<MockResponse> queue = scripted.get(route);
+        MockResponse canned = queue == null ? null : queue.poll();
+        if (canned != null) {
+            response = canned;
+        } else if (errorRate > 0 && random.nextDouble() < errorRate) {
+            response = new MockResponse().setResponseCode(503).setBody("injected_error");
+        } else {
+            try {
+                response = handle(route, request, body, json);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                response = new MockResponse().setResponseCode(503).setBody("shutting_down");
+            } catch (JSONException e) {
+                response = new MockResponse().setResponseCode(500).setBody(String.valueOf(e.getMessage()));
+            }
+        }
+        long delay = minLatencyMs;
+        if (maxLatencyMs > minLatencyMs) {
+            delay += (long) (random.nextDouble() * (maxLatencyMs - minLatencyMs));
+        }
+        if (delay > 0) {
+            response.setHeadersDelay(delay, TimeUnit.MILLISECONDS);
+        }
+        record(new LoggedRequest(receivedAt, request.getMethod(), route, deviceCode,
+                statusOf(response), delay, truncate(body)));
+        return response;
+    }
+
+    private MockResponse handle(String route, RecordedRequest request, String body, JSONObject json)
+            throws InterruptedException, JSONException {
+        switch (route) {
+            case "mobile_agent/pull":
+                return agentPull(request, json, false);
+            case "mobile_agent/pull_auto":
+                return agentPull(request, json, true);
+            case "mobile_agent/report":
+                return agentReport(request, json, false);
+            case "mobile_agent/report_auto":
+                return agentReport(request, json, true);
+            case "mobile_agent/report_batch":
+                return batchSupported ? agentReportBatch(request, json, false) : notFound();
+            case "mobile_agent/report_auto_batch":
+                return batchSupported ? agentReportBatch(request, json, true) : notFound();
+            case "auth/login":
+                return login(body);
+            case "auth/logout":
+                return logout(request);
+            case "mobile_console/bootstrap":
+                return requireSession(request) ? bootstrap(request) : unauthorized();
+            case "mobile_task/list":
+                return requireSession(request) ? listTasks(request) : unauthorized();
+            case "mobile_task/create_batch":
+                return requireSession(request) ? createBatch(json) : unauthorized();
+            case "mobile_task/update_status":
+                return requireSession(request) ? updateStatus(json) : unauthorized();
+            case "mobile_device/list":
+                return requireSession(request) ? listDevices() : unauthorized();
+            default:
+                return notFound();
+        }
+    }
+
+    private MockResponse agentPull(RecordedRequest request, JSONObject json, boolean auto)
+            throws InterruptedException, JSONException {
+        String deviceCode = deviceOf(request, json);
+        if (!authorizedDevice(request, json)) {
+            return error(404, "device_not_found");
+        }
+        Set<String> types = new HashSet<>();
+        JSONArray rawTypes = json.optJSONArray("task_types");
+        if (rawTypes != null) {
+            for (int i = 0; i < rawTypes.length(); i++) {
+                types.add(rawTypes.optString(i, ""));
+            }
+        }
+        int limit = multiPullSupported ? Math.max(1, Math.min(10, json.optInt("limit", 1))) : 1;
+        int waitSec = longPollSupported ? Math.max(0, Math.min(MAX_LONG_POLL_SEC, json.optInt("wait_sec", 0))) : 0;
+        List<StandInTaskStore.Task> leased = store.lease(deviceCode, types, auto, limit, waitSec * 1000L);
+        JSONObject data = new JSONObject();
+        if (leased.isEmpty()) {
+            data.put("task", JSONObject.NULL);
+            data.put("reason", "empty_queue");
+        } else {
+            JSONArray tasks = new JSONArray();
+            for (StandInTaskStore.Task task : leased) {
+                tasks.put(task.toPullJson());
+            }
+            data.put("task", tasks.get(0));
+            if (multiPullSupported) {
+                data.put("tasks", tasks);
+            }
+            data.put("server_time", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).format(new Date()));
+        }
+        if (multiPullSupported && store.getLeaseTtlMs() > 0) {
+            data.put("lease_ttl_sec", store.getLeaseTtlMs() / 1000L);
+        }
+        if (longPollSupported) {
+            data.put("long_poll", waitSec > 0 ? 1 : 0);
+        }
+        return ok(data, "ok");
+    }
+
+    private MockResponse agentReport(RecordedRequest request, JSONObject json, boolean auto) throws JSONException {
+        if (!authorizedDevice(request, json)) {
+            return error(404, "device_not_found");
+        }
+        JSONObject result = applyReport(deviceOf(request, json), json, auto);
+        if (result.has("error")) {
+            return error(result.optInt("code", 404), result.optString("error", ""));
+        }
+        return ok(result, "ok");
+    }
+
+    private MockResponse agentReportBatch(RecordedRequest request, JSONObject json, boolean auto) throws JSONException {
+        if (!authorizedDevice(request, json)) {
+            return error(404, "device_not_found");
+        }
+        String deviceCode = deviceOf(request, json);
+        JSONArray events = json.optJSONArray("events");
+        JSONArray results = new JSONArray();
+        for (int i = 0; events != null && i < events.length(); i++) {
+            JSONObject item = events.optJSONObject(i);
+            JSONObject result;
+            if (item == null) {
+                result = new JSONObject();
+                result.put("accepted", false);
+                result.put("error", "task_not_found");
+            } else {
+                result = applyReport(deviceCode, item, auto);
+                result.remove("code");
+            }
+            results.put(result);
+        }
+        JSONObject data = new JSONObject();
+        data.put("results", results);
+        return ok(data, "ok");
+    }
+
+    // Rejections come back with "error" and the envelope "code" PHP would use.
+    private JSONObject applyReport(String deviceCode, JSONObject json, boolean auto) throws JSONException {
+        String idempotencyKey = json.optString("idempotency_key", "");
+        if (idempotencyKey.isEmpty()) {
+            return applyReportOnce(deviceCode, json, auto);
+        }
+        int taskId = json.optInt("task_id", 0);
+        String key = taskId + ":" + idempotencyKey;
+        synchronized (acceptedReports) {
+            // Same answer as MobileAgent::findReplayedReport: the current status and the first event.
+            String priorEvent = acceptedReports.get(key);
+            if (priorEvent != null) {
+                JSONObject result = new JSONObject();
+                result.put("accepted", true);
+                result.put("task_status", store.get(taskId).status);
+                result.put("event", priorEvent);
+                result.put("duplicate", true);
+                return result;
+            }
+            JSONObject result = applyReportOnce(deviceCode, json, auto);
+            if (!result.has("error")) {
+                acceptedReports.put(key, result.optString("event", ""));
+            }
+            return result;
+        }
+    }
+
+    private JSONObject applyReportOnce(String deviceCode, JSONObject json, boolean auto) throws JSONException {
+        int taskId = json.optInt("task_id", 0);
+        String event = json.optString("event", "");
+        int status = store.report(taskId, deviceCode, event, json.optString("error_code", ""), auto);
+        JSONObject result = new JSONObject();
+        if (status == StandInTaskStore.REPORT_TASK_NOT_FOUND) {
+            result.put("accepted", false);
+            result.put("code", 404);
+            result.put("error", "task_not_found");
+            return result;
+        }
+        if (status == StandInTaskStore.REPORT_DEVICE_MISMATCH) {
+            result.put("accepted", false);
+            result.put("code", 403);
+            result.put("error", "task_device_mismatch");
+            return result;
+        }
+        result.put("accepted", true);
+        result.put("task_status", status);
+        result.put("event", StandInTaskStore.reportedEvent(store.get(taskId), event));
+        return result;
+    }
+
+    private MockResponse login(String body) throws JSONException {
+        Map<String, String> form = parseForm(body);
+        String username = form.containsKey("username") ? form.get("username") : "";
+        String expected = users.get(username);
+        if (expected == null || !expected.equals(form.get("password"))) {
+            return error(1, "invalid_credentials");
+        }
+        String session = UUID.randomUUID().toString().replace("-", "");
+        sessions.add(session);
+        JSONObject user = new JSONObject();
+        user.put("id", 1);
+        user.put("username", username);
+        user.put("role", "super_admin");
+        user.put("tenant_id", 1);
+        JSONObject data = new JSONObject();
+        data.put("user", user);
+        data.put("redirect", ADMIN_ENTRY);
+        return ok(data, "ok").addHeader("Set-Cookie", SESSION_COOKIE + "=" + session + "; Path=/; HttpOnly");
+    }
+
+    private MockResponse logout(RecordedRequest request) throws JSONException {
+        String session = sessionOf(request);
+        if (session != null) {
+            sessions.remove(session);
+        }
+        return ok(new JSONObject(), "ok");
+    }
+
+    private MockResponse bootstrap(RecordedRequest request) throws JSONException {
+        HttpUrl url = request.getRequestUrl();
+        JSONObject user = new JSONObject();
+        user.put("id", 1);
+        user.put("username", "admin");
+        user.put("role", "super_admin");
+        user.put("tenant_id", 1);
+        JSONObject data = new JSONObject();
+        data.put("lang", url == null || url.queryParameter("lang") == null ? "zh" : url.queryParameter("lang"));
+        data.put("user", user);
+        data.put("portal", "admin");
+        data.put("menus", new JSONArray());
+        data.put("enabled_modules", new JSONArray(Arrays.asList("mobile_agent", "mobile_task")));
+        return ok(data, "ok");
+    }
+
+    private MockResponse listTasks(RecordedRequest request) throws JSONException {
+        HttpUrl url = request.getRequestUrl();
+        String status = url == null ? null : url.queryParameter("task_status");
+        String type = url == null ? null : url.queryParameter("task_type");
+        int page = Math.max(1, parseInt(url == null ? null : url.queryParameter("page"), 1));
+        int pageSize = Math.max(1, Math.min(200, parseInt(url == null ? null : url.queryParameter("page_size"), 20)));
+        List<StandInTaskStore.Task> matched = new ArrayList<>();
+        for (StandInTaskStore.Task task : store.all()) {
+            if (status != null && !status.isEmpty() && task.status != parseInt(status, -1)) {
+                continue;
+            }
+            if (type != null && !type.isEmpty() && !type.equals(task.taskType)) {
+                continue;
+            }
+            matched.add(task);
+        }
+        JSONArray items = new JSONArray();
+        for (int i = (page - 1) * pageSize; i < matched.size() && i < page * pageSize; i++) {
+            items.put(matched.get(i).toListJson());
+        }
+        JSONObject summary = new JSONObject();
+        for (Map.Entry<Integer, Integer> entry : store.statusCounts().entrySet()) {
+            summary.put("status_" + entry.getKey(), entry.getValue());
+        }
+        JSONObject data = new JSONObject();
+        data.put("items", items);
+        data.put("total", matched.size());
+        data.put("page", page);
+        data.put("page_size", pageSize);
+        data.put("summary", summary);
+        return ok(data, "ok");
+    }
+
+    private MockResponse createBatch(JSONObject json) throws JSONException {
+        int limit = Math.max(1, Math.min(200, json.optInt("limit", 50)));
+        String type = json.optString("task_type", "tiktok_dm");
+        store.seed(limit, Arrays.asList(type));
+        JSONObject data = new JSONObject();
+        data.put("created", limit);
+        data.put("skipped_existing", 0);
+        data.put("blocked_24h", 0);
+        data.put("total_candidates", limit);
+        return ok(data, "created");
+    }
+
+    private MockResponse updateStatus(JSONObject json) throws JSONException {
+        int taskId = json.optInt("task_id", 0);
+        if (taskId <= 0) {
+            return error(1, "invalid_task_id");
+        }
+        String event = firstNonEmpty(json.optString("event", ""), json.optString("action", ""));
+        int status = store.report(taskId, "", event.isEmpty() ? "prepared" : event, "", false);
+        if (status < 0) {
+            return error(404, "task_not_found");
+        }
+        JSONObject data = new JSONObject();
+        data.put("task_id", taskId);
+        data.put("task_status", status);
+        data.put("event", event);
+        return ok(data, "updated");
+    }
+
+    private MockResponse listDevices() throws JSONException {
+        JSONArray items = new JSONArray();
+        for (Map.Entry<String, String> entry : new HashMap<>(deviceTokens).entrySet()) {
+            JSONObject row = new JSONObject();
+            row.put("device_code", entry.getKey());
+            row.put("device_name", entry.getKey());
+            row.put("agent_token", entry.getValue());
+            row.put("is_online", 1);
+            items.put(row);
+        }
+        JSONObject data = new JSONObject();
+        data.put("items", items);
+        return ok(data, "ok");
+    }
+
+    private boolean authorizedDevice(RecordedRequest request, JSONObject json) {
+        if (deviceTokens.isEmpty()) {
+            return true;
+        }
+        String expected = deviceTokens.get(deviceOf(request, json));
+        String token = firstNonEmpty(request.getHeader("X-Mobile-Agent-Token"), json.optString("token", ""));
+        return expected != null && expected.equals(token);
+    }
+
+    private boolean requireSession(RecordedRequest request) {
+        String session = sessionOf(request);
+        return session != null && sessions.contains(session);
+    }
+
+    private static String sessionOf(RecordedRequest request) {
+        String header = request.getHeader("Cookie");
+        if (header == null) {
+            return null;
+        }
+        for (String part : header.split(";")) {
+            String item = part.trim();
+            if (item.startsWith(SESSION_COOKIE + "=")) {
+                return item.substring(SESSION_COOKIE.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    private static String deviceOf(RecordedRequest request, JSONObject json) {
+        return firstNonEmpty(request.getHeader("X-Device-Code"), json.optString("device_code", ""));
+    }
+
+    private MockResponse ok(JSONObject data, String msg) throws JSONException {
+        JSONObject root = new JSONObject();
+        root.put("code", 0);
+        root.put("msg", msg);
+        root.put("trace_id", "standin-" + traceSeq.incrementAndGet());
+        root.put("data", data);
+        return json(200, root);
+    }
+
+    private MockResponse error(int code, String msg) throws JSONException {
+        JSONObject root = new JSONObject();
+        root.put("code", code);
+        root.put("msg", msg);
+        root.put("trace_id", "standin-" + traceSeq.incrementAndGet());
+        root.put("data", JSONObject.NULL);
+        return json(200, root);
+    }
+
+    private MockResponse unauthorized() throws JSONException {
+        return error(401, "not_logged_in");
+    }
+
+    private static MockResponse notFound() {
+        return new MockResponse().setResponseCode(404).setBody("<html><body>404</body></html>");
+    }
+
+    private static MockResponse json(int status, JSONObject body) {
+        return new MockResponse()
+                .setResponseCode(status)
+                .setHeader("Content-Type", "application/json; charset=utf-8")
+                .setBody(body.toString());
+    }
+
+    private void record(LoggedRequest item) {
+        log.add(item);
+        Writer writer = logWriter;
+        if (writer == null) {
+            return;
+        }
+        try {
+            synchronized (writer) {
+                writer.write(item.toJson().toString());
+                writer.write('\n');
+                writer.flush();
+            }
+        } catch (IOException | JSONException ignore) {
+        }
+    }
+
+    static String routeOf(HttpUrl url) {
+        if (url == null) {
+            return "";
+        }
+        String path = url.encodedPath();
+        int entry = path.indexOf(ADMIN_ENTRY);
+        if (entry >= 0) {
+            path = path.substring(entry + ADMIN_ENTRY.length());
+        }
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        return path;
+    }
+
+    private static int statusOf(MockResponse response) {
+        String[] parts = response.getStatus().split(" ");
+        return parts.length > 1 ? parseInt(parts[1], 0) : 0;
+    }
+
+    private static JSONObject parseJson(String body) {
+        if (body == null || body.trim().isEmpty()) {
+            return new JSONObject();
+        }
+        try {
+            return new JSONObject(body);
+        } catch (JSONException e) {
+            return new JSONObject();
+        }
+    }
+
+    private static Map<String, String> parseForm(String body) {
+        Map<String, String> out = new HashMap<>();
+        if (body == null || body.isEmpty()) {
+            return out;
+        }
+        for (String pair : body.split("&")) {
+            int eq = pair.indexOf('=');
+            try {
+                String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+                String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+                out.put(key, value);
+            } catch (Exception ignore) {
+            }
+        }
+        return out;
+    }
+
+    private static int parseInt(String value, int fallback) {
+        try {
+            return value == null ? fallback : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static String firstNonEmpty(String first, String second) {
+        return first != null && !first.trim().isEmpty() ? first.trim() : (second == null ? "" : second.trim());
+    }
+
+    private static String truncate(String body) {
+        if (body == null) {
+            return "";
+        }
+        return body.length() <= 512 ? body : body.substring(0, 512);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 8080;
+        int seed = 100;
+        List<String> types = Arrays.asList("comment_warmup", "tiktok_dm", "zalo_im", "wa_im");
+        final StandInServer standIn = new StandInServer();
+        for (int i = 0; i < args.length; i++) {
+            String key = args[i];
+            if ("--batch".equals(key)) {
+                standIn.setBatchSupported(true);
+                continue;
+            }
+            if ("--multi-pull".equals(key)) {
+                standIn.setMultiPullSupported(true);
+                continue;
+            }
+            if ("--long-poll".equals(key)) {
+                standIn.setLongPollSupported(true);
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value for " + key);
+            }
+            String value = args[++i];
+            switch (key) {
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--tasks":
+                    seed = Integer.parseInt(value);
+                    break;
+                case "--types":
+                    types = Arrays.asList(value.split(","));
+                    break;
+                case "--latency-ms": {
+                    String[] range = value.split("-");
+                    long min = Long.parseLong(range[0].trim());
+                    standIn.setLatency(min, range.length > 1 ? Long.parseLong(range[1].trim()) : min);
+                    break;
+                }
+                case "--error-rate":
+                    standIn.setErrorRate(Double.parseDouble(value));
+                    break;
+                case "--lease-ttl-sec":
+                    standIn.tasks().setLeaseTtlMs(Long.parseLong(value) * 1000L);
+                    break;
+                case "--device": {
+                    String[] pair = value.split(":", 2);
+                    standIn.registerDevice(pair[0], pair.length > 1 ? pair[1] : "");
+                    break;
+                }
+                case "--log":
+                    standIn.logTo(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + key);
+            }
+        }
+        standIn.tasks().seed(seed, types);
+        standIn.start(port);
+        System.out.println("stand-in listening on " + standIn.adminBase() + " with " + seed + " tasks");
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    standIn.shutdown();
+                } catch (IOException ignore) {
+                }
+            }
+        }));
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,375 @@
+package com.videotool.sim;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+// In-memory mobile_action_tasks and auto_dm_tasks tables for the stand-in
+// server. Status codes and event mapping follow MobileOutreachService and
+// MobileAgent::reportAuto on the PHP side.
+public class StandInTaskStore {
+    public static final int STATUS_PENDING = 0;
+    public static final int STATUS_ASSIGNED = 1;
+    public static final int STATUS_PREPARED = 2;
+    public static final int STATUS_DONE = 3;
+    public static final int STATUS_FAILED = 4;
+    public static final int STATUS_SKIPPED = 5;
+    public static final int STATUS_CANCELED = 6;
+
+    // AutoDmService task statuses; they share codes 0..6 with the ones above.
+    public static final int AUTO_STATUS_SENDING = 2;
+    public static final int AUTO_STATUS_SENT = 3;
+    public static final int AUTO_STATUS_FAILED = 4;
+    public static final int AUTO_STATUS_BLOCKED = 5;
+    public static final int AUTO_STATUS_COOLING = 6;
+
+    // report() results that are not a status.
+    public static final int REPORT_TASK_NOT_FOUND = -1;
+    public static final int REPORT_DEVICE_MISMATCH = -2;
+
+    public static class Task {
+        public final int id;
+        public final String taskType;
+        public final String targetChannel;
+        public final int priority;
+        public final String renderedText;
+        public final String tiktokId;
+        public final String nickname;
+        public final String whatsapp;
+        public final String zalo;
+        int status = STATUS_PENDING;
+        String deviceCode = "";
+        long leaseUntil = 0L;
+        String lastEvent = "";
+        String lastErrorCode = "";
+        int reports = 0;
+
+        Task(int id, String taskType, String targetChannel, int priority, String renderedText,
+             String tiktokId, String nickname, String whatsapp, String zalo) {
+            this.id = id;
+            this.taskType = taskType;
+            this.targetChannel = targetChannel;
+            this.priority = priority;
+            this.renderedText = renderedText;
+            this.tiktokId = tiktokId;
+            this.nickname = nickname;
+            this.whatsapp = whatsapp;
+            this.zalo = zalo;
+        }
+
+        boolean isAuto() {
+            return "zalo_auto_dm".equals(taskType) || "wa_auto_dm".equals(taskType);
+        }
+
+        // Wire shape of the pull response task object.
+        JSONObject toPullJson() throws JSONException {
+            JSONObject channels = new JSONObject();
+            channels.put("whatsapp", whatsapp);
+            channels.put("zalo", zalo);
+            JSONObject payload = new JSONObject();
+            payload.put("task_type", taskType);
+            payload.put("target_channel", targetChannel);
+            payload.put("tiktok_id", tiktokId);
+            payload.put("nickname", nickname);
+            payload.put("channels", channels);
+            JSONObject influencer = new JSONObject();
+            influencer.put("id", id);
+            influencer.put("tiktok_id", tiktokId);
+            influencer.put("nickname", nickname);
+            JSONObject obj = new JSONObject();
+            obj.put("id", id);
+            obj.put("task_type", taskType);
+            obj.put("target_channel", targetChannel);
+            obj.put("priority", priority);
+            obj.put("payload", payload);
+            obj.put("rendered_text", renderedText);
+            obj.put("influencer", influencer);
+            return obj;
+        }
+
+        // Wire shape of a /mobile_task/list row.
+        JSONObject toListJson() throws JSONException {
+            JSONObject obj = new JSONObject();
+            obj.put("id", id);
+            obj.put("influencer_id", id);
+            obj.put("task_type", taskType);
+            obj.put("target_channel", targetChannel);
+            obj.put("priority", priority);
+            obj.put("task_status", status);
+            obj.put("device_code", deviceCode);
+            obj.put("last_error_code", lastErrorCode);
+            obj.put("tiktok_id", tiktokId);
+            obj.put("nickname", nickname);
+            obj.put("rendered_text", renderedText);
+            return obj;
+        }
+    }
+
+    private final Map<Integer, Task> tasks = new LinkedHashMap<>();
+    // 0 keeps leases until the agent reports, as the PHP backend does.
+    private long leaseTtlMs = 0L;
+    private int nextId = 1;
+
+    public synchronized void setLeaseTtlMs(long leaseTtlMs) {
+        this.leaseTtlMs = leaseTtlMs <= 0 ? 0L : Math.max(1000L, leaseTtlMs);
+    }
+
+    public synchronized long getLeaseTtlMs() {
+        return leaseTtlMs;
+    }
+
+    public synchronized Task add(String taskType, int priority) {
+        int id = nextId++;
+        String type = taskType == null || taskType.isEmpty() ? "tiktok_dm" : taskType;
+        String channel = "tiktok";
+        if (type.startsWith("zalo")) {
+            channel = "zalo";
+        } else if (type.startsWith("wa")) {
+            channel = "wa";
+        }
+        Task task = new Task(id, type, channel, priority, "Hello creator " + id,
+                "creator_" + id, "Creator " + id, "84900" + String.format(Locale.US, "%06d", id),
+                "https://zalo.me/84800" + String.format(Locale.US, "%06d", id));
+        tasks.put(id, task);
+        notifyAll();
+        return task;
+    }
+
+    public synchronized List<Task> seed(int count, List<String> types) {
+        List<Task> out = new ArrayList<>();
+        List<String> cycle = types == null || types.isEmpty() ? Collections.singletonList("tiktok_dm") : types;
+        for (int i = 0; i < count; i++) {
+            out.add(add(cycle.get(i % cycle.size()), 0));
+        }
+        return out;
+    }
+
+    public synchronized Task get(int id) {
+        return tasks.get(id);
+    }
+
+    public synchronized Collection<Task> all() {
+        return new ArrayList<>(tasks.values());
+    }
+
+    // Leases up to limit pending tasks, waiting up to waitMs for work to show up.
+    public synchronized List<Task> lease(String deviceCode, Collection<String> types, boolean auto, int limit, long waitMs)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + Math.max(0L, waitMs);
+        while (true) {
+            expireLeases();
+            List<Task> picked = pick(types, auto, limit);
+            if (!picked.isEmpty()) {
+                long until = leaseTtlMs > 0 ? System.currentTimeMillis() + leaseTtlMs : 0L;
+                for (Task task : picked) {
+                    task.status = STATUS_ASSIGNED;
+                    task.deviceCode = deviceCode;
+                    task.leaseUntil = until;
+                }
+                return picked;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return picked;
+            }
+            wait(Math.min(remaining, 1000L));
+        }
+    }
+
+    // Returns the new status, or one of the REPORT_* codes. auto picks the
+    // report_auto endpoint, which only sees auto tasks (and vice versa).
+    public synchronized int report(int taskId, String deviceCode, String event, String errorCode, boolean auto) {
+        Task task = tasks.get(taskId);
+        if (task == null || task.isAuto() != auto) {
+            return REPORT_TASK_NOT_FOUND;
+        }
+        String device = deviceCode == null ? "" : deviceCode;
+        if (!task.deviceCode.isEmpty() && !device.isEmpty() && !task.deviceCode.equals(device)) {
+            return REPORT_DEVICE_MISMATCH;
+        }
+        String key = event == null ? "" : event.trim().toLowerCase(Locale.US);
+        task.reports++;
+        task.lastEvent = key;
+        if (errorCode != null && !errorCode.isEmpty()) {
+            task.lastErrorCode = errorCode;
+        }
+        boolean release = auto ? "auto_dm_released".equals(normalizeAutoEvent(key)) : isReleaseEvent(key);
+        if (release) {
+            // Only a task that is still assigned goes back to the queue.
+            if (task.status == STATUS_ASSIGNED) {
+                task.status = STATUS_PENDING;
+                task.deviceCode = "";
+                task.leaseUntil = 0L;
+                notifyAll();
+            }
+            return task.status;
+        }
+        task.status = auto ? mapAutoEventToStatus(key) : mapEventToStatus(key);
+        task.deviceCode = device;
+        task.leaseUntil = 0L;
+        return task.status;
+    }
+
+    public synchronized Map<Integer, Integer> statusCounts() {
+        Map<Integer, Integer> counts = new LinkedHashMap<>();
+        for (int status = STATUS_PENDING; status <= STATUS_CANCELED; status++) {
+            counts.put(status, 0);
+        }
+        for (Task task : tasks.values()) {
+            counts.put(task.status, counts.get(task.status) + 1);
+        }
+        return counts;
+    }
+
+    static boolean isReleaseEvent(String event) {
+        return "release".equals(event) || "released".equals(event);
+    }
+
+    // MobileOutreachService::mapReportEventToStatus
+    static int mapEventToStatus(String event) {
+        if (isReleaseEvent(event)) {
+            return STATUS_PENDING;
+        }
+        switch (event) {
+            case "prepared":
+            case "comment_prepared":
+            case "dm_prepared":
+            case "im_prepared":
+                return STATUS_PREPARED;
+            case "sent":
+            case "done":
+            case "success":
+            case "comment_sent":
+                return STATUS_DONE;
+            case "skip":
+            case "skipped":
+                return STATUS_SKIPPED;
+            case "cancel":
+            case "canceled":
+            case "cancelled":
+                return STATUS_CANCELED;
+            default:
+                return STATUS_FAILED;
+        }
+    }
+
+    // Event name echoed back in the report response: normalizeActionEvent for
+    // mobile tasks, normalizeAutoReportEvent for auto ones.
+    static String reportedEvent(Task task, String event) {
+        String key = event == null ? "" : event.trim().toLowerCase(Locale.US);
+        if (task.isAuto()) {
+            return normalizeAutoEvent(key);
+        }
+        if (isReleaseEvent(key)) {
+            return "release";
+        }
+        boolean comment = "comment_warmup".equals(task.taskType);
+        if (key.isEmpty()) {
+            return "report";
+        }
+        if ("prepared".equals(key)) {
+            if (comment) {
+                return "comment_prepared";
+            }
+            return "tiktok_dm".equals(task.taskType) ? "dm_prepared" : "im_prepared";
+        }
+        if (comment && ("sent".equals(key) || "done".equals(key) || "success".equals(key))) {
+            return "comment_sent";
+        }
+        return key;
+    }
+
+    // MobileAgent::normalizeAutoReportEvent
+    static String normalizeAutoEvent(String event) {
+        switch (event) {
+            case "sending":
+            case "prepared":
+            case "auto_sending":
+                return "sending";
+            case "auto_dm_sent":
+            case "sent":
+            case "done":
+            case "success":
+            case "auto_sent":
+                return "auto_dm_sent";
+            case "auto_dm_blocked":
+            case "blocked":
+            case "block":
+                return "auto_dm_blocked";
+            case "auto_dm_cooling":
+            case "cooling":
+                return "auto_dm_cooling";
+            case "auto_dm_reply_stop":
+            case "reply_stop":
+            case "unsubscribe":
+                return "auto_dm_reply_stop";
+            case "auto_dm_released":
+            case "release":
+            case "released":
+                return "auto_dm_released";
+            default:
+                return "auto_dm_failed";
+        }
+    }
+
+    // MobileAgent::mapAutoReportEventToStatus
+    static int mapAutoEventToStatus(String event) {
+        switch (normalizeAutoEvent(event)) {
+            case "sending":
+                return AUTO_STATUS_SENDING;
+            case "auto_dm_sent":
+                return AUTO_STATUS_SENT;
+            case "auto_dm_blocked":
+            case "auto_dm_reply_stop":
+                return AUTO_STATUS_BLOCKED;
+            case "auto_dm_cooling":
+                return AUTO_STATUS_COOLING;
+            case "auto_dm_released":
+                return STATUS_PENDING;
+            default:
+                return AUTO_STATUS_FAILED;
+        }
+    }
+
+    private List<Task> pick(Collection<String> types, boolean auto, int limit) {
+        TreeSet<Task> ordered = new TreeSet<>((a, b) -> a.priority != b.priority
+                ? Integer.compare(b.priority, a.priority)
+                : Integer.compare(a.id, b.id));
+        for (Task task : tasks.values()) {
+            if (task.status != STATUS_PENDING || task.isAuto() != auto) {
+                continue;
+            }
+            if (types != null && !types.isEmpty() && !types.contains(task.taskType)) {
+                continue;
+            }
+            ordered.add(task);
+        }
+        List<Task> out = new ArrayList<>();
+        for (Task task : ordered) {
+            if (out.size() >= Math.max(1, limit)) {
+                break;
+            }
+            out.add(task);
+        }
+        return out;
+    }
+
+    private void expireLeases() {
+        long now = System.currentTimeMillis();
+        for (Task task : tasks.values()) {
+            if (task.status == STATUS_ASSIGNED && task.leaseUntil > 0 && task.leaseUntil < now) {
+                task.status = STATUS_PENDING;
+                task.deviceCode = "";
+                task.leaseUntil = 0L;
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.videotool.sim;
+
+import com.videotool.agent.AgentApiClient;
+import com.videotool.agent.AgentConfig;
+import com.videotool.agent.AgentTask;
+import com.videotool.agent.ExecutionPlan;
+import com.videotool.agent.TaskTimeline;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// One simulated phone: pull, "work" for a think time, report prepared and done.
+// Calls go through the real AgentApiClient, so retries and the breaker apply.
+public class VirtualAgent implements Runnable {
+    private static final long CALL_TIMEOUT_SEC = 120L;
+    private static final long ERROR_PAUSE_MS = 1000L;
+
+    private final AgentApiClient client;
+    private final AgentConfig config;
+    private final SimStats stats;
+    private final long thinkMs;
+    private final long idleMs;
+    private final long deadline;
+    private final Random random;
+
+    public VirtualAgent(
+            AgentApiClient client,
+            AgentConfig config,
+            SimStats stats,
+            long thinkMs,
+            long idleMs,
+            long deadline,
+            long seed
+    ) {
+        this.client = client;
+        this.config = config;
+        this.stats = stats;
+        this.thinkMs = Math.max(0L, thinkMs);
+        this.idleMs = Math.max(0L, idleMs);
+        this.deadline = deadline;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public void run() {
+        while (TaskTimeline.now() < deadline && !Thread.currentThread().isInterrupted()) {
+            long startedAt = TaskTimeline.now();
+            stats.pulls.incrementAndGet();
+            Outcome<AgentApiClient.PullResult> pull = pull();
+            stats.pullLatency.record(TaskTimeline.now() - startedAt);
+            if (pull.error != null) {
+                stats.recordError(pull.error);
+                pause(Math.max(ERROR_PAUSE_MS, client.retryAfterMs()));
+                continue;
+            }
+            if (pull.value == null || pull.value.tasks.isEmpty()) {
+                stats.emptyPulls.incrementAndGet();
+                if (pull.value == null || !pull.value.longPolled) {
+                    pause(idleMs);
+                }
+                continue;
+            }
+            stats.tasksLeased.addAndGet(pull.value.tasks.size());
+            for (AgentTask task : pull.value.tasks) {
+                // A real phone would act on a duplicate lease too; count it and carry on.
+                stats.claim(task.getId(), config.getDeviceCode());
+                work(task, startedAt);
+            }
+        }
+    }
+
+    private void work(AgentTask task, long pulledAt) {
+        ExecutionPlan plan = task.getPlan();
+        boolean auto = config.isAutoMode() && plan.isAutoDm();
+        if (!report(task, auto ? ExecutionPlan.AUTO_SENDING_EVENT : plan.preparedEvent, auto)) {
+            return;
+        }
+        pause(jitter(thinkMs));
+        if (report(task, auto ? ExecutionPlan.AUTO_DONE_EVENT : plan.doneEvent, auto)) {
+            stats.tasksCompleted.incrementAndGet();
+            stats.taskLatency.record(TaskTimeline.now() - pulledAt);
+        }
+    }
+
+    private Outcome<AgentApiClient.PullResult> pull() {
+        final Outcome<AgentApiClient.PullResult> outcome = new Outcome<>();
+        AgentApiClient.ApiCallback<AgentApiClient.PullResult> callback = outcome.callback();
+        if (config.isAutoMode()) {
+            client.pullTasksAuto(config, config.getPrefetchSize(), callback);
+        } else {
+            client.pullTasks(config, config.getPrefetchSize(), callback);
+        }
+        return outcome.await();
+    }
+
+    private boolean report(AgentTask task, String event, boolean auto) {
+        long startedAt = TaskTimeline.now();
+        Outcome<AgentApiClient.ReportResult> outcome = new Outcome<>();
+        if (auto) {
+            client.reportAuto(config, task.getId(), event, task.getBestText(), "", "", "", outcome.callback());
+        } else {
+            client.report(config, task.getId(), event, task.getBestText(), "", "", "", outcome.callback());
+        }
+        outcome.await();
+        stats.reportLatency.record(TaskTimeline.now() - startedAt);
+        stats.reports.incrementAndGet();
+        if (outcome.error != null) {
+            stats.recordError(outcome.error);
+            return false;
+        }
+        return true;
+    }
+
+    private long jitter(long base) {
+        if (base <= 0) {
+            return 0L;
+        }
+        return base / 2 + (long) (random.nextDouble() * base);
+    }
+
+    private void pause(long ms) {
+        long remaining = deadline - TaskTimeline.now();
+        if (ms <= 0 || remaining <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(Math.min(ms, remaining));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Outcome<T> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicReference<T> result = new AtomicReference<>();
+        private final AtomicReference<String> failure = new AtomicReference<>();
+        T value;
+        String error;
+
+        AgentApiClient.ApiCallback<T> callback() {
+            return new AgentApiClient.ApiCallback<T>() {
+                @Override
+                public void onSuccess(T value) {
+                    result.set(value);
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(String errorMessage) {
+                    failure.set(errorMessage == null ? "unknown" : errorMessage);
+                    done.countDown();
+                }
+            };
+        }
+
+        Outcome<T> await() {
+            try {
+                if (!done.await(CALL_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+                    failure.set("sim_call_timeout");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.set("sim_interrupted");
+            }
+            value = result.get();
+            error = failure.get();
+            return this;
+        }
+    }
+}
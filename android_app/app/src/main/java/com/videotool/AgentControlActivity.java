@@ -1,12 +1,9 @@
 package com.videotool;
 
 import android.app.AlertDialog;
-import android.content.BroadcastReceiver;
 import android.content.ClipData;
 import android.content.ClipboardManager;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
@@ -24,7 +21,9 @@ import androidx.core.content.ContextCompat;
 
 import com.videotool.agent.AgentConfig;
 import com.videotool.agent.AgentApiClient;
+import com.videotool.agent.AgentMetrics;
 import com.videotool.agent.AgentPrefs;
+import com.videotool.agent.AgentStatePublisher;
 import com.videotool.agent.AgentTask;
 import com.videotool.agent.MobileAgentService;
 import com.videotool.automation.CommentAutomationBridge;
@@ -64,16 +63,10 @@ public class AgentControlActivity extends AppCompatActivity {
     private AgentPrefs prefs;
     private final StringBuilder logBuffer = new StringBuilder();
 
-    private final BroadcastReceiver stateReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            if (intent == null) {
-                return;
-            }
-            String status = intent.getStringExtra(MobileAgentService.EXTRA_STATUS);
-            String logLine = intent.getStringExtra(MobileAgentService.EXTRA_LOG_LINE);
-            String taskJson = intent.getStringExtra(MobileAgentService.EXTRA_TASK_JSON);
-            applyRuntimeState(status, logLine, taskJson);
+    private final AgentStatePublisher.Listener stateListener = (snapshot, newLogLines) -> {
+        applyRuntimeState(snapshot.status, null, snapshot.task);
+        for (String line : newLogLines) {
+            appendLog(line);
         }
     };
 
@@ -89,29 +82,20 @@ public class AgentControlActivity extends AppCompatActivity {
         bindViews();
         bindActions();
         restoreConfig();
-        applyRuntimeState(prefs.getLastStatus(), prefs.getLastLog(), taskJsonFromPrefs());
+        applyRuntimeState(prefs.getLastStatus(), prefs.getLastLog(), prefs.loadCurrentTask());
         requestStateSync();
     }
 
     @Override
     protected void onStart() {
         super.onStart();
-        IntentFilter filter = new IntentFilter(MobileAgentService.BROADCAST_STATE);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-            registerReceiver(stateReceiver, filter, RECEIVER_NOT_EXPORTED);
-        } else {
-            registerReceiver(stateReceiver, filter);
-        }
-        requestStateSync();
+        AgentStatePublisher.get().addListener(stateListener);
     }
 
     @Override
     protected void onStop() {
         super.onStop();
-        try {
-            unregisterReceiver(stateReceiver);
-        } catch (Exception ignore) {
-        }
+        AgentStatePublisher.get().removeListener(stateListener);
     }
 
     private void bindViews() {
@@ -151,6 +135,7 @@ public class AgentControlActivity extends AppCompatActivity {
         Button btnPickDevice = findViewById(R.id.btn_pick_device);
         Button btnTestPull = findViewById(R.id.btn_test_agent_pull);
         Button btnPermissionCheck = findViewById(R.id.btn_permission_check);
+        Button btnMetrics = findViewById(R.id.btn_agent_metrics);
         Button btnCopyZalo = findViewById(R.id.btn_copy_zalo);
         Button btnContactNow = findViewById(R.id.btn_contact_now);
 
@@ -188,6 +173,7 @@ public class AgentControlActivity extends AppCompatActivity {
         btnPickDevice.setOnClickListener(v -> loadDeviceOptions());
         btnTestPull.setOnClickListener(v -> testAgentPull());
         btnPermissionCheck.setOnClickListener(v -> showPermissionHealthReport());
+        btnMetrics.setOnClickListener(v -> showAgentMetrics());
         btnCopyZalo.setOnClickListener(v -> copyCurrentZalo());
         btnContactNow.setOnClickListener(v -> startAgentService(MobileAgentService.ACTION_OPEN_TARGET, null));
         btnClearLog.setOnClickListener(v -> {
@@ -207,7 +193,8 @@ public class AgentControlActivity extends AppCompatActivity {
     }
 
     private AgentConfig collectConfigFromInputs() {
-        AgentConfig config = AgentConfig.defaultConfig();
+        // Start from the saved config so settings without a form field survive a save.
+        AgentConfig config = prefs.loadConfig();
         config.setAdminBase(valueOf(inputAdminBase));
         config.setToken(valueOf(inputToken));
         config.setDeviceCode(valueOf(inputDeviceCode));
@@ -267,25 +254,19 @@ public class AgentControlActivity extends AppCompatActivity {
         }
     }
 
-    private void applyRuntimeState(String status, String logLine, String taskJson) {
+    private void applyRuntimeState(String status, String logLine, AgentTask task) {
         if (TextUtils.isEmpty(status)) {
             status = prefs.isRunning() ? "Running" : "Stopped";
         }
         textStatus.setText(getString(R.string.label_status_value, status));
 
-        if (!TextUtils.isEmpty(taskJson)) {
-            try {
-                AgentTask task = AgentTask.fromJson(new JSONObject(taskJson));
-                String summary = "#" + task.getId()
-                        + " | " + task.getTaskType()
-                        + " | " + task.getDisplayName()
-                        + " | channel=" + task.getTargetChannel();
-                textCurrentTask.setText(summary);
-                renderTaskHero(task);
-            } catch (Exception e) {
-                textCurrentTask.setText(getString(R.string.task_none));
-                renderTaskHero(null);
-            }
+        if (task != null) {
+            String summary = "#" + task.getId()
+                    + " | " + task.getTaskType()
+                    + " | " + task.getDisplayName()
+                    + " | channel=" + task.getTargetChannel();
+            textCurrentTask.setText(summary);
+            renderTaskHero(task);
         } else {
             textCurrentTask.setText(getString(R.string.task_none));
             renderTaskHero(null);
@@ -296,14 +277,6 @@ public class AgentControlActivity extends AppCompatActivity {
         }
     }
 
-    private String taskJsonFromPrefs() {
-        AgentTask task = prefs.loadCurrentTask();
-        if (task == null) {
-            return "";
-        }
-        return task.toJson().toString();
-    }
-
     private void appendLog(String line) {
         if (line == null || line.trim().isEmpty()) {
             return;
@@ -693,6 +666,19 @@ public class AgentControlActivity extends AppCompatActivity {
         builder.show();
     }
 
+    private void showAgentMetrics()
+    {
+        String report = AgentMetrics.get().render();
+        if (report.indexOf('\n') < 0) {
+            report = getString(R.string.agent_metrics_empty);
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.agent_metrics_title)
+                .setMessage(report)
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
     private String renderHealthLine(String label, boolean ok)
     {
         String status = ok ? getString(R.string.agent_health_ok) : getString(R.string.agent_health_missing);
@@ -3,21 +3,28 @@ package com.videotool.agent;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+
 public class AgentPrefs {
     private static final String PREF_NAME = "mobile_agent_prefs";
     private static final String KEY_CONFIG = "agent_config_json";
     private static final String KEY_CURRENT_TASK = "agent_current_task_json";
+    private static final String KEY_TASK_QUEUE = "agent_task_queue_json";
     private static final String KEY_RUNNING = "agent_running";
     private static final String KEY_LAST_LOG = "agent_last_log";
     private static final String KEY_LAST_STATUS = "agent_last_status";
 
     private final SharedPreferences prefs;
+    private final AgentStateStore store;
 
     public AgentPrefs(Context context) {
         this.prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        this.store = AgentStateStore.get(new File(context.getFilesDir(), "agent"));
+        migrateLegacyState();
     }
 
     public void saveConfig(AgentConfig config) {
@@ -25,7 +32,11 @@ public class AgentPrefs {
             return;
         }
         try {
-            prefs.edit().putString(KEY_CONFIG, config.toJson().toString()).apply();
+            String raw = config.toJson().toString();
+            if (raw.equals(prefs.getString(KEY_CONFIG, ""))) {
+                return;
+            }
+            prefs.edit().putString(KEY_CONFIG, raw).apply();
         } catch (JSONException ignore) {
         }
     }
@@ -44,15 +55,11 @@ public class AgentPrefs {
     }
 
     public void saveCurrentTask(AgentTask task) {
-        if (task == null) {
-            prefs.edit().remove(KEY_CURRENT_TASK).apply();
-            return;
-        }
-        prefs.edit().putString(KEY_CURRENT_TASK, task.toJson().toString()).apply();
+        store.putDurable(AgentStateStore.KEY_CURRENT_TASK, task == null ? null : task.toJson().toString());
     }
 
     public AgentTask loadCurrentTask() {
-        String raw = prefs.getString(KEY_CURRENT_TASK, "");
+        String raw = store.getString(AgentStateStore.KEY_CURRENT_TASK, "");
         if (raw == null || raw.trim().isEmpty()) {
             return null;
         }
@@ -64,30 +71,109 @@ public class AgentPrefs {
     }
 
     public void clearCurrentTask() {
-        prefs.edit().remove(KEY_CURRENT_TASK).apply();
+        store.putDurable(AgentStateStore.KEY_CURRENT_TASK, null);
+    }
+
+    public void saveTaskQueue(AgentTaskQueue queue) {
+        if (queue == null || queue.isEmpty()) {
+            store.putDurable(AgentStateStore.KEY_TASK_QUEUE, null);
+            return;
+        }
+        store.putDurable(AgentStateStore.KEY_TASK_QUEUE, queue.toJson().toString());
+    }
+
+    public void loadTaskQueue(AgentTaskQueue queue) {
+        String raw = store.getString(AgentStateStore.KEY_TASK_QUEUE, "");
+        if (queue == null || raw == null || raw.trim().isEmpty()) {
+            return;
+        }
+        try {
+            queue.restore(new JSONArray(raw));
+        } catch (JSONException ignore) {
+        }
     }
 
     public void setRunning(boolean running) {
-        prefs.edit().putBoolean(KEY_RUNNING, running).apply();
+        store.putHot(AgentStateStore.KEY_RUNNING, running);
     }
 
     public boolean isRunning() {
-        return prefs.getBoolean(KEY_RUNNING, false);
+        return store.getBoolean(AgentStateStore.KEY_RUNNING, false);
     }
 
     public void setLastLog(String log) {
-        prefs.edit().putString(KEY_LAST_LOG, log == null ? "" : log).apply();
+        store.putHot(AgentStateStore.KEY_LAST_LOG, log == null ? "" : log);
     }
 
     public String getLastLog() {
-        return prefs.getString(KEY_LAST_LOG, "");
+        return store.getString(AgentStateStore.KEY_LAST_LOG, "");
     }
 
     public void setLastStatus(String status) {
-        prefs.edit().putString(KEY_LAST_STATUS, status == null ? "" : status).apply();
+        store.putHot(AgentStateStore.KEY_LAST_STATUS, status == null ? "" : status);
     }
 
     public String getLastStatus() {
-        return prefs.getString(KEY_LAST_STATUS, "");
+        return store.getString(AgentStateStore.KEY_LAST_STATUS, "");
+    }
+
+    public void saveSendTimings(AdaptiveTimeouts timings) {
+        try {
+            store.putHot(AgentStateStore.KEY_SEND_TIMINGS, timings.toJson().toString());
+        } catch (JSONException ignore) {
+        }
+    }
+
+    public void loadSendTimings(AdaptiveTimeouts timings) {
+        String raw = store.getString(AgentStateStore.KEY_SEND_TIMINGS, "");
+        if (raw == null || raw.trim().isEmpty()) {
+            return;
+        }
+        try {
+            timings.restore(new JSONObject(raw));
+        } catch (JSONException ignore) {
+        }
+    }
+
+    // Forces pending hot state to disk, e.g. before the service goes away.
+    public void flush() {
+        store.flushNow();
+    }
+
+    // Older builds kept runtime state in the prefs XML; move it over once.
+    private void migrateLegacyState() {
+        if (!prefs.contains(KEY_CURRENT_TASK)
+                && !prefs.contains(KEY_TASK_QUEUE)
+                && !prefs.contains(KEY_RUNNING)
+                && !prefs.contains(KEY_LAST_LOG)
+                && !prefs.contains(KEY_LAST_STATUS)) {
+            return;
+        }
+        if (!store.has(AgentStateStore.KEY_CURRENT_TASK)) {
+            String task = prefs.getString(KEY_CURRENT_TASK, "");
+            if (task != null && !task.isEmpty()) {
+                store.putDurable(AgentStateStore.KEY_CURRENT_TASK, task);
+            }
+        }
+        if (!store.has(AgentStateStore.KEY_TASK_QUEUE)) {
+            String queue = prefs.getString(KEY_TASK_QUEUE, "");
+            if (queue != null && !queue.isEmpty()) {
+                store.putDurable(AgentStateStore.KEY_TASK_QUEUE, queue);
+            }
+        }
+        if (!store.has(AgentStateStore.KEY_LAST_STATUS)) {
+            store.putHot(AgentStateStore.KEY_LAST_STATUS, prefs.getString(KEY_LAST_STATUS, ""));
+        }
+        if (!store.has(AgentStateStore.KEY_LAST_LOG)) {
+            store.putHot(AgentStateStore.KEY_LAST_LOG, prefs.getString(KEY_LAST_LOG, ""));
+        }
+        store.flushNow();
+        prefs.edit()
+                .remove(KEY_CURRENT_TASK)
+                .remove(KEY_TASK_QUEUE)
+                .remove(KEY_RUNNING)
+                .remove(KEY_LAST_LOG)
+                .remove(KEY_LAST_STATUS)
+                .apply();
     }
 }
@@ -0,0 +1,188 @@
+package com.videotool.agent;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// In-process replacement for the state broadcast: the agent thread publishes
+// snapshots, observers get the latest one on the main thread, and the
+// notification sink is rate limited.
+public class AgentStatePublisher {
+    public static final long NOTIFICATION_MIN_INTERVAL_MS = 500L;
+    private static final int MAX_PENDING_LOG_LINES = 50;
+
+    public static class Snapshot {
+        public final AgentStateMachine.State state;
+        public final String status;
+        public final String logLine;
+        public final AgentTask task;
+        public final boolean autoMode;
+        public final long version;
+
+        public Snapshot(
+                AgentStateMachine.State state,
+                String status,
+                String logLine,
+                AgentTask task,
+                boolean autoMode,
+                long version
+        ) {
+            this.state = state == null ? AgentStateMachine.State.STOPPED : state;
+            this.status = status == null ? "" : status;
+            this.logLine = logLine == null ? "" : logLine;
+            this.task = task;
+            this.autoMode = autoMode;
+            this.version = version;
+        }
+
+        public boolean isRunning() {
+            return state != AgentStateMachine.State.STOPPED;
+        }
+
+        public boolean isPolling() {
+            return state == AgentStateMachine.State.POLLING;
+        }
+
+        public boolean hasTask() {
+            return task != null;
+        }
+    }
+
+    public interface Listener {
+        void onStateChanged(Snapshot snapshot, List<String> newLogLines);
+    }
+
+    public interface NotificationSink {
+        void render(Snapshot snapshot);
+    }
+
+    private static AgentStatePublisher instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<String> pendingLogLines = new ArrayList<>();
+    private Snapshot latest;
+    private long version = 0;
+    private NotificationSink notificationSink;
+    private boolean deliveryPosted = false;
+    private boolean notificationPosted = false;
+    private long lastNotificationAt = 0L;
+
+    private final Runnable deliverRunnable = new Runnable() {
+        @Override
+        public void run() {
+            deliver();
+        }
+    };
+
+    private final Runnable notifyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            renderNotification();
+        }
+    };
+
+    public static synchronized AgentStatePublisher get() {
+        if (instance == null) {
+            instance = new AgentStatePublisher();
+        }
+        return instance;
+    }
+
+    public synchronized Snapshot getLatest() {
+        return latest;
+    }
+
+    public synchronized void setNotificationSink(NotificationSink sink) {
+        notificationSink = sink;
+        if (sink == null) {
+            mainHandler.removeCallbacks(notifyRunnable);
+            notificationPosted = false;
+        }
+    }
+
+    public void publish(
+            AgentStateMachine.State state,
+            String status,
+            String logLine,
+            AgentTask task,
+            boolean autoMode
+    ) {
+        synchronized (this) {
+            latest = new Snapshot(state, status, logLine, task, autoMode, ++version);
+            if (logLine != null && !logLine.trim().isEmpty()) {
+                if (pendingLogLines.size() >= MAX_PENDING_LOG_LINES) {
+                    pendingLogLines.remove(0);
+                }
+                pendingLogLines.add(logLine);
+            }
+            if (!deliveryPosted && !listeners.isEmpty()) {
+                deliveryPosted = true;
+                mainHandler.post(deliverRunnable);
+            }
+            if (!notificationPosted && notificationSink != null) {
+                notificationPosted = true;
+                long wait = lastNotificationAt + NOTIFICATION_MIN_INTERVAL_MS - SystemClock.uptimeMillis();
+                mainHandler.postDelayed(notifyRunnable, Math.max(0L, wait));
+            }
+        }
+    }
+
+    // Must be called on the main thread; the latest snapshot is replayed right away.
+    public void addListener(Listener listener) {
+        if (listener == null || listeners.contains(listener)) {
+            return;
+        }
+        listeners.add(listener);
+        Snapshot snapshot;
+        synchronized (this) {
+            snapshot = latest;
+            if (listeners.size() == 1) {
+                pendingLogLines.clear();
+            }
+        }
+        if (snapshot != null) {
+            listener.onStateChanged(snapshot, Collections.<String>emptyList());
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void deliver() {
+        Snapshot snapshot;
+        List<String> lines;
+        synchronized (this) {
+            deliveryPosted = false;
+            snapshot = latest;
+            lines = new ArrayList<>(pendingLogLines);
+            pendingLogLines.clear();
+        }
+        if (snapshot == null) {
+            return;
+        }
+        for (Listener listener : listeners) {
+            listener.onStateChanged(snapshot, lines);
+        }
+    }
+
+    private void renderNotification() {
+        Snapshot snapshot;
+        NotificationSink sink;
+        synchronized (this) {
+            notificationPosted = false;
+            lastNotificationAt = SystemClock.uptimeMillis();
+            snapshot = latest;
+            sink = notificationSink;
+        }
+        if (snapshot != null && sink != null) {
+            sink.render(snapshot);
+        }
+    }
+}
@@ -8,8 +8,10 @@ import android.app.Service;
 import android.content.Intent;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import androidx.annotation.Nullable;
@@ -17,7 +19,14 @@ import androidx.core.app.NotificationCompat;
 
 import com.videotool.AgentControlActivity;
 import com.videotool.R;
+import com.videotool.automation.AutomationChannel;
 import com.videotool.automation.CommentAutomationBridge;
+import com.videotool.automation.ScriptStore;
+import com.videotool.automation.SelectorCache;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
 
 public class MobileAgentService extends Service {
     public static final String ACTION_START = "com.videotool.agent.action.START";
@@ -31,29 +40,60 @@ public class MobileAgentService extends Service {
 
     public static final String EXTRA_ERROR_MESSAGE = "error_message";
 
-    public static final String BROADCAST_STATE = "com.videotool.agent.broadcast.STATE";
-    public static final String EXTRA_RUNNING = "running";
-    public static final String EXTRA_POLLING = "polling";
-    public static final String EXTRA_AWAITING = "awaiting_manual";
-    public static final String EXTRA_STATUS = "status_text";
-    public static final String EXTRA_LOG_LINE = "log_line";
-    public static final String EXTRA_TASK_JSON = "task_json";
-
     private static final String CHANNEL_ID = "mobile_agent_channel";
     private static final int NOTIFICATION_ID = 31012;
+    // Watchdog for one auto-send until this device has enough history for the
+    // channel; after that it follows p99 x 1.5 of its own completions. It never
+    // fires while the running script is still inside its own step budget.
     private static final long AUTO_SEND_TIMEOUT_MS = 45000L;
+    private static final long AUTO_SEND_MIN_TIMEOUT_MS = 8000L;
+    private static final long AUTO_SEND_MAX_TIMEOUT_MS = 90000L;
+    // Room for the script's own failure result to reach us after its last step times out.
+    private static final long AUTO_SEND_RESULT_SLACK_MS = 2000L;
+    private static final long PUSH_IDLE_POLL_MS = 5 * 60 * 1000L;
+    // Comment tasks run back to back inside one TikTok session, up to this many,
+    // before the queue's normal priority order gets a turn again.
+    private static final int COMMENT_BATCH_MAX = 10;
+    private static final String COMMENT_WATCHDOG_KEY = "tiktok_comment";
 
     private Handler mainHandler;
+    private HandlerThread agentThread;
+    private Handler agentHandler;
+    private final AgentStateMachine stateMachine = new AgentStateMachine();
+    private final AgentStatePublisher statePublisher = AgentStatePublisher.get();
+    private final AgentMetrics metrics = AgentMetrics.get();
+    private PendingIntent contentPendingIntent;
+    private PendingIntent stopPendingIntent;
+    private String lastNotificationText;
     private AgentPrefs prefs;
     private AgentApiClient apiClient;
     private MobileTaskExecutor executor;
+    private ReportOutbox outbox;
     private AgentConfig config;
+    private AgentTaskQueue taskQueue;
+    private PollScheduler pollScheduler;
 
-    private boolean running = false;
-    private boolean polling = false;
+    private AgentPushChannel pushChannel;
+    private String advertisedPushUrl = "";
+    private boolean refilling = false;
     private boolean autoMode = false;
     private AgentTask currentTask;
     private Runnable autoSendTimeoutRunnable;
+    private int commentBatchCount = 0;
+    // Sequence of the automation command for currentTask; 0 after a restart.
+    private long autoCommandSeq = 0L;
+    private final AutomationChannel.ResultListener automationResults = new AutomationChannel.ResultListener() {
+        @Override
+        public void onResult(final AutomationChannel.Result result) {
+            agentHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onAutomationResult(result);
+                }
+            });
+        }
+    };
+    private final AdaptiveTimeouts sendTimings = new AdaptiveTimeouts(AUTO_SEND_MIN_TIMEOUT_MS, AUTO_SEND_MAX_TIMEOUT_MS);
 
     private final Runnable pollRunnable = new Runnable() {
         @Override
@@ -66,13 +106,109 @@ public class MobileAgentService extends Service {
     public void onCreate() {
         super.onCreate();
         mainHandler = new Handler(Looper.getMainLooper());
+        agentThread = new HandlerThread("mobile-agent");
+        agentThread.start();
+        agentHandler = new Handler(agentThread.getLooper());
+        stateMachine.setListener(new AgentStateMachine.Listener() {
+            @Override
+            public void onTransition(AgentStateMachine.State from, AgentStateMachine.State to, String reason) {
+            }
+
+            @Override
+            public void onRejected(AgentStateMachine.State from, AgentStateMachine.State to, String reason) {
+                prefs.setLastLog("state_rejected_" + from + "_to_" + to + "_" + reason);
+            }
+        });
         prefs = new AgentPrefs(this);
+        prefs.loadSendTimings(sendTimings);
+        AutomationChannel.get().setResultListener(automationResults);
+        statePublisher.setNotificationSink(new AgentStatePublisher.NotificationSink() {
+            @Override
+            public void render(AgentStatePublisher.Snapshot snapshot) {
+                postNotification(snapshot);
+            }
+        });
         apiClient = new AgentApiClient();
+        pushChannel = new AgentPushChannel(apiClient.getHttpClient(), new AgentPushChannel.Listener() {
+            @Override
+            public void onConnected() {
+                agentHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        emitState("push_connected");
+                    }
+                });
+            }
+
+            @Override
+            public void onDisconnected(final String reason) {
+                agentHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        emitState("push_disconnected_" + reason);
+                        if (currentTask == null && stateMachine.is(AgentStateMachine.State.IDLE)) {
+                            scheduleNextPoll(0);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onTaskAvailable() {
+                agentHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (currentTask == null && stateMachine.is(AgentStateMachine.State.IDLE)) {
+                            scheduleNextPoll(0);
+                        } else {
+                            maybeRefillQueue();
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onTaskPushed(final AgentTask task, final long leaseTtlMs) {
+                agentHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        acceptPushedTask(task, leaseTtlMs);
+                    }
+                });
+            }
+        });
         executor = new MobileTaskExecutor(this);
         config = prefs.loadConfig();
+        outbox = new ReportOutbox(new File(getFilesDir(), "agent"), apiClient, new ReportOutbox.Listener() {
+            @Override
+            public void onDelivered(ReportOutbox.Event event, AgentApiClient.ReportResult result) {
+            }
+
+            @Override
+            public void onDropped(final ReportOutbox.Event event, final String errorMessage) {
+                agentHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        emitState("report_dropped_" + event.taskId + "_" + event.event + "_" + errorMessage);
+                    }
+                });
+            }
+
+            @Override
+            public void onRetryScheduled(final int pending, final long delayMs, final String errorMessage) {
+                agentHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        emitState("report_retry_" + pending + "_in_" + delayMs + "ms_" + errorMessage);
+                    }
+                });
+            }
+        });
+        outbox.setConfig(config);
         currentTask = prefs.loadCurrentTask();
-        running = false;
-        polling = false;
+        taskQueue = new AgentTaskQueue(config == null ? AgentConfig.DEFAULT_PREFETCH_SIZE : config.getPrefetchSize());
+        prefs.loadTaskQueue(taskQueue);
+        pollScheduler = createPollScheduler(config);
         autoMode = config != null && config.isAutoMode();
     }
 
@@ -82,7 +218,18 @@ public class MobileAgentService extends Service {
         if (action == null || action.trim().isEmpty()) {
             action = ACTION_START;
         }
+        final String resolvedAction = action;
+        final String failReason = intent == null ? "" : intent.getStringExtra(EXTRA_ERROR_MESSAGE);
+        agentHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                handleAction(resolvedAction, failReason);
+            }
+        });
+        return START_STICKY;
+    }
 
+    private void handleAction(String action, String failReason) {
         switch (action) {
             case ACTION_START:
                 handleStart();
@@ -91,7 +238,7 @@ public class MobileAgentService extends Service {
                 handleStop("agent_stopped");
                 break;
             case ACTION_PULL_ONCE:
-                if (!running) {
+                if (!stateMachine.isRunning()) {
                     handleStart();
                 }
                 pollOnce(true);
@@ -103,7 +250,7 @@ public class MobileAgentService extends Service {
                 markCurrentTask("skip", "", "manual_skip");
                 break;
             case ACTION_MARK_FAIL:
-                String reason = intent == null ? "" : intent.getStringExtra(EXTRA_ERROR_MESSAGE);
+                String reason = failReason;
                 if (TextUtils.isEmpty(reason)) {
                     reason = "manual_fail";
                 }
@@ -119,273 +266,465 @@ public class MobileAgentService extends Service {
                 handleStart();
                 break;
         }
-        return START_STICKY;
     }
 
     private void handleStart() {
         config = prefs.loadConfig();
         if (config == null || !config.isValid()) {
-            running = false;
+            stateMachine.transition(AgentStateMachine.State.STOPPED, "config_invalid");
             prefs.setRunning(false);
             emitState("config_invalid");
-            stopSelf();
+            runOnMain(new Runnable() {
+                @Override
+                public void run() {
+                    stopSelf();
+                }
+            });
             return;
         }
         autoMode = config.isAutoMode();
-        running = true;
+        apiClient.prewarm(config);
+        outbox.setConfig(config);
+        outbox.flushNow();
+        if (taskQueue.isEmpty() && taskQueue.getCapacity() != config.getPrefetchSize()) {
+            taskQueue = new AgentTaskQueue(config.getPrefetchSize());
+        }
+        pollScheduler = createPollScheduler(config);
+        startPushIfConfigured();
+        boolean resumeAutomation = false;
+        if (!stateMachine.isRunning()) {
+            if (currentTask != null && autoMode
+                    && (currentTask.isAutoDmTask() || currentTask.getPlan().isComment())) {
+                stateMachine.transition(AgentStateMachine.State.IDLE, "agent_started");
+                resumeAutomation = true;
+            } else if (currentTask != null) {
+                stateMachine.transition(AgentStateMachine.State.AWAITING, "resumed");
+            } else {
+                stateMachine.transition(AgentStateMachine.State.IDLE, "agent_started");
+            }
+        }
         prefs.setRunning(true);
-        startForegroundCompat("Mobile Agent running");
+        final String foregroundText = "Mobile Agent running";
+        final AgentTask foregroundTask = currentTask;
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                startForegroundCompat(foregroundText, foregroundTask);
+            }
+        });
+        if (resumeAutomation) {
+            resumeAutomationTask();
+            return;
+        }
         if (currentTask != null) {
             emitState("resumed_waiting_task_" + currentTask.getId());
-            refreshNotification();
             return;
         }
         emitState("agent_started");
         scheduleNextPoll(300);
     }
 
+    // The process died while an automation command was out. Its checkpoint only
+    // runs on a bubble tap and no watchdog is armed, so nothing would ever finish
+    // the task: a comment is simply run again (the batch script reopens the
+    // profile first), an auto DM is failed because it may already have gone out.
+    private void resumeAutomationTask() {
+        AutomationChannel.Command stale = AutomationChannel.get().current(this);
+        if (stale != null) {
+            AutomationChannel.get().cancel(this, stale.seq);
+        }
+        AgentTask task = currentTask;
+        if (task.getPlan().isComment()) {
+            stateMachine.transition(AgentStateMachine.State.PREPARING, "resumed_" + task.getId());
+            emitState("resumed_comment_task_" + task.getId());
+            executeCurrentTask();
+            return;
+        }
+        stateMachine.transition(AgentStateMachine.State.PREPARING, "resumed_" + task.getId());
+        stateMachine.transition(AgentStateMachine.State.AUTO_SENDING, "resumed_" + task.getId());
+        emitState("resumed_auto_task_" + task.getId());
+        markCurrentTask("failed", "agent_restarted", "agent_restarted");
+    }
+
     private void handleStop(String logLine) {
-        running = false;
-        polling = false;
+        stateMachine.transition(AgentStateMachine.State.STOPPED, logLine);
+        pushChannel.stop();
+        refilling = false;
+        commentBatchCount = 0;
         prefs.setRunning(false);
+        releaseLeases(taskQueue.drainAll(), "agent_stopped");
+        prefs.saveTaskQueue(taskQueue);
         cancelAutoSendTimeout();
-        mainHandler.removeCallbacksAndMessages(null);
-        refreshNotification();
+        agentHandler.removeCallbacksAndMessages(null);
         emitState(logLine);
-        stopForeground(true);
-        stopSelf();
+        prefs.flush();
+        runOnMain(new Runnable() {
+            @Override
+            public void run() {
+                lastNotificationText = null;
+                stopForeground(true);
+                stopSelf();
+            }
+        });
     }
 
     private void pollOnce(boolean manual) {
-        if (!running || config == null || !config.isValid()) {
+        if (!stateMachine.isRunning() || config == null || !config.isValid()) {
             emitState("agent_not_running");
             return;
         }
         if (currentTask != null) {
             emitState("awaiting_manual_task_" + currentTask.getId());
+            maybeRefillQueue();
+            return;
+        }
+        if (takeNextQueuedTask()) {
             return;
         }
-        if (polling) {
+        if (stateMachine.is(AgentStateMachine.State.POLLING) || refilling) {
             if (manual) {
                 emitState("already_polling");
             }
             return;
         }
 
-        polling = true;
-        refreshNotification();
+        stateMachine.transition(AgentStateMachine.State.POLLING, manual ? "manual_pull" : "polling_queue");
         emitState(manual ? "manual_pull" : "polling_queue");
         AgentApiClient.ApiCallback<AgentApiClient.PullResult> pullCallback = new AgentApiClient.ApiCallback<AgentApiClient.PullResult>() {
             @Override
             public void onSuccess(final AgentApiClient.PullResult result) {
-                mainHandler.post(new Runnable() {
+                agentHandler.post(new Runnable() {
                     @Override
                     public void run() {
-                        polling = false;
-                        if (result == null || result.task == null) {
+                        if (!stateMachine.is(AgentStateMachine.State.POLLING)) {
+                            // Stopped while the request was in flight; hand the leases straight back.
+                            releaseLeases(result == null ? null : result.tasks, "agent_stopped");
+                            return;
+                        }
+                        stateMachine.transition(AgentStateMachine.State.IDLE, "pull_done");
+                        if (result != null && !result.pushUrl.isEmpty()) {
+                            advertisedPushUrl = result.pushUrl;
+                            startPushIfConfigured();
+                        }
+                        if (result != null && !result.selectors.isEmpty()) {
+                            SelectorCache.get(MobileAgentService.this).seed(result.selectors);
+                        }
+                        if (result != null && !result.scripts.isEmpty()) {
+                            ScriptStore.get(MobileAgentService.this).update(result.scripts);
+                        }
+                        if (result == null || result.tasks.isEmpty()) {
                             String reason = result == null ? "" : result.reason;
                             if (!TextUtils.isEmpty(reason)) {
                                 emitState("queue_idle_" + reason);
+                            } else {
+                                emitState(null);
                             }
-                            refreshNotification();
-                            if (running) {
-                                scheduleNextPoll(config.getPollIntervalSec() * 1000L);
-                            }
+                            scheduleNextPoll(idleDelay(pollScheduler.onEmpty(reason, result != null && result.longPolled)));
                             return;
                         }
 
-                        currentTask = result.task;
-                        prefs.saveCurrentTask(currentTask);
-                        emitState("task_pulled_" + currentTask.getId());
-                        refreshNotification();
-                        executeCurrentTask();
+                        releaseLeases(taskQueue.offerAll(result.tasks, result.leaseTtlMs), "queue_full");
+                        if (result.tasks.size() > 1) {
+                            emitState("tasks_leased_" + result.tasks.size());
+                        }
+                        if (!takeNextQueuedTask()) {
+                            emitState(null);
+                            scheduleNextPoll(idleDelay(pollScheduler.onEmpty(result.reason, result.longPolled)));
+                        }
                     }
                 });
             }
 
             @Override
             public void onError(final String errorMessage) {
-                mainHandler.post(new Runnable() {
+                agentHandler.post(new Runnable() {
                     @Override
                     public void run() {
-                        polling = false;
-                        emitState(errorMessage);
-                        refreshNotification();
-                        if (running) {
-                            scheduleNextPoll(Math.max(5000L, config.getPollIntervalSec() * 1000L));
+                        if (!stateMachine.is(AgentStateMachine.State.POLLING)) {
+                            return;
                         }
+                        stateMachine.transition(AgentStateMachine.State.IDLE, "pull_error");
+                        emitState(errorMessage);
+                        scheduleNextPoll(Math.max(pollScheduler.onError(errorMessage), apiClient.retryAfterMs()));
                     }
                 });
             }
         };
-        if (autoMode) {
-            apiClient.pullTaskAuto(config, pullCallback);
+        // Never ask for more than the queue can hold: an overflow would only be released again.
+        pullFromServer(taskQueue.remainingCapacity(), pullCallback);
+    }
+
+    private void pullFromServer(int limit, final AgentApiClient.ApiCallback<AgentApiClient.PullResult> callback) {
+        final long sentAt = TaskTimeline.now();
+        metrics.increment(AgentMetrics.PULLS);
+        final AgentApiClient.ApiCallback<AgentApiClient.PullResult> timed = new AgentApiClient.ApiCallback<AgentApiClient.PullResult>() {
+            @Override
+            public void onSuccess(AgentApiClient.PullResult result) {
+                long rtt = TaskTimeline.now() - sentAt;
+                if (result == null || result.tasks.isEmpty()) {
+                    metrics.increment(AgentMetrics.PULLS_EMPTY);
+                } else {
+                    metrics.add(AgentMetrics.TASKS_LEASED, result.tasks.size());
+                }
+                if (result != null) {
+                    for (AgentTask task : result.tasks) {
+                        task.getTimeline().markPulled(rtt);
+                    }
+                    // An empty long poll measures the server's wait window, not the network.
+                    if (!result.longPolled || !result.tasks.isEmpty()) {
+                        metrics.recordLatency(AgentMetrics.PULL_RTT, rtt);
+                    }
+                }
+                callback.onSuccess(result);
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                metrics.increment(AgentMetrics.PULL_ERRORS);
+                callback.onError(errorMessage);
+            }
+        };
+        if (autoMode && config.getTaskTypes().contains("comment_warmup")) {
+            final int commentLimit = limit;
+            // pull_auto only serves auto DMs; comment warmups come from the regular
+            // queue and fill the gaps, batched inside one TikTok session.
+            apiClient.pullTasksAuto(config, limit, new AgentApiClient.ApiCallback<AgentApiClient.PullResult>() {
+                @Override
+                public void onSuccess(AgentApiClient.PullResult result) {
+                    if (result != null && !result.tasks.isEmpty()) {
+                        timed.onSuccess(result);
+                        return;
+                    }
+                    apiClient.pullCommentTasks(config, commentLimit, timed);
+                }
+
+                @Override
+                public void onError(String errorMessage) {
+                    timed.onError(errorMessage);
+                }
+            });
+        } else if (autoMode) {
+            apiClient.pullTasksAuto(config, limit, timed);
         } else {
-            apiClient.pullTask(config, pullCallback);
+            apiClient.pullTasks(config, limit, timed);
         }
     }
 
-    private void executeCurrentTask() {
-        if (currentTask == null) {
+    private boolean takeNextQueuedTask() {
+        releaseLeases(taskQueue.drainExpired(), "lease_expired");
+        AgentTask next = null;
+        if (commentBatchCount > 0 && commentBatchCount < COMMENT_BATCH_MAX) {
+            next = taskQueue.pollKind(ExecutionPlan.TaskKind.COMMENT_WARMUP);
+        }
+        if (next == null) {
+            endCommentBatch();
+            next = taskQueue.poll();
+        }
+        prefs.saveTaskQueue(taskQueue);
+        if (next == null) {
+            return false;
+        }
+        pollScheduler.onTaskReceived();
+        next.getTimeline().markStarted();
+        currentTask = next;
+        stateMachine.transition(AgentStateMachine.State.PREPARING, "task_pulled_" + next.getId());
+        prefs.saveCurrentTask(currentTask);
+        emitState("task_pulled_" + currentTask.getId());
+        executeCurrentTask();
+        maybeRefillQueue();
+        return true;
+    }
+
+    private void maybeRefillQueue() {
+        if (!stateMachine.isRunning()
+                || stateMachine.is(AgentStateMachine.State.POLLING)
+                || refilling
+                || config == null
+                || !config.isValid()) {
             return;
         }
-        MobileTaskExecutor.ExecutionResult result = executor.prepareTask(currentTask);
-        if (!result.ok) {
-            final AgentTask failedTask = currentTask;
-            reportTask(
-                    failedTask,
-                    "failed",
-                    failedTask.getBestText(),
-                    "prepare_failed",
-                    result.error,
-                    "",
-                    new AgentApiClient.ApiCallback<AgentApiClient.ReportResult>() {
-                        @Override
-                        public void onSuccess(AgentApiClient.ReportResult reportResult) {
-                            mainHandler.post(new Runnable() {
-                                @Override
-                                public void run() {
-                                    emitState("task_failed_" + failedTask.getId() + "_prepare_failed");
-                                    clearCurrentTaskAndContinue();
-                                }
-                            });
+        if (!taskQueue.needsRefill() || taskQueue.remainingCapacity() <= 0) {
+            return;
+        }
+        refilling = true;
+        pullFromServer(taskQueue.remainingCapacity(), new AgentApiClient.ApiCallback<AgentApiClient.PullResult>() {
+            @Override
+            public void onSuccess(final AgentApiClient.PullResult result) {
+                agentHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        refilling = false;
+                        if (result == null || result.tasks.isEmpty()) {
+                            return;
                         }
-
-                        @Override
-                        public void onError(final String errorMessage) {
-                            mainHandler.post(new Runnable() {
-                                @Override
-                                public void run() {
-                                    emitState("task_failed_report_error_" + errorMessage);
-                                    clearCurrentTaskAndContinue();
-                                }
-                            });
+                        if (!stateMachine.isRunning()) {
+                            releaseLeases(result.tasks, "agent_stopped");
+                            return;
+                        }
+                        releaseLeases(taskQueue.offerAll(result.tasks, result.leaseTtlMs), "queue_full");
+                        prefs.saveTaskQueue(taskQueue);
+                        emitState("queue_refilled_" + taskQueue.size());
+                        if (currentTask == null) {
+                            scheduleNextPoll(0);
                         }
                     }
-            );
+                });
+            }
+
+            @Override
+            public void onError(final String errorMessage) {
+                agentHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        refilling = false;
+                    }
+                });
+            }
+        });
+    }
+
+    private void startPushIfConfigured() {
+        String url = AgentPushChannel.resolveUrl(config, advertisedPushUrl);
+        if (!url.isEmpty() && config != null && config.isValid()) {
+            pushChannel.start(config, url, autoMode);
+        }
+    }
+
+    // With a live push channel an idle poll is only a safety sweep.
+    private long idleDelay(long schedulerDelayMs) {
+        if (pushChannel.isConnected()) {
+            return Math.max(schedulerDelayMs, PUSH_IDLE_POLL_MS);
+        }
+        return schedulerDelayMs;
+    }
+
+    private void acceptPushedTask(AgentTask task, long leaseTtlMs) {
+        if (!stateMachine.isRunning()) {
+            pushChannel.ack(task.getId(), false, "agent_stopped");
+            return;
+        }
+        if ((currentTask != null && currentTask.getId() == task.getId()) || taskQueue.contains(task.getId())) {
+            pushChannel.ack(task.getId(), true, "duplicate");
             return;
         }
+        if (!taskQueue.offerAll(Collections.singletonList(task), leaseTtlMs).isEmpty()) {
+            pushChannel.ack(task.getId(), false, "queue_full");
+            return;
+        }
+        pushChannel.ack(task.getId(), true, "");
+        task.getTimeline().markPulled(-1L);
+        metrics.increment(AgentMetrics.TASKS_PUSHED);
+        prefs.saveTaskQueue(taskQueue);
+        emitState("task_pushed_" + task.getId());
+        if (currentTask == null && stateMachine.is(AgentStateMachine.State.IDLE)) {
+            if (!takeNextQueuedTask()) {
+                scheduleNextPoll(0);
+            }
+        }
+    }
 
-        final AgentTask preparedTask = currentTask;
-        if (autoMode && preparedTask.isAutoDmTask()) {
-            reportTask(
-                    preparedTask,
-                    preparedTask.getAutoSendingEvent(),
-                    preparedTask.getBestText(),
-                    "",
-                    "",
-                    "",
-                    new AgentApiClient.ApiCallback<AgentApiClient.ReportResult>() {
-                        @Override
-                        public void onSuccess(AgentApiClient.ReportResult reportResult) {
-                            mainHandler.post(new Runnable() {
-                                @Override
-                                public void run() {
-                                    emitState("task_auto_sending_" + preparedTask.getId());
-                                    dispatchAutoImSend(preparedTask);
-                                }
-                            });
-                        }
+    // "release" puts the task back to pending on the server; it is not a failure
+    // and does not count toward the device's fail streak.
+    private void releaseLeases(List<AgentTask> tasks, String reason) {
+        if (tasks == null || tasks.isEmpty()) {
+            return;
+        }
+        for (AgentTask task : tasks) {
+            reportTask(task, "release", task.getBestText(), reason, reason, "");
+        }
+        emitState("leases_released_" + tasks.size() + "_" + reason);
+    }
 
-                        @Override
-                        public void onError(final String errorMessage) {
-                            mainHandler.post(new Runnable() {
-                                @Override
-                                public void run() {
-                                    emitState("task_auto_sending_report_error_" + errorMessage);
-                                    clearCurrentTaskAndContinue();
-                                }
-                            });
-                        }
-                    }
-            );
+    private void executeCurrentTask() {
+        if (currentTask == null) {
+            return;
+        }
+        MobileTaskExecutor.ExecutionResult result = executor.prepareTask(currentTask);
+        currentTask.getTimeline().markPrepared();
+        if (!result.ok) {
+            AgentTask failedTask = currentTask;
+            failedTask.getTimeline().markFinished();
+            metrics.recordTimeline(failedTask.getTimeline());
+            metrics.increment(AgentMetrics.TASKS_FAILED);
+            metrics.recordFailure("prepare_failed");
+            stateMachine.transition(AgentStateMachine.State.REPORTING, "prepare_failed");
+            reportTask(failedTask, "failed", failedTask.getBestText(), "prepare_failed", result.error, "");
+            emitState("task_failed_" + failedTask.getId() + "_prepare_failed");
+            clearCurrentTaskAndContinue();
             return;
         }
 
-        reportTask(
-                preparedTask,
-                preparedTask.getPreparedEvent(),
-                preparedTask.getBestText(),
-                "",
-                "",
-                "",
-                new AgentApiClient.ApiCallback<AgentApiClient.ReportResult>() {
-                    @Override
-                    public void onSuccess(AgentApiClient.ReportResult reportResult) {
-                        mainHandler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                emitState("task_prepared_" + preparedTask.getId() + "_manual_send_required");
-                                refreshNotification();
-                            }
-                        });
-                    }
+        AgentTask preparedTask = currentTask;
+        ExecutionPlan plan = preparedTask.getPlan();
+        if (autoMode && plan.isAutoDm()) {
+            stateMachine.transition(AgentStateMachine.State.AUTO_SENDING, "task_prepared");
+            reportTask(preparedTask, ExecutionPlan.AUTO_SENDING_EVENT, plan.bestText, "", "", "");
+            emitState("task_auto_sending_" + preparedTask.getId());
+            dispatchAutomation(preparedTask);
+            return;
+        }
+        if (autoMode && plan.isComment()) {
+            // prepareTask just deep-linked the profile into the running TikTok; only
+            // the first task of a batch pays for the app start.
+            stateMachine.transition(AgentStateMachine.State.AUTO_SENDING, "task_prepared");
+            reportTask(preparedTask, plan.preparedEvent, plan.bestText, "", "", "");
+            emitState("task_comment_batch_" + preparedTask.getId() + "_" + (commentBatchCount + 1));
+            dispatchAutomation(preparedTask);
+            return;
+        }
 
-                    @Override
-                    public void onError(final String errorMessage) {
-                        mainHandler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                emitState("prepared_report_error_" + errorMessage);
-                                refreshNotification();
-                            }
-                        });
-                    }
-                }
-        );
+        stateMachine.transition(AgentStateMachine.State.AWAITING, "task_prepared");
+        reportTask(preparedTask, plan.preparedEvent, plan.bestText, "", "", "");
+        emitState("task_prepared_" + preparedTask.getId() + "_manual_send_required");
     }
 
-    private void markCurrentTask(final String event, final String errorCode, final String errorMessage) {
+    private void markCurrentTask(String event, String errorCode, String errorMessage) {
         cancelAutoSendTimeout();
         if (currentTask == null) {
             emitState("no_active_task");
             return;
         }
-        final AgentTask task = currentTask;
-        reportTask(
-                task,
-                event,
-                task.getBestText(),
-                errorCode,
-                errorMessage,
-                "",
-                new AgentApiClient.ApiCallback<AgentApiClient.ReportResult>() {
-                    @Override
-                    public void onSuccess(AgentApiClient.ReportResult reportResult) {
-                        mainHandler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                emitState("task_" + task.getId() + "_reported_" + event);
-                                clearCurrentTaskAndContinue();
-                            }
-                        });
-                    }
-
-                    @Override
-                    public void onError(final String errorMessageValue) {
-                        mainHandler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                emitState("report_error_" + errorMessageValue);
-                                refreshNotification();
-                            }
-                        });
-                    }
-                }
-        );
+        AgentTask task = currentTask;
+        task.getTimeline().markFinished();
+        metrics.recordTimeline(task.getTimeline());
+        if (stateMachine.is(AgentStateMachine.State.AUTO_SENDING) && !"failed".equals(event) && !"skip".equals(event)) {
+            sendTimings.record(watchdogKey(task.getPlan()), task.getTimeline().automationMs());
+            prefs.saveSendTimings(sendTimings);
+        }
+        if ("failed".equals(event)) {
+            metrics.increment(AgentMetrics.TASKS_FAILED);
+            // Automation failures arrive as manual_fail with the step's reason code as the message.
+            metrics.recordFailure("manual_fail".equals(errorCode) && !TextUtils.isEmpty(errorMessage)
+                    ? errorMessage
+                    : errorCode);
+        } else if (!"skip".equals(event)) {
+            metrics.increment(AgentMetrics.TASKS_DONE);
+        }
+        stateMachine.transition(AgentStateMachine.State.REPORTING, event);
+        reportTask(task, event, task.getBestText(), errorCode, errorMessage, "");
+        emitState("task_" + task.getId() + "_reported_" + event);
+        clearCurrentTaskAndContinue();
     }
 
     private void clearCurrentTaskAndContinue() {
         cancelAutoSendTimeout();
+        if (autoCommandSeq != 0L) {
+            // No-op when the command already completed; otherwise it is withdrawn
+            // so the accessibility service cannot act on a task we gave up on.
+            AutomationChannel.get().cancel(this, autoCommandSeq);
+            autoCommandSeq = 0L;
+        }
         currentTask = null;
         prefs.clearCurrentTask();
-        refreshNotification();
-        if (running) {
-            scheduleNextPoll(500);
+        if (stateMachine.isRunning()) {
+            stateMachine.transition(AgentStateMachine.State.IDLE, "task_cleared");
+            emitState(null);
+            long delay = pollScheduler.onTaskCompleted();
+            scheduleNextPoll(taskQueue.isEmpty() ? delay : 0);
         }
     }
 
-    private void dispatchAutoImSend(final AgentTask task) {
+    private void dispatchAutomation(final AgentTask task) {
         if (task == null || currentTask == null || currentTask.getId() != task.getId()) {
             return;
         }
@@ -394,36 +733,100 @@ public class MobileAgentService extends Service {
             markCurrentTask("failed", "accessibility_disabled", "accessibility_disabled");
             return;
         }
-        CommentAutomationBridge.saveImAutoPending(
-                this,
-                task.getId(),
-                config == null ? "" : config.getAdminBase(),
-                task.getBestText(),
-                task.getTargetChannel()
-        );
-        CommentAutomationBridge.triggerAutomation(this);
-        scheduleAutoSendTimeout(task.getId());
+        ExecutionPlan plan = task.getPlan();
+        String adminBase = config == null ? "" : config.getAdminBase();
+        AutomationChannel.Command command;
+        if (plan.isComment()) {
+            commentBatchCount++;
+            command = CommentAutomationBridge.dispatchCommentBatch(
+                    this,
+                    task.getId(),
+                    adminBase,
+                    plan.bestText,
+                    plan.packageName,
+                    profileHandle(task)
+            );
+        } else {
+            command = CommentAutomationBridge.dispatchImAutoSend(
+                    this,
+                    task.getId(),
+                    adminBase,
+                    plan.bestText,
+                    plan.channel.wireName,
+                    plan.packageName
+            );
+        }
+        autoCommandSeq = command.seq;
+        scheduleAutoSendTimeout(task.getId(), sendTimings.timeoutFor(watchdogKey(plan), AUTO_SEND_TIMEOUT_MS));
         emitState("task_auto_dispatch_" + task.getId());
     }
 
-    private void scheduleAutoSendTimeout(final int taskId) {
+    private void endCommentBatch() {
+        if (commentBatchCount > 0) {
+            emitState("comment_batch_done_" + commentBatchCount);
+            commentBatchCount = 0;
+        }
+    }
+
+    // Comment timings are kept apart from TikTok DMs: same app, different flow.
+    private static String watchdogKey(ExecutionPlan plan) {
+        return plan.isComment() ? COMMENT_WATCHDOG_KEY : plan.channel.wireName;
+    }
+
+    // The automation waits for the handle to show up before touching the new profile.
+    private static String profileHandle(AgentTask task) {
+        String handle = task.getTiktokId().trim();
+        return handle.startsWith("@") ? handle.substring(1) : handle;
+    }
+
+    private void onAutomationResult(AutomationChannel.Result result) {
+        if (!CommentAutomationBridge.MODE_IM_AUTO_SEND.equals(result.mode)
+                && !CommentAutomationBridge.MODE_COMMENT_BATCH.equals(result.mode)) {
+            return;
+        }
+        if (currentTask == null
+                || currentTask.getId() != result.taskId
+                || (autoCommandSeq != 0L && autoCommandSeq != result.seq)) {
+            emitState("auto_result_stale_" + result.taskId);
+            return;
+        }
+        autoCommandSeq = 0L;
+        if (result.success) {
+            markCurrentTask(currentTask.getDoneEvent(), "", "");
+        } else {
+            markCurrentTask("failed", "manual_fail", result.reason);
+        }
+    }
+
+    private void scheduleAutoSendTimeout(final int taskId, long timeoutMs) {
         cancelAutoSendTimeout();
+        final long startedAt = SystemClock.uptimeMillis();
         autoSendTimeoutRunnable = new Runnable() {
             @Override
             public void run() {
-                if (!running || currentTask == null || currentTask.getId() != taskId || !currentTask.isAutoDmTask()) {
+                if (!stateMachine.is(AgentStateMachine.State.AUTO_SENDING)
+                        || currentTask == null
+                        || currentTask.getId() != taskId) {
+                    return;
+                }
+                long deadline = AutomationChannel.get().scriptDeadline(autoCommandSeq);
+                if (deadline > 0L && deadline + AUTO_SEND_RESULT_SLACK_MS > SystemClock.uptimeMillis()) {
+                    agentHandler.postAtTime(this, deadline + AUTO_SEND_RESULT_SLACK_MS);
                     return;
                 }
+                sendTimings.recordTimeout(watchdogKey(currentTask.getPlan()), SystemClock.uptimeMillis() - startedAt);
+                prefs.saveSendTimings(sendTimings);
+                metrics.increment(AgentMetrics.AUTO_SEND_TIMEOUTS);
                 emitState("task_auto_timeout_" + taskId);
                 markCurrentTask("failed", "auto_send_timeout", "auto_send_timeout");
             }
         };
-        mainHandler.postDelayed(autoSendTimeoutRunnable, AUTO_SEND_TIMEOUT_MS);
+        agentHandler.postDelayed(autoSendTimeoutRunnable, timeoutMs);
     }
 
     private void cancelAutoSendTimeout() {
         if (autoSendTimeoutRunnable != null) {
-            mainHandler.removeCallbacks(autoSendTimeoutRunnable);
+            agentHandler.removeCallbacks(autoSendTimeoutRunnable);
             autoSendTimeoutRunnable = null;
         }
     }
@@ -442,143 +845,145 @@ public class MobileAgentService extends Service {
     }
 
     private void scheduleNextPoll(long delayMs) {
-        mainHandler.removeCallbacks(pollRunnable);
-        if (!running || currentTask != null) {
+        agentHandler.removeCallbacks(pollRunnable);
+        if (!stateMachine.isRunning() || currentTask != null) {
             return;
         }
-        mainHandler.postDelayed(pollRunnable, Math.max(200L, delayMs));
+        agentHandler.postDelayed(pollRunnable, Math.max(0L, delayMs));
     }
 
+    private static PollScheduler createPollScheduler(AgentConfig config) {
+        if (config != null && !config.isAdaptivePolling()) {
+            return new FixedPollScheduler(config);
+        }
+        return new AdaptivePollScheduler(config);
+    }
+
+    // Runs on the agent thread; the publisher hops to main and rate limits the notification.
     private void emitState(String logLine) {
-        String status = buildStatusText();
+        AgentStateMachine.State state = stateMachine.getState();
+        String status = buildStatusText(state);
+        metrics.setGauge(AgentMetrics.QUEUE_SIZE, taskQueue == null ? 0 : taskQueue.size());
+        metrics.setGauge(AgentMetrics.CIRCUIT_OPEN, apiClient.retryAfterMs() > 0 ? 1 : 0);
         prefs.setLastStatus(status);
         if (logLine != null && !logLine.trim().isEmpty()) {
             prefs.setLastLog(logLine);
         }
-
-        Intent intent = new Intent(BROADCAST_STATE);
-        intent.setPackage(getPackageName());
-        intent.putExtra(EXTRA_RUNNING, running);
-        intent.putExtra(EXTRA_POLLING, polling);
-        intent.putExtra(EXTRA_AWAITING, currentTask != null);
-        intent.putExtra(EXTRA_STATUS, status);
-        intent.putExtra(EXTRA_LOG_LINE, logLine == null ? "" : logLine);
-        intent.putExtra(EXTRA_TASK_JSON, currentTask == null ? "" : currentTask.toJson().toString());
-        sendBroadcast(intent);
-        refreshNotification();
+        statePublisher.publish(state, status, logLine, currentTask, autoMode);
     }
 
-    private String buildStatusText() {
-        if (!running) {
-            return "Stopped";
-        }
-        if (polling) {
-            return autoMode ? "Polling auto queue" : "Polling queue";
+    private String buildStatusText(AgentStateMachine.State state) {
+        switch (state) {
+            case STOPPED:
+                return "Stopped";
+            case POLLING:
+                return autoMode ? "Polling auto queue" : "Polling queue";
+            case PREPARING:
+                return currentTask == null ? "Preparing" : "Preparing: #" + currentTask.getId();
+            case AUTO_SENDING:
+                return currentTask == null ? "Auto sending" : "Auto sending: #" + currentTask.getId();
+            case AWAITING:
+                return currentTask == null ? "Awaiting manual send" : "Awaiting manual send: #" + currentTask.getId();
+            case REPORTING:
+                return currentTask == null ? "Reporting" : "Reporting: #" + currentTask.getId();
+            default:
+                return autoMode ? "Running (Auto)" : "Running";
         }
-        if (currentTask != null) {
-            if (autoMode && currentTask.isAutoDmTask()) {
-                return "Auto sending: #" + currentTask.getId();
-            }
-            return "Awaiting manual send: #" + currentTask.getId();
+    }
+
+    private void runOnMain(Runnable runnable) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            runnable.run();
+        } else {
+            mainHandler.post(runnable);
         }
-        return autoMode ? "Running (Auto)" : "Running";
     }
 
     private void reportTask(
-            final AgentTask task,
-            final String event,
-            final String renderedText,
-            final String errorCode,
-            final String errorMessage,
-            final String screenshotPath,
-            final AgentApiClient.ApiCallback<AgentApiClient.ReportResult> callback
+            AgentTask task,
+            String event,
+            String renderedText,
+            String errorCode,
+            String errorMessage,
+            String screenshotPath
     ) {
         if (task == null) {
-            if (callback != null) {
-                callback.onError("task_null");
-            }
-            return;
-        }
-        if (config == null || !config.isValid()) {
-            if (callback != null) {
-                callback.onError("config_invalid");
-            }
             return;
         }
-        if (autoMode && task.isAutoDmTask()) {
-            apiClient.reportAuto(
-                    config,
-                    task.getId(),
-                    event,
-                    renderedText,
-                    errorCode,
-                    errorMessage,
-                    screenshotPath,
-                    callback
-            );
-            return;
-        }
-        apiClient.report(
-                config,
+        outbox.enqueue(
                 task.getId(),
                 event,
                 renderedText,
                 errorCode,
                 errorMessage,
                 screenshotPath,
-                callback
+                autoMode && task.isAutoDmTask(),
+                task.getTimeline().elapsedMs(),
+                task.getTimeline().toJson().toString()
         );
     }
 
-    private void startForegroundCompat(String text) {
+    private void startForegroundCompat(String text, AgentTask task) {
         createChannelIfNeeded();
-        Notification notification = buildNotification(text);
-        startForeground(NOTIFICATION_ID, notification);
+        String contentText = buildNotificationText(text, task);
+        lastNotificationText = contentText;
+        startForeground(NOTIFICATION_ID, buildNotification(contentText));
     }
 
-    private void refreshNotification() {
-        if (!running) {
+    private void postNotification(AgentStatePublisher.Snapshot snapshot) {
+        if (!snapshot.isRunning() || !stateMachine.isRunning()) {
+            lastNotificationText = null;
+            return;
+        }
+        String contentText = buildNotificationText(snapshot.status, snapshot.task);
+        if (contentText.equals(lastNotificationText)) {
             return;
         }
         NotificationManager manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
         if (manager == null) {
             return;
         }
-        manager.notify(NOTIFICATION_ID, buildNotification(buildStatusText()));
+        lastNotificationText = contentText;
+        manager.notify(NOTIFICATION_ID, buildNotification(contentText));
     }
 
-    private Notification buildNotification(String text) {
-        Intent openIntent = new Intent(this, AgentControlActivity.class);
-        openIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP);
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-                this,
-                100,
-                openIntent,
-                pendingFlags()
-        );
-
-        Intent stopIntent = new Intent(this, MobileAgentService.class);
-        stopIntent.setAction(ACTION_STOP);
-        PendingIntent stopPending = PendingIntent.getService(
-                this,
-                101,
-                stopIntent,
-                pendingFlags()
-        );
+    private static String buildNotificationText(String status, AgentTask task) {
+        if (task == null) {
+            return status;
+        }
+        return status + " | " + task.getDisplayName();
+    }
 
-        String contentText = text;
-        if (currentTask != null) {
-            contentText = contentText + " | " + currentTask.getDisplayName();
+    private Notification buildNotification(String contentText) {
+        if (contentPendingIntent == null) {
+            Intent openIntent = new Intent(this, AgentControlActivity.class);
+            openIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+            contentPendingIntent = PendingIntent.getActivity(
+                    this,
+                    100,
+                    openIntent,
+                    pendingFlags()
+            );
+        }
+        if (stopPendingIntent == null) {
+            Intent stopIntent = new Intent(this, MobileAgentService.class);
+            stopIntent.setAction(ACTION_STOP);
+            stopPendingIntent = PendingIntent.getService(
+                    this,
+                    101,
+                    stopIntent,
+                    pendingFlags()
+            );
         }
 
         return new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setSmallIcon(R.mipmap.ic_launcher)
                 .setContentTitle("TikStar Mobile Agent")
                 .setContentText(contentText)
-                .setContentIntent(pendingIntent)
+                .setContentIntent(contentPendingIntent)
                 .setOngoing(true)
                 .setOnlyAlertOnce(true)
-                .addAction(R.mipmap.ic_launcher, "Stop", stopPending)
+                .addAction(R.mipmap.ic_launcher, "Stop", stopPendingIntent)
                 .build();
     }
 
@@ -619,7 +1024,13 @@ public class MobileAgentService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        AutomationChannel.get().setResultListener(null);
         mainHandler.removeCallbacksAndMessages(null);
-        polling = false;
+        agentHandler.removeCallbacksAndMessages(null);
+        statePublisher.setNotificationSink(null);
+        agentThread.quitSafely();
+        outbox.shutdown();
+        pushChannel.shutdown();
+        prefs.flush();
     }
 }
@@ -5,7 +5,6 @@ import android.content.ClipboardManager;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
-import android.text.TextUtils;
 
 public class MobileTaskExecutor {
     private final Context appContext;
@@ -18,28 +17,27 @@ public class MobileTaskExecutor {
         if (task == null) {
             return ExecutionResult.failed("task_null");
         }
-        String text = task.getBestText();
-        boolean copied = copyToClipboard(text);
-        String targetUrl = task.resolveTargetUrl(text);
-        if (TextUtils.isEmpty(targetUrl)) {
+        ExecutionPlan plan = task.getPlan();
+        boolean copied = copyToClipboard(plan.bestText);
+        if (!plan.hasTarget()) {
             return ExecutionResult.failed("target_url_empty");
         }
-        boolean opened = openTarget(task.getTargetPackageName(), targetUrl);
+        boolean opened = openTarget(plan.packageName, plan.targetUrl);
         if (!opened) {
             return ExecutionResult.failed("open_target_failed");
         }
-        return ExecutionResult.success(copied, targetUrl);
+        return ExecutionResult.success(copied, plan.targetUrl);
     }
 
     public boolean reopenTask(AgentTask task) {
         if (task == null) {
             return false;
         }
-        String targetUrl = task.resolveTargetUrl(task.getBestText());
-        if (TextUtils.isEmpty(targetUrl)) {
+        ExecutionPlan plan = task.getPlan();
+        if (!plan.hasTarget()) {
             return false;
         }
-        return openTarget(task.getTargetPackageName(), targetUrl);
+        return openTarget(plan.packageName, plan.targetUrl);
     }
 
     private boolean copyToClipboard(String text) {
@@ -0,0 +1,207 @@
+package com.videotool.automation;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+// In-process handoff between whoever queues automation work (the agent, the
+// console) and ReachAccessibilityService; all of them live in the app process.
+// One command is pending at a time and every command carries a sequence
+// number, so a result can only complete the command it was started for: a
+// late result for a superseded or cancelled task is dropped here instead of
+// marking whatever task came next. The prefs record in CommentAutomationBridge
+// is only a checkpoint, read back once if the process died with work pending.
+public final class AutomationChannel {
+    public static final class Command {
+        public final long seq;
+        public final CommentAutomationBridge.PendingData data;
+        // Started without a user tap (agent auto-send), also once the service connects.
+        final boolean autoRun;
+        // Uptime by which the running script ends on its own, 0 until it starts.
+        volatile long scriptDeadline = 0L;
+
+        Command(long seq, CommentAutomationBridge.PendingData data, boolean autoRun) {
+            this.seq = seq;
+            this.data = data;
+            this.autoRun = autoRun;
+        }
+    }
+
+    public static final class Result {
+        public final long seq;
+        public final int taskId;
+        public final String mode;
+        public final boolean success;
+        public final String reason;
+
+        Result(Command command, boolean success, String reason) {
+            this.seq = command.seq;
+            this.taskId = command.data.taskId;
+            this.mode = command.data.mode;
+            this.success = success;
+            this.reason = reason == null ? "" : reason;
+        }
+    }
+
+    // Implemented by the accessibility service; called on the main thread.
+    public interface Executor {
+        void onCommand(Command command);
+
+        void onCancel(long seq);
+    }
+
+    // Called on the thread that completed the command (the main thread).
+    public interface ResultListener {
+        void onResult(Result result);
+    }
+
+    private static final AutomationChannel INSTANCE = new AutomationChannel();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private long lastSeq = 0L;
+    private Command pending;
+    private boolean checkpointRead = false;
+    private Executor executor;
+    private ResultListener resultListener;
+
+    private AutomationChannel() {
+    }
+
+    public static AutomationChannel get() {
+        return INSTANCE;
+    }
+
+    // Replaces any pending command. With run set the executor starts right away;
+    // otherwise it waits for trigger() (the floating bubble for comments).
+    public Command submit(Context context, CommentAutomationBridge.PendingData data, boolean run) {
+        Command command;
+        Command superseded;
+        synchronized (this) {
+            superseded = pending;
+            command = new Command(++lastSeq, data, run);
+            pending = command;
+            checkpointRead = true;
+        }
+        CommentAutomationBridge.saveCheckpoint(context, data);
+        if (superseded != null) {
+            dispatchCancel(superseded.seq);
+        }
+        if (run) {
+            dispatch(command);
+        }
+        return command;
+    }
+
+    // Returns false when there is nothing to run.
+    public boolean trigger(Context context) {
+        Command command = current(context);
+        if (command == null) {
+            return false;
+        }
+        dispatch(command);
+        return true;
+    }
+
+    public synchronized Command current(Context context) {
+        if (pending == null && !checkpointRead) {
+            checkpointRead = true;
+            CommentAutomationBridge.PendingData data = CommentAutomationBridge.loadCheckpoint(context);
+            if (data != null) {
+                pending = new Command(++lastSeq, data, false);
+            }
+        }
+        return pending;
+    }
+
+    // Returns false when the command is no longer the pending one; its result is dropped.
+    public boolean complete(Context context, Command command, boolean success, String reason) {
+        ResultListener listener;
+        synchronized (this) {
+            if (command == null || pending == null || pending.seq != command.seq) {
+                return false;
+            }
+            pending = null;
+            listener = resultListener;
+        }
+        CommentAutomationBridge.clearCheckpoint(context);
+        if (listener != null) {
+            listener.onResult(new Result(command, success, reason));
+        }
+        return true;
+    }
+
+    // Called by the executor once the script is compiled, with its total step budget.
+    public void started(Command command, long budgetMs) {
+        if (command != null) {
+            command.scriptDeadline = SystemClock.uptimeMillis() + Math.max(0L, budgetMs);
+        }
+    }
+
+    // 0 when the command is no longer pending or its script has not started.
+    public synchronized long scriptDeadline(long seq) {
+        return pending != null && pending.seq == seq ? pending.scriptDeadline : 0L;
+    }
+
+    // Withdraws the command if it is still pending, e.g. after the agent's watchdog fired.
+    public void cancel(Context context, long seq) {
+        synchronized (this) {
+            if (pending == null || pending.seq != seq) {
+                return;
+            }
+            pending = null;
+        }
+        CommentAutomationBridge.clearCheckpoint(context);
+        dispatchCancel(seq);
+    }
+
+    public void setExecutor(Executor executor) {
+        Command waiting;
+        synchronized (this) {
+            this.executor = executor;
+            waiting = executor != null && pending != null && pending.autoRun ? pending : null;
+        }
+        // An auto-send queued while the accessibility service was (re)connecting.
+        if (waiting != null) {
+            dispatch(waiting);
+        }
+    }
+
+    public synchronized void setResultListener(ResultListener listener) {
+        this.resultListener = listener;
+    }
+
+    private void dispatch(final Command command) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Executor target;
+                synchronized (AutomationChannel.this) {
+                    // Superseded between submit and now.
+                    if (pending == null || pending.seq != command.seq) {
+                        return;
+                    }
+                    target = executor;
+                }
+                if (target != null) {
+                    target.onCommand(command);
+                }
+            }
+        });
+    }
+
+    private void dispatchCancel(final long seq) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Executor target;
+                synchronized (AutomationChannel.this) {
+                    target = executor;
+                }
+                if (target != null) {
+                    target.onCancel(seq);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,189 @@
+package com.videotool.automation;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Parsed form of res/raw/automation_scripts.json (or its server update). A
+// script is an ordered list of steps for one automation mode and a set of
+// target packages ("*" for any); ScriptInterpreter turns it into StepEngine steps.
+public class AutomationScript {
+    public static final String OP_FIND = "find";
+    public static final String OP_WAIT_FOR = "wait_for";
+    public static final String OP_SET_TEXT = "set_text";
+    public static final String OP_CLICK = "click";
+    public static final String OP_VERIFY = "verify";
+    // Passes once the input is cleared or a new bubble holding the sent text shows up.
+    public static final String OP_CONFIRM_SENT = "confirm_sent";
+
+    public static final String ON_TIMEOUT_FAIL = "fail";
+    public static final String ON_TIMEOUT_CONTINUE = "continue";
+    public static final String ON_TIMEOUT_CLIPBOARD = "clipboard";
+
+    public static final String EXPECT_PRESENT = "present";
+    public static final String EXPECT_GONE = "gone";
+
+    private static final String ANY_PACKAGE = "*";
+    private static final long DEFAULT_TIMEOUT_MS = 3000L;
+    private static final long MAX_TIMEOUT_MS = 60000L;
+
+    public static class StepSpec {
+        public final String op;
+        public final String name;
+        public final String role;
+        public final HintMatcher hints;
+        public final HintMatcher focusHints;
+        public final boolean targetWindow;
+        // Match the command's expect text (e.g. the profile handle) instead of fixed hints.
+        public final boolean expectTarget;
+        public final boolean afterUiChange;
+        public final long timeoutMs;
+        // Retry policy: recheck this often even without window events, and give up
+        // after maxAttempts attempts (0 = only the timeout ends the step).
+        public final long retryMs;
+        public final int maxAttempts;
+        public final long guessAfterMs;
+        public final String expect;
+        public final String text;
+        public final String failReason;
+        public final String rootMissingReason;
+        public final String wrongWindowReason;
+        public final String onTimeout;
+
+        StepSpec(JSONObject obj, int index) throws JSONException {
+            op = obj.getString("op");
+            if (!OP_FIND.equals(op) && !OP_WAIT_FOR.equals(op) && !OP_SET_TEXT.equals(op)
+                    && !OP_CLICK.equals(op) && !OP_VERIFY.equals(op) && !OP_CONFIRM_SENT.equals(op)) {
+                throw new JSONException("unknown op " + op);
+            }
+            name = obj.optString("name", op + "_" + index);
+            role = obj.optString("role", "");
+            hints = parseHints(obj.optJSONArray("hints"));
+            focusHints = parseHints(obj.optJSONArray("focus_hints"));
+            targetWindow = obj.optBoolean("target_window", false);
+            expectTarget = obj.optBoolean("expect_target", false);
+            afterUiChange = obj.optBoolean("after_ui_change", false);
+            timeoutMs = clamp(obj.optLong("timeout_ms", DEFAULT_TIMEOUT_MS), 100L, MAX_TIMEOUT_MS);
+            retryMs = clamp(obj.optLong("retry_ms", 0L), 0L, MAX_TIMEOUT_MS);
+            maxAttempts = Math.max(0, obj.optInt("max_attempts", 0));
+            guessAfterMs = clamp(obj.optLong("guess_after_ms", 0L), 0L, MAX_TIMEOUT_MS);
+            expect = obj.optString("expect", EXPECT_PRESENT);
+            text = obj.optString("text", "${text}");
+            failReason = obj.optString("fail", name + "_not_found");
+            rootMissingReason = obj.optString("root_missing", failReason);
+            wrongWindowReason = obj.optString("wrong_window", failReason);
+            onTimeout = obj.optString("on_timeout", ON_TIMEOUT_FAIL);
+        }
+    }
+
+    public final int version;
+    public final String mode;
+    public final List<String> packages;
+    public final List<StepSpec> steps;
+    public final boolean confirmsSend;
+
+    private AutomationScript(int version, JSONObject obj) throws JSONException {
+        this.version = version;
+        this.mode = obj.getString("mode");
+        List<String> pkgs = new ArrayList<>();
+        JSONArray rawPackages = obj.optJSONArray("packages");
+        for (int i = 0; rawPackages != null && i < rawPackages.length(); i++) {
+            pkgs.add(rawPackages.getString(i));
+        }
+        if (pkgs.isEmpty()) {
+            pkgs.add(ANY_PACKAGE);
+        }
+        this.packages = Collections.unmodifiableList(pkgs);
+        List<StepSpec> list = new ArrayList<>();
+        JSONArray rawSteps = obj.getJSONArray("steps");
+        for (int i = 0; i < rawSteps.length(); i++) {
+            list.add(new StepSpec(rawSteps.getJSONObject(i), i));
+        }
+        if (list.isEmpty()) {
+            throw new JSONException("script without steps: " + mode);
+        }
+        this.steps = Collections.unmodifiableList(list);
+        boolean confirm = false;
+        for (StepSpec step : list) {
+            confirm |= OP_CONFIRM_SENT.equals(step.op);
+        }
+        this.confirmsSend = confirm;
+    }
+
+    public boolean appliesTo(String mode, String targetPackage) {
+        if (!this.mode.equalsIgnoreCase(mode)) {
+            return false;
+        }
+        return packages.contains(ANY_PACKAGE) || packages.contains(targetPackage == null ? "" : targetPackage);
+    }
+
+    // Only explicit entries count; "*" scripts do not vouch for a particular app.
+    public boolean listsPackage(String pkg) {
+        return pkg != null && !ANY_PACKAGE.equals(pkg) && packages.contains(pkg);
+    }
+
+    // Exact package matches are listed first so they win over "*" fallbacks.
+    // Any malformed content surfaces as a JSONException, never a runtime crash.
+    public static List<AutomationScript> parseAll(String json) throws JSONException {
+        try {
+            return parseScripts(json);
+        } catch (JSONException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new JSONException("invalid scripts: " + e.getMessage());
+        }
+    }
+
+    private static List<AutomationScript> parseScripts(String json) throws JSONException {
+        JSONObject root = new JSONObject(json);
+        int version = root.optInt("version", 0);
+        JSONArray rawScripts = root.getJSONArray("scripts");
+        List<AutomationScript> specific = new ArrayList<>();
+        List<AutomationScript> fallback = new ArrayList<>();
+        for (int i = 0; i < rawScripts.length(); i++) {
+            AutomationScript script = new AutomationScript(version, rawScripts.getJSONObject(i));
+            if (script.packages.contains(ANY_PACKAGE)) {
+                fallback.add(script);
+            } else {
+                specific.add(script);
+            }
+        }
+        specific.addAll(fallback);
+        return specific;
+    }
+
+    public static int versionOf(String json) {
+        try {
+            return new JSONObject(json).optInt("version", 0);
+        } catch (JSONException e) {
+            return 0;
+        }
+    }
+
+    // Hints are plain strings or {"text": "...", "weight": 0.8}.
+    private static HintMatcher parseHints(JSONArray raw) throws JSONException {
+        HintMatcher.Builder builder = new HintMatcher.Builder();
+        for (int i = 0; raw != null && i < raw.length(); i++) {
+            Object item = raw.get(i);
+            try {
+                if (item instanceof JSONObject) {
+                    JSONObject obj = (JSONObject) item;
+                    builder.add(obj.getString("text"), obj.optDouble("weight", 1.0d));
+                } else {
+                    builder.add(String.valueOf(item), 1.0d);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new JSONException("bad hints: " + e.getMessage());
+            }
+        }
+        return builder.build();
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -3,6 +3,7 @@ package com.videotool.automation;
 import android.accessibilityservice.AccessibilityServiceInfo;
 import android.content.ComponentName;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.Intent;
 import android.provider.Settings;
 import android.text.TextUtils;
@@ -18,10 +19,13 @@ public class CommentAutomationBridge
     public static final String KEY_TEXT = "text";
     public static final String KEY_MODE = "mode";
     public static final String KEY_CHANNEL = "channel";
+    public static final String KEY_TARGET_PACKAGE = "target_package";
+    public static final String KEY_EXPECT = "expect";
 
-    public static final String ACTION_TRIGGER_AUTOMATION = "com.videotool.action.TRIGGER_AUTOMATION";
     public static final String MODE_COMMENT = "comment";
     public static final String MODE_IM_AUTO_SEND = "im_auto_send";
+    // Agent-driven comment on a profile already opened by deep link in a running TikTok.
+    public static final String MODE_COMMENT_BATCH = "comment_batch";
 
     public static class PendingData
     {
@@ -30,72 +34,129 @@ public class CommentAutomationBridge
         public final String text;
         public final String mode;
         public final String channel;
+        public final String targetPackage;
+        // Text that shows the target page is on screen (the profile handle), if any.
+        public final String expect;
 
         public PendingData(int taskId, String adminBase, String text, String mode, String channel)
+        {
+            this(taskId, adminBase, text, mode, channel, "");
+        }
+
+        public PendingData(
+                int taskId,
+                String adminBase,
+                String text,
+                String mode,
+                String channel,
+                String targetPackage
+        )
+        {
+            this(taskId, adminBase, text, mode, channel, targetPackage, "");
+        }
+
+        public PendingData(
+                int taskId,
+                String adminBase,
+                String text,
+                String mode,
+                String channel,
+                String targetPackage,
+                String expect
+        )
         {
             this.taskId = taskId;
             this.adminBase = adminBase == null ? "" : adminBase;
             this.text = text == null ? "" : text;
             this.mode = mode == null ? MODE_COMMENT : mode;
             this.channel = channel == null ? "" : channel;
+            this.targetPackage = targetPackage == null ? "" : targetPackage;
+            this.expect = expect == null ? "" : expect;
         }
     }
 
-    public static void savePending(Context context, int taskId, String adminBase, String text)
+    // Comment prep waits for the floating bubble tap before it runs.
+    public static AutomationChannel.Command savePending(Context context, int taskId, String adminBase, String text)
     {
-        savePendingInternal(context, taskId, adminBase, text, MODE_COMMENT, "");
+        return AutomationChannel.get().submit(
+                context,
+                new PendingData(taskId, adminBase, text, MODE_COMMENT, "", ""),
+                false
+        );
     }
 
-    public static void saveImAutoPending(Context context, int taskId, String adminBase, String text, String channel)
+    public static AutomationChannel.Command dispatchImAutoSend(
+            Context context,
+            int taskId,
+            String adminBase,
+            String text,
+            String channel,
+            String targetPackage
+    )
     {
-        savePendingInternal(context, taskId, adminBase, text, MODE_IM_AUTO_SEND, channel);
+        return AutomationChannel.get().submit(
+                context,
+                new PendingData(taskId, adminBase, text, MODE_IM_AUTO_SEND, channel, targetPackage),
+                true
+        );
     }
 
-    private static void savePendingInternal(
+    public static AutomationChannel.Command dispatchCommentBatch(
             Context context,
             int taskId,
             String adminBase,
             String text,
-            String mode,
-            String channel
+            String targetPackage,
+            String expect
     )
     {
-        if (context == null) {
+        return AutomationChannel.get().submit(
+                context,
+                new PendingData(taskId, adminBase, text, MODE_COMMENT_BATCH, "", targetPackage, expect),
+                true
+        );
+    }
+
+    // Crash-recovery copy of the pending command; the live handoff is AutomationChannel.
+    static void saveCheckpoint(Context context, PendingData data)
+    {
+        if (context == null || data == null) {
             return;
         }
         context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
                 .edit()
-                .putInt(KEY_TASK_ID, Math.max(0, taskId))
-                .putString(KEY_ADMIN_BASE, adminBase == null ? "" : adminBase)
-                .putString(KEY_TEXT, text == null ? "" : text)
-                .putString(KEY_MODE, mode == null ? MODE_COMMENT : mode)
-                .putString(KEY_CHANNEL, channel == null ? "" : channel)
+                .putInt(KEY_TASK_ID, Math.max(0, data.taskId))
+                .putString(KEY_ADMIN_BASE, data.adminBase)
+                .putString(KEY_TEXT, data.text)
+                .putString(KEY_MODE, data.mode)
+                .putString(KEY_CHANNEL, data.channel)
+                .putString(KEY_TARGET_PACKAGE, data.targetPackage)
+                .putString(KEY_EXPECT, data.expect)
                 .apply();
     }
 
-    public static PendingData loadPending(Context context)
+    static PendingData loadCheckpoint(Context context)
     {
         if (context == null) {
             return null;
         }
-        int taskId = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE).getInt(KEY_TASK_ID, 0);
-        String adminBase = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE).getString(KEY_ADMIN_BASE, "");
-        String text = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE).getString(KEY_TEXT, "");
-        String mode = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE).getString(KEY_MODE, MODE_COMMENT);
-        String channel = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE).getString(KEY_CHANNEL, "");
+        SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        int taskId = prefs.getInt(KEY_TASK_ID, 0);
         if (taskId <= 0) {
             return null;
         }
         return new PendingData(
                 taskId,
-                adminBase == null ? "" : adminBase,
-                text == null ? "" : text,
-                mode == null ? MODE_COMMENT : mode,
-                channel == null ? "" : channel
+                prefs.getString(KEY_ADMIN_BASE, ""),
+                prefs.getString(KEY_TEXT, ""),
+                prefs.getString(KEY_MODE, MODE_COMMENT),
+                prefs.getString(KEY_CHANNEL, ""),
+                prefs.getString(KEY_TARGET_PACKAGE, ""),
+                prefs.getString(KEY_EXPECT, "")
         );
     }
 
-    public static void clearPending(Context context)
+    static void clearCheckpoint(Context context)
     {
         if (context == null) {
             return;
@@ -107,6 +168,8 @@ public class CommentAutomationBridge
                 .remove(KEY_TEXT)
                 .remove(KEY_MODE)
                 .remove(KEY_CHANNEL)
+                .remove(KEY_TARGET_PACKAGE)
+                .remove(KEY_EXPECT)
                 .apply();
     }
 
@@ -128,14 +191,9 @@ public class CommentAutomationBridge
         context.stopService(intent);
     }
 
-    public static void triggerAutomation(Context context)
+    public static boolean triggerAutomation(Context context)
     {
-        if (context == null) {
-            return;
-        }
-        Intent intent = new Intent(ACTION_TRIGGER_AUTOMATION);
-        intent.setPackage(context.getPackageName());
-        context.sendBroadcast(intent);
+        return context != null && AutomationChannel.get().trigger(context);
     }
 
     public static boolean isAccessibilityEnabled(Context context)
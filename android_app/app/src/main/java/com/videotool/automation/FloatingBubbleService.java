@@ -12,6 +12,7 @@ import android.view.View;
 import android.view.WindowManager;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
+import android.widget.Toast;
 
 import androidx.annotation.Nullable;
 
@@ -102,8 +103,8 @@ public class FloatingBubbleService extends Service
                     windowManager.updateViewLayout(bubbleView, layoutParams);
                     return true;
                 case MotionEvent.ACTION_UP:
-                    if (!moved) {
-                        CommentAutomationBridge.triggerAutomation(this);
+                    if (!moved && !CommentAutomationBridge.triggerAutomation(this)) {
+                        Toast.makeText(this, getString(R.string.auto_no_pending_task), Toast.LENGTH_SHORT).show();
                     }
                     return true;
                 default:
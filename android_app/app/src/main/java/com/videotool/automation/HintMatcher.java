@@ -0,0 +1,233 @@
+package com.videotool.automation;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// A fixed set of UI hints compiled once into an Aho-Corasick automaton, so a
+// node label is scanned in one pass however many hints there are. Hints and
+// labels go through the same normalize(): case-folded, accents stripped and
+// đ folded to d, which lets "gui" match "Gửi" and "binh luan" match "Bình luận".
+public final class HintMatcher {
+    // Labels are short; a bitmask of matched hints keeps scoring allocation-free.
+    private static final int MAX_HINTS = 64;
+
+    private final String[] hints;
+    private final double[] weights;
+    // State machine flattened into arrays: per state, sorted edge chars and targets.
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] fail;
+    private final long[] output;
+
+    private HintMatcher(String[] hints, double[] weights, char[][] edgeChars, int[][] edgeTargets, int[] fail, long[] output) {
+        this.hints = hints;
+        this.weights = weights;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.output = output;
+    }
+
+    public static HintMatcher of(String... hints) {
+        Builder builder = new Builder();
+        for (String hint : hints) {
+            builder.add(hint, 1.0d);
+        }
+        return builder.build();
+    }
+
+    public static final class Builder {
+        private final List<String> hints = new ArrayList<>();
+        private final List<Double> weights = new ArrayList<>();
+
+        public Builder add(String hint, double weight) {
+            String key = normalize(hint);
+            if (key.isEmpty() || hints.contains(key)) {
+                return this;
+            }
+            if (hints.size() >= MAX_HINTS) {
+                throw new IllegalArgumentException("too many hints");
+            }
+            hints.add(key);
+            weights.add(weight);
+            return this;
+        }
+
+        public HintMatcher build() {
+            List<Map<Character, Integer>> edges = new ArrayList<>();
+            List<Long> out = new ArrayList<>();
+            edges.add(new HashMap<Character, Integer>());
+            out.add(0L);
+            for (int h = 0; h < hints.size(); h++) {
+                String hint = hints.get(h);
+                int state = 0;
+                for (int i = 0; i < hint.length(); i++) {
+                    Integer next = edges.get(state).get(hint.charAt(i));
+                    if (next == null) {
+                        next = edges.size();
+                        edges.add(new HashMap<Character, Integer>());
+                        out.add(0L);
+                        edges.get(state).put(hint.charAt(i), next);
+                    }
+                    state = next;
+                }
+                out.set(state, out.get(state) | (1L << h));
+            }
+
+            int size = edges.size();
+            char[][] edgeChars = new char[size][];
+            int[][] edgeTargets = new int[size][];
+            for (int state = 0; state < size; state++) {
+                Map<Character, Integer> map = edges.get(state);
+                char[] chars = new char[map.size()];
+                int n = 0;
+                for (Character c : map.keySet()) {
+                    chars[n++] = c;
+                }
+                Arrays.sort(chars);
+                int[] targets = new int[chars.length];
+                for (int i = 0; i < chars.length; i++) {
+                    targets[i] = map.get(chars[i]);
+                }
+                edgeChars[state] = chars;
+                edgeTargets[state] = targets;
+            }
+
+            // Breadth-first failure links; outputs are merged along them so a
+            // state reports every hint that ends at this position.
+            int[] fail = new int[size];
+            long[] output = new long[size];
+            for (int state = 0; state < size; state++) {
+                output[state] = out.get(state);
+            }
+            int[] queue = new int[size];
+            int head = 0;
+            int tail = 0;
+            for (int target : edgeTargets[0]) {
+                fail[target] = 0;
+                queue[tail++] = target;
+            }
+            while (head < tail) {
+                int state = queue[head++];
+                for (int i = 0; i < edgeChars[state].length; i++) {
+                    char c = edgeChars[state][i];
+                    int target = edgeTargets[state][i];
+                    int f = fail[state];
+                    int next = step(edgeChars, edgeTargets, f, c);
+                    while (next < 0 && f != 0) {
+                        f = fail[f];
+                        next = step(edgeChars, edgeTargets, f, c);
+                    }
+                    fail[target] = next < 0 ? 0 : next;
+                    output[target] |= output[fail[target]];
+                    queue[tail++] = target;
+                }
+            }
+
+            double[] weightArray = new double[weights.size()];
+            for (int i = 0; i < weightArray.length; i++) {
+                weightArray[i] = weights.get(i);
+            }
+            return new HintMatcher(hints.toArray(new String[0]), weightArray, edgeChars, edgeTargets, fail, output);
+        }
+    }
+
+    public boolean isEmpty() {
+        return hints.length == 0;
+    }
+
+    // text must already be normalize()d; NodeSnapshot does that once per node.
+    public boolean matches(String text) {
+        return scan(text, true) != 0L;
+    }
+
+    // Sum of the weights of every distinct hint found in text.
+    public double score(String text) {
+        return sum(scan(text, false));
+    }
+
+    // Same, with a hint counted once even when both labels contain it.
+    public double score(String first, String second) {
+        return sum(scan(first, false) | scan(second, false));
+    }
+
+    private double sum(long found) {
+        double total = 0d;
+        for (int h = 0; found != 0L && h < hints.length; h++) {
+            if ((found & (1L << h)) != 0L) {
+                total += weights[h];
+            }
+        }
+        return total;
+    }
+
+    private long scan(String text, boolean firstOnly) {
+        if (text == null || text.isEmpty() || hints.length == 0) {
+            return 0L;
+        }
+        long found = 0L;
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next = step(edgeChars, edgeTargets, state, c);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = step(edgeChars, edgeTargets, state, c);
+            }
+            state = next < 0 ? 0 : next;
+            if (output[state] != 0L) {
+                found |= output[state];
+                if (firstOnly) {
+                    return found;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static int step(char[][] edgeChars, int[][] edgeTargets, int state, char c) {
+        int index = Arrays.binarySearch(edgeChars[state], c);
+        return index < 0 ? -1 : edgeTargets[state][index];
+    }
+
+    // Lower-cases, strips combining marks, folds đ to d and collapses whitespace.
+    public static String normalize(CharSequence value) {
+        if (value == null || value.length() == 0) {
+            return "";
+        }
+        String text = value.toString().toLowerCase(Locale.ROOT);
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; i++) {
+            ascii = text.charAt(i) < 0x80;
+        }
+        if (!ascii) {
+            text = Normalizer.normalize(text, Normalizer.Form.NFD);
+        }
+        StringBuilder out = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (c == 'đ') {
+                c = 'd';
+            }
+            if (Character.isWhitespace(c)) {
+                space = out.length() > 0;
+                continue;
+            }
+            if (space) {
+                out.append(' ');
+                space = false;
+            }
+            out.append(c);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,316 @@
+package com.videotool.automation;
+
+import android.graphics.Rect;
+import android.os.Build;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// One pass over the active window's node tree. Every getChild() is a binder
+// call, so the walk is resumable: first(), firstEditText() and entryAt() fetch
+// nodes only until they have their answer, and queries that need the whole
+// tree (entries(), clickables(), countViewId()) finish it. Each node is read
+// once, with what the matchers need, and later queries reuse the copy.
+// release() recycles every node the walk obtained, including the root;
+// entries must not be used afterwards.
+public class NodeSnapshot {
+    // TikTok comment sheets can hold thousands of nodes; the inputs and send
+    // buttons we look for are never that deep into the list.
+    private static final int MAX_NODES = 3000;
+    private static final int MAX_CLICK_PARENT_HOPS = 6;
+
+    public static final class Entry {
+        public final AccessibilityNodeInfo node;
+        public final int index;
+        public final int parent;
+        // Position among the parent's children, for structural paths.
+        public final int childIndex;
+        public final String className;
+        // Normalized once here (HintMatcher.normalize) so matchers never touch the node again.
+        public final String text;
+        public final String desc;
+        public final String hint;
+        public final String viewId;
+        public final boolean clickable;
+        public final boolean editable;
+        private Rect bounds;
+
+        Entry(AccessibilityNodeInfo node, int index, int parent, int childIndex) {
+            this.node = node;
+            this.index = index;
+            this.parent = parent;
+            this.childIndex = childIndex;
+            this.className = normalize(node.getClassName());
+            this.text = normalize(node.getText());
+            this.desc = normalize(node.getContentDescription());
+            this.hint = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? normalize(node.getHintText()) : "";
+            this.viewId = node.getViewIdResourceName() == null ? "" : node.getViewIdResourceName();
+            this.clickable = node.isClickable();
+            this.editable = node.isEditable();
+        }
+
+        public boolean isEditText() {
+            return className.contains("edittext");
+        }
+
+        public Rect bounds() {
+            if (bounds == null) {
+                bounds = new Rect();
+                node.getBoundsInScreen(bounds);
+            }
+            return bounds;
+        }
+    }
+
+    public interface Filter {
+        boolean accept(Entry entry);
+    }
+
+    private final AccessibilityNodeInfo root;
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<Entry> editTexts = new ArrayList<>();
+    private final List<Entry> editables = new ArrayList<>();
+    private final List<Entry> clickables = new ArrayList<>();
+    private final List<AccessibilityNodeInfo> adopted = new ArrayList<>();
+    // Walk state: entries whose children are still being fetched, innermost last,
+    // with the next child index to fetch for each.
+    private final List<Entry> open = new ArrayList<>();
+    private final List<int[]> nextChild = new ArrayList<>();
+    private boolean started = false;
+    private boolean released = false;
+
+    private NodeSnapshot(AccessibilityNodeInfo root) {
+        this.root = root;
+    }
+
+    public static NodeSnapshot capture(AccessibilityNodeInfo root) {
+        return new NodeSnapshot(root);
+    }
+
+    public AccessibilityNodeInfo root() {
+        return root;
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public int size() {
+        walkAll();
+        return entries.size();
+    }
+
+    // Entries in tree pre-order, the order the old recursive collector produced.
+    public List<Entry> entries() {
+        walkAll();
+        return Collections.unmodifiableList(entries);
+    }
+
+    public List<Entry> editTexts() {
+        walkAll();
+        return Collections.unmodifiableList(editTexts);
+    }
+
+    public List<Entry> editables() {
+        walkAll();
+        return Collections.unmodifiableList(editables);
+    }
+
+    public List<Entry> clickables() {
+        walkAll();
+        return Collections.unmodifiableList(clickables);
+    }
+
+    // The pre-order entry at index, walking only as far as needed; null past the end.
+    public Entry entryAt(int index) {
+        while (index >= entries.size() && advance()) {
+            // Fetch one more node.
+        }
+        return index < entries.size() ? entries.get(index) : null;
+    }
+
+    // The first edit text in tree order; stops walking at the first one.
+    public Entry firstEditText() {
+        while (editTexts.isEmpty() && advance()) {
+            // Fetch one more node.
+        }
+        return editTexts.isEmpty() ? null : editTexts.get(0);
+    }
+
+    public Entry parentOf(Entry entry) {
+        return entry == null || entry.parent < 0 ? null : entries.get(entry.parent);
+    }
+
+    // Stops walking at the first match.
+    public Entry first(Filter filter) {
+        Entry entry;
+        for (int i = 0; (entry = entryAt(i)) != null; i++) {
+            if (filter.accept(entry)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    public static Entry first(List<Entry> candidates, Filter filter) {
+        for (Entry entry : candidates) {
+            if (filter.accept(entry)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    // Child indexes from the root down to the entry, e.g. "0/2/1".
+    public String pathOf(Entry entry) {
+        StringBuilder out = new StringBuilder();
+        Entry current = entry;
+        while (current != null && current.parent >= 0) {
+            out.insert(0, out.length() == 0 ? String.valueOf(current.childIndex) : current.childIndex + "/");
+            current = parentOf(current);
+        }
+        return out.toString();
+    }
+
+    public int countViewId(String viewId) {
+        walkAll();
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.viewId.equals(viewId)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // The entry itself when clickable, otherwise (if allowed) its nearest
+    // clickable ancestor from the snapshot, without a getParent() round trip.
+    public Entry clickTarget(Entry entry, boolean allowParent) {
+        if (entry == null || entry.clickable) {
+            return entry;
+        }
+        if (!allowParent) {
+            return null;
+        }
+        Entry parent = parentOf(entry);
+        int guard = 0;
+        while (parent != null && guard < MAX_CLICK_PARENT_HOPS) {
+            if (parent.clickable) {
+                return parent;
+            }
+            parent = parentOf(parent);
+            guard++;
+        }
+        return null;
+    }
+
+    // Nodes fetched outside the walk (by view id, by path) are released with the snapshot.
+    public AccessibilityNodeInfo adopt(AccessibilityNodeInfo node) {
+        if (node != null) {
+            adopted.add(node);
+        }
+        return node;
+    }
+
+    public boolean click(Entry entry, boolean allowParent) {
+        Entry target = clickTarget(entry, allowParent);
+        return target != null && target.node.performAction(AccessibilityNodeInfo.ACTION_CLICK);
+    }
+
+    @SuppressWarnings("deprecation")
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        if (!started && root != null) {
+            recycleAll(Collections.singletonList(root));
+        }
+        recycleAll(adopted);
+        adopted.clear();
+        open.clear();
+        nextChild.clear();
+        for (Entry entry : entries) {
+            try {
+                entry.node.recycle();
+            } catch (IllegalStateException ignore) {
+                // Already recycled by whoever handed it to us.
+            }
+        }
+        entries.clear();
+        editTexts.clear();
+        editables.clear();
+        clickables.clear();
+    }
+
+    private void walkAll() {
+        while (advance()) {
+            // Fetch until the tree or the node budget runs out.
+        }
+    }
+
+    // Adds the next node in pre-order; false once the walk is complete.
+    // Explicit stack: deep layouts would otherwise recurse once per level.
+    private boolean advance() {
+        if (released || root == null || entries.size() >= MAX_NODES) {
+            return false;
+        }
+        if (!started) {
+            started = true;
+            visit(root, -1, 0);
+            return true;
+        }
+        while (!open.isEmpty()) {
+            int last = open.size() - 1;
+            Entry parent = open.get(last);
+            int[] next = nextChild.get(last);
+            if (next[0] >= next[1]) {
+                open.remove(last);
+                nextChild.remove(last);
+                continue;
+            }
+            int i = next[0]++;
+            AccessibilityNodeInfo child = parent.node.getChild(i);
+            if (child != null) {
+                visit(child, parent.index, i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void visit(AccessibilityNodeInfo node, int parent, int childIndex) {
+        Entry entry = new Entry(node, entries.size(), parent, childIndex);
+        entries.add(entry);
+        if (entry.isEditText()) {
+            editTexts.add(entry);
+        }
+        if (entry.editable) {
+            editables.add(entry);
+        }
+        if (entry.clickable) {
+            clickables.add(entry);
+        }
+        int count = node.getChildCount();
+        if (count > 0) {
+            open.add(entry);
+            nextChild.add(new int[]{0, count});
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void recycleAll(List<AccessibilityNodeInfo> nodes) {
+        for (AccessibilityNodeInfo node : nodes) {
+            try {
+                node.recycle();
+            } catch (IllegalStateException ignore) {
+            }
+        }
+    }
+
+    static String normalize(CharSequence value) {
+        return HintMatcher.normalize(value);
+    }
+}
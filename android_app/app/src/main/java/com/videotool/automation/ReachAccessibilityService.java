@@ -1,14 +1,10 @@
 package com.videotool.automation;
 
 import android.accessibilityservice.AccessibilityService;
-import android.content.BroadcastReceiver;
 import android.content.ClipData;
 import android.content.ClipboardManager;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.graphics.Rect;
-import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -18,50 +14,113 @@ import android.view.accessibility.AccessibilityNodeInfo;
 import android.widget.Toast;
 
 import com.videotool.R;
-import com.videotool.agent.MobileAgentService;
+import com.videotool.agent.AdaptiveTimeouts;
+import com.videotool.agent.AgentMetrics;
+import com.videotool.agent.TaskTimeline;
 import com.videotool.console.SessionApiClient;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 
 public class ReachAccessibilityService extends AccessibilityService {
-    private static final int IM_RETRY_MAX = 5;
+    private static final String REASON_COMMENT_BUTTON_NOT_FOUND = "comment_button_not_found";
+    private static final String REASON_SCRIPT_MISSING = "automation_script_missing";
+    private static final String TIMINGS_PREF_NAME = "reach_step_timings";
+    private static final String KEY_TIMINGS = "timings";
+    private static final long STEP_MIN_TIMEOUT_MS = 1500L;
+    private static final long STEP_MAX_TIMEOUT_MS = 20000L;
+    // How far carriesHint() looks around a cached click target.
+    private static final int HINT_CHILD_DEPTH = 2;
+    private static final int HINT_PARENT_HOPS = 3;
 
     private final Handler handler = new Handler(Looper.getMainLooper());
-    private BroadcastReceiver triggerReceiver;
+    private SelectorCache selectors;
+    private final StepEngine stepEngine = new StepEngine(handler, new StepEngine.RootProvider() {
+        @Override
+        public AccessibilityNodeInfo getRoot() {
+            return getRootInActiveWindow();
+        }
+    });
+    private final ScriptInterpreter.Host scriptHost = new ScriptInterpreter.Host() {
+        @Override
+        public boolean isTargetWindow(AccessibilityNodeInfo root) {
+            return activePending == null || ReachAccessibilityService.this.isTargetWindow(root, activePending);
+        }
+
+        @Override
+        public AccessibilityNodeInfo findInput(NodeSnapshot snapshot, String role, HintMatcher hints) {
+            return ReachAccessibilityService.this.findInput(snapshot, role, hints);
+        }
+
+        @Override
+        public boolean click(NodeSnapshot snapshot, String role, HintMatcher hints) {
+            return clickByRole(snapshot, role, hints);
+        }
+
+        @Override
+        public boolean clickHints(NodeSnapshot snapshot, HintMatcher hints) {
+            return clickNodeByHints(snapshot, hints, true) != null;
+        }
+
+        @Override
+        public boolean clickGuess(NodeSnapshot snapshot, HintMatcher hints) {
+            // Not learned: a geometric guess is not proof that this node is the send button.
+            return clickLikelySendNode(snapshot, hints);
+        }
+
+        @Override
+        public void fillInput(AccessibilityNodeInfo input, String text) {
+            ReachAccessibilityService.this.fillInput(input, text);
+        }
+
+        @Override
+        public void copyClipboard(String text) {
+            ReachAccessibilityService.this.copyClipboard(text);
+        }
+    };
+    private final AutomationChannel.Executor commandExecutor = new AutomationChannel.Executor() {
+        @Override
+        public void onCommand(AutomationChannel.Command command) {
+            runAutomation(command);
+        }
+
+        @Override
+        public void onCancel(long seq) {
+            // Superseded or timed out on the agent side; stop touching the UI for it.
+            if (activeCommand != null && activeCommand.seq == seq) {
+                stepEngine.cancel();
+                actionRunning = false;
+                activeCommand = null;
+                actionStartedAt = 0L;
+            }
+        }
+    };
+    // The command being run; its seq is what the result is matched against.
+    private AutomationChannel.Command activeCommand;
+    private CommentAutomationBridge.PendingData activePending;
+    private AutomationScript activeScript;
+    private final AdaptiveTimeouts stepTimings = new AdaptiveTimeouts(STEP_MIN_TIMEOUT_MS, STEP_MAX_TIMEOUT_MS);
     private boolean actionRunning = false;
+    private long actionStartedAt = 0L;
 
     @Override
     protected void onServiceConnected() {
         super.onServiceConnected();
-        if (triggerReceiver != null) {
-            return;
-        }
-        triggerReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                if (intent == null) {
-                    return;
-                }
-                if (!CommentAutomationBridge.ACTION_TRIGGER_AUTOMATION.equals(intent.getAction())) {
-                    return;
-                }
-                runAutomation();
-            }
-        };
-        IntentFilter filter = new IntentFilter(CommentAutomationBridge.ACTION_TRIGGER_AUTOMATION);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-            registerReceiver(triggerReceiver, filter, RECEIVER_NOT_EXPORTED);
-        } else {
-            registerReceiver(triggerReceiver, filter);
-        }
+        selectors = SelectorCache.get(this);
+        loadStepTimings();
+        AutomationChannel.get().setExecutor(commandExecutor);
     }
 
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
+        if (selectors != null && event != null && event.getPackageName() != null
+                && event.getEventType() == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
+            selectors.onWindowChanged(event.getPackageName().toString());
+        }
+        stepEngine.onAccessibilityEvent(event);
     }
 
     @Override
@@ -70,158 +129,164 @@ public class ReachAccessibilityService extends AccessibilityService {
 
     @Override
     public boolean onUnbind(Intent intent) {
-        if (triggerReceiver != null) {
-            try {
-                unregisterReceiver(triggerReceiver);
-            } catch (Exception ignore) {
-            }
-            triggerReceiver = null;
-        }
+        AutomationChannel.get().setExecutor(null);
+        stepEngine.cancel();
+        actionRunning = false;
+        activeCommand = null;
         return super.onUnbind(intent);
     }
 
-    private void runAutomation() {
-        if (actionRunning) {
+    private void runAutomation(AutomationChannel.Command command) {
+        if (actionRunning || command == null) {
             return;
         }
-        CommentAutomationBridge.PendingData pending = CommentAutomationBridge.loadPending(this);
+        CommentAutomationBridge.PendingData pending = command.data;
         if (pending == null || pending.taskId <= 0) {
             toast(getString(R.string.auto_no_pending_task));
             return;
         }
+        activeCommand = command;
+        actionStartedAt = TaskTimeline.now();
         if (CommentAutomationBridge.MODE_IM_AUTO_SEND.equalsIgnoreCase(pending.mode)) {
             runImAutoSendAutomation(pending);
             return;
         }
+        if (CommentAutomationBridge.MODE_COMMENT_BATCH.equalsIgnoreCase(pending.mode)) {
+            runCommentBatchAutomation(pending);
+            return;
+        }
         runCommentAutomation(pending);
     }
 
-    private void runCommentAutomation(CommentAutomationBridge.PendingData pending) {
-        actionRunning = true;
-        AccessibilityNodeInfo root = getRootInActiveWindow();
-        if (root == null) {
-            actionRunning = false;
+    private void runCommentAutomation(final CommentAutomationBridge.PendingData pending) {
+        NodeSnapshot probe = NodeSnapshot.capture(getRootInActiveWindow());
+        boolean ready = !probe.isEmpty();
+        probe.release();
+        if (!ready) {
             toast(getString(R.string.auto_comment_ui_not_ready));
             return;
         }
+        actionRunning = true;
+        startScript(pending, CommentAutomationBridge.MODE_COMMENT, new StepEngine.Listener() {
+            @Override
+            public void onStepWaiting(String step) {
+                AgentMetrics.get().increment(AgentMetrics.A11Y_RETRIES);
+            }
 
-        boolean clickedComment = clickNodeByHints(
-                root,
-                new String[]{"comment", "binh luan"},
-                true
-        );
-        if (!clickedComment) {
-            actionRunning = false;
-            toast(getString(R.string.auto_comment_button_not_found));
-            return;
-        }
-
-        handler.postDelayed(() -> stepCommentPasteAndSend(pending), 900);
+            @Override
+            public void onFinished(boolean success, String reason) {
+                if (success) {
+                    reportCommentStatusAndClose(pending);
+                } else if (REASON_COMMENT_BUTTON_NOT_FOUND.equals(reason)) {
+                    // Keep the pending task so the bubble can trigger another try.
+                    actionRunning = false;
+                    toast(getString(R.string.auto_comment_button_not_found));
+                } else {
+                    finishAction(false, reason);
+                }
+            }
+        });
     }
 
-    private void runImAutoSendAutomation(CommentAutomationBridge.PendingData pending) {
+    private void runImAutoSendAutomation(final CommentAutomationBridge.PendingData pending) {
         actionRunning = true;
-        handler.postDelayed(() -> stepImPasteAndSend(pending, 0), 700);
-    }
-
-    private void stepCommentPasteAndSend(CommentAutomationBridge.PendingData pending) {
-        AccessibilityNodeInfo root = getRootInActiveWindow();
-        if (root == null) {
-            finishAction(false, "comment_root_missing");
-            return;
-        }
-
-        AccessibilityNodeInfo input = findBestInput(root);
-        boolean textOk = false;
-        if (input != null) {
-            textOk = setNodeText(input, pending.text);
-        }
-        if (!textOk) {
-            copyClipboard(pending.text);
-            if (input != null) {
-                input.performAction(AccessibilityNodeInfo.ACTION_FOCUS);
-                Bundle args = new Bundle();
-                args.putInt(
-                        AccessibilityNodeInfo.ACTION_ARGUMENT_MOVEMENT_GRANULARITY_INT,
-                        AccessibilityNodeInfo.MOVEMENT_GRANULARITY_CHARACTER
-                );
-                input.performAction(AccessibilityNodeInfo.ACTION_PASTE, args);
+        startScript(pending, CommentAutomationBridge.MODE_IM_AUTO_SEND, new StepEngine.Listener() {
+            @Override
+            public void onStepWaiting(String step) {
+                AgentMetrics.get().increment(AgentMetrics.A11Y_RETRIES);
             }
-        }
 
-        handler.postDelayed(() -> stepCommentSend(pending), 700);
+            @Override
+            public void onFinished(boolean success, String reason) {
+                if ("im_send_unconfirmed".equals(reason)) {
+                    AgentMetrics.get().increment(AgentMetrics.SENDS_UNCONFIRMED);
+                }
+                // Only reached after confirm_sent saw the message go out; the result
+                // goes straight to the agent, which moves on to the next task at once.
+                finishAction(success, TextUtils.isEmpty(reason) && !success ? "im_auto_send_failed" : reason);
+            }
+        });
     }
 
-    private void stepCommentSend(CommentAutomationBridge.PendingData pending) {
-        AccessibilityNodeInfo root = getRootInActiveWindow();
-        if (root == null) {
-            finishAction(false, "send_root_missing");
-            return;
-        }
+    // The agent drives these: it reports the task through its outbox, and a miss
+    // fails the task so the batch moves on to the next profile.
+    private void runCommentBatchAutomation(final CommentAutomationBridge.PendingData pending) {
+        actionRunning = true;
+        startScript(pending, CommentAutomationBridge.MODE_COMMENT_BATCH, new StepEngine.Listener() {
+            @Override
+            public void onStepWaiting(String step) {
+                AgentMetrics.get().increment(AgentMetrics.A11Y_RETRIES);
+            }
 
-        boolean sent = clickNodeByHints(root, new String[]{"send", "gui"}, true);
-        if (!sent) {
-            finishAction(false, "send_not_found");
-            return;
-        }
-        reportCommentStatusAndClose(pending);
+            @Override
+            public void onFinished(boolean success, String reason) {
+                finishAction(success, TextUtils.isEmpty(reason) && !success ? "comment_batch_failed" : reason);
+            }
+        });
     }
 
-    private void stepImPasteAndSend(CommentAutomationBridge.PendingData pending, int retry) {
-        AccessibilityNodeInfo root = getRootInActiveWindow();
-        if (root == null) {
-            retryImOrFail(pending, retry, "im_root_missing");
+    // The steps come from the active script for this mode and app (bundled or
+    // server-updated), so a UI change can be fixed without a new build.
+    private void startScript(CommentAutomationBridge.PendingData pending, String mode, StepEngine.Listener listener) {
+        AutomationScript script = ScriptStore.get(this).find(mode, pending.targetPackage);
+        if (script == null) {
+            listener.onFinished(false, REASON_SCRIPT_MISSING);
             return;
         }
+        activePending = pending;
+        activeScript = script;
+        // Per target app: WhatsApp and Zalo on the same phone settle at very different speeds.
+        String timingPrefix = mode + "/" + (TextUtils.isEmpty(pending.targetPackage) ? "*" : pending.targetPackage) + "/";
+        List<StepEngine.Step> steps = ScriptInterpreter.compile(script, pending.text, pending.expect, scriptHost,
+                stepTimings, timingPrefix);
+        // The agent's watchdog waits at least this long before giving up on the command.
+        AutomationChannel.get().started(activeCommand, ScriptInterpreter.budgetMs(steps));
+        stepEngine.start(steps, listener);
+    }
 
-        AccessibilityNodeInfo input = findBestInput(root);
-        if (input == null) {
-            // WA/Zalo chat input placeholders can differ by locale.
-            clickNodeByHints(root, new String[]{"message", "tin nhan", "chat", "nhap"}, true);
-            retryImOrFail(pending, retry, "im_input_not_found");
+    private void loadStepTimings() {
+        String raw = getSharedPreferences(TIMINGS_PREF_NAME, MODE_PRIVATE).getString(KEY_TIMINGS, "");
+        if (TextUtils.isEmpty(raw)) {
             return;
         }
-
-        boolean textOk = setNodeText(input, pending.text);
-        if (!textOk) {
-            copyClipboard(pending.text);
-            input.performAction(AccessibilityNodeInfo.ACTION_FOCUS);
-            Bundle args = new Bundle();
-            args.putInt(
-                    AccessibilityNodeInfo.ACTION_ARGUMENT_MOVEMENT_GRANULARITY_INT,
-                    AccessibilityNodeInfo.MOVEMENT_GRANULARITY_CHARACTER
-            );
-            input.performAction(AccessibilityNodeInfo.ACTION_PASTE, args);
+        try {
+            stepTimings.restore(new JSONObject(raw));
+        } catch (JSONException ignore) {
         }
-
-        handler.postDelayed(() -> stepImSend(pending, retry), 600);
     }
 
-    private void stepImSend(CommentAutomationBridge.PendingData pending, int retry) {
-        AccessibilityNodeInfo root = getRootInActiveWindow();
-        if (root == null) {
-            retryImOrFail(pending, retry, "im_send_root_missing");
-            return;
+    private void saveStepTimings() {
+        try {
+            getSharedPreferences(TIMINGS_PREF_NAME, MODE_PRIVATE)
+                    .edit()
+                    .putString(KEY_TIMINGS, stepTimings.toJson().toString())
+                    .apply();
+        } catch (JSONException ignore) {
         }
+    }
 
-        boolean sent = clickNodeByHints(root, new String[]{"send", "gui", "goi"}, true);
-        if (!sent) {
-            sent = clickLikelySendNode(root);
-        }
-        if (!sent) {
-            retryImOrFail(pending, retry, "im_send_not_found");
+    private void fillInput(AccessibilityNodeInfo input, String text) {
+        if (setNodeText(input, text)) {
             return;
         }
-
-        reportImAutoResult(true, "");
+        copyClipboard(text);
+        input.performAction(AccessibilityNodeInfo.ACTION_FOCUS);
+        Bundle args = new Bundle();
+        args.putInt(
+                AccessibilityNodeInfo.ACTION_ARGUMENT_MOVEMENT_GRANULARITY_INT,
+                AccessibilityNodeInfo.MOVEMENT_GRANULARITY_CHARACTER
+        );
+        input.performAction(AccessibilityNodeInfo.ACTION_PASTE, args);
     }
 
-    private void retryImOrFail(CommentAutomationBridge.PendingData pending, int retry, String reason) {
-        if (retry >= IM_RETRY_MAX) {
-            reportImAutoResult(false, reason);
-            return;
+    private boolean isTargetWindow(AccessibilityNodeInfo root, CommentAutomationBridge.PendingData pending) {
+        if (TextUtils.isEmpty(pending.targetPackage) || root.getPackageName() == null) {
+            return true;
         }
-        handler.postDelayed(() -> stepImPasteAndSend(pending, retry + 1), 900);
+        String pkg = root.getPackageName().toString();
+        // The plan names one build of the app, but openTarget() may have launched
+        // another one the script also covers (TikTok ships as musically and trill).
+        return pending.targetPackage.equals(pkg) || (activeScript != null && activeScript.listsPackage(pkg));
     }
 
     private void reportCommentStatusAndClose(CommentAutomationBridge.PendingData pending) {
@@ -251,33 +316,22 @@ public class ReachAccessibilityService extends AccessibilityService {
         );
     }
 
-    private void reportImAutoResult(boolean success, String reason) {
-        try {
-            Intent intent = new Intent(this, MobileAgentService.class);
-            if (success) {
-                intent.setAction(MobileAgentService.ACTION_MARK_SENT);
-            } else {
-                intent.setAction(MobileAgentService.ACTION_MARK_FAIL);
-                intent.putExtra(
-                        MobileAgentService.EXTRA_ERROR_MESSAGE,
-                        TextUtils.isEmpty(reason) ? "im_auto_send_failed" : reason
-                );
-            }
-            startService(intent);
-        } catch (Exception ignore) {
-        }
-        finishAction(success, reason);
-    }
-
     private void finishAction(boolean success, String reason) {
         actionRunning = false;
+        saveStepTimings();
+        if (actionStartedAt > 0) {
+            AgentMetrics.get().recordLatency(AgentMetrics.A11Y_RUN, TaskTimeline.now() - actionStartedAt);
+            actionStartedAt = 0L;
+        }
         if (success) {
             toast(getString(R.string.auto_comment_synced));
         } else if (!TextUtils.isEmpty(reason)) {
             toast(getString(R.string.auto_comment_send_failed, reason));
         }
         CommentAutomationBridge.stopFloatingBubble(this);
-        CommentAutomationBridge.clearPending(this);
+        AutomationChannel.Command command = activeCommand;
+        activeCommand = null;
+        AutomationChannel.get().complete(this, command, success, reason);
     }
 
     private void copyClipboard(String text) {
@@ -297,82 +351,164 @@ public class ReachAccessibilityService extends AccessibilityService {
         return node.performAction(AccessibilityNodeInfo.ACTION_SET_TEXT, args);
     }
 
-    private AccessibilityNodeInfo findBestInput(AccessibilityNodeInfo root) {
-        if (root == null) {
+    // The learned selector goes straight to the node; the full walk only runs on a miss.
+    private AccessibilityNodeInfo findInput(NodeSnapshot snapshot, String role, HintMatcher hints) {
+        AccessibilityNodeInfo cached = snapshot.adopt(cachedNode(snapshot, role, false));
+        if (cached != null) {
+            CharSequence className = cached.getClassName();
+            if (cached.isEditable()
+                    || (className != null && className.toString().toLowerCase(Locale.ROOT).contains("edittext"))) {
+                selectors.recordHit(snapshot.root(), role);
+                return cached;
+            }
+            selectors.recordMiss(snapshot.root(), role);
+        }
+        NodeSnapshot.Entry entry = findBestInput(snapshot, hints);
+        if (entry == null) {
             return null;
         }
-        List<AccessibilityNodeInfo> nodes = new ArrayList<>();
-        collectNodes(root, nodes);
-        for (AccessibilityNodeInfo node : nodes) {
-            if (node == null) {
-                continue;
+        if (selectors != null) {
+            selectors.learn(snapshot, entry, role, false);
+        }
+        return entry.node;
+    }
+
+    private boolean clickByRole(NodeSnapshot snapshot, String role, HintMatcher hints) {
+        AccessibilityNodeInfo cached = snapshot.adopt(cachedNode(snapshot, role, true));
+        if (cached != null) {
+            if (!carriesHint(cached, hints)) {
+                // Whatever sits at that id now is not the button this role is for.
+                selectors.recordMiss(snapshot.root(), role);
+            } else if (cached.isEnabled() && cached.isClickable()
+                    && cached.performAction(AccessibilityNodeInfo.ACTION_CLICK)) {
+                selectors.recordHit(snapshot.root(), role);
+                return true;
             }
-            CharSequence className = node.getClassName();
-            if (className != null && className.toString().toLowerCase(Locale.ROOT).contains("edittext")) {
-                return node;
+            // Often just disabled until the text lands; the heuristics below relearn if it moved.
+        }
+        NodeSnapshot.Entry clicked = clickNodeByHints(snapshot, hints, true);
+        if (clicked == null) {
+            return false;
+        }
+        if (selectors != null) {
+            selectors.learn(snapshot, clicked, role, true);
+        }
+        return true;
+    }
+
+    private AccessibilityNodeInfo cachedNode(NodeSnapshot snapshot, String role, boolean click) {
+        if (selectors == null || snapshot.isEmpty()) {
+            return null;
+        }
+        return selectors.find(snapshot.root(), role, click);
+    }
+
+    // Same test the heuristics learn from: a hint on the node itself, on a child
+    // (the label or icon inside a button) or on a close ancestor.
+    private static boolean carriesHint(AccessibilityNodeInfo node, HintMatcher hints) {
+        if (hints == null || hints.isEmpty()) {
+            return false;
+        }
+        if (showsHint(node, hints) || childShowsHint(node, hints, HINT_CHILD_DEPTH)) {
+            return true;
+        }
+        AccessibilityNodeInfo current = node.getParent();
+        int hops = 1;
+        while (current != null) {
+            boolean match = showsHint(current, hints);
+            AccessibilityNodeInfo next = match || hops++ >= HINT_PARENT_HOPS ? null : current.getParent();
+            recycleNode(current);
+            if (match) {
+                return true;
             }
+            current = next;
         }
-        for (AccessibilityNodeInfo node : nodes) {
-            if (node == null) {
+        return false;
+    }
+
+    private static boolean childShowsHint(AccessibilityNodeInfo node, HintMatcher hints, int depth) {
+        for (int i = 0; i < node.getChildCount(); i++) {
+            AccessibilityNodeInfo child = node.getChild(i);
+            if (child == null) {
                 continue;
             }
-            CharSequence hint = null;
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                hint = node.getHintText();
-            }
-            CharSequence desc = node.getContentDescription();
-            if (containsHint(hint, "message", "tin nhan", "chat", "comment")
-                    || containsHint(desc, "message", "tin nhan", "chat", "comment")) {
-                return node;
+            boolean match = showsHint(child, hints) || (depth > 1 && childShowsHint(child, hints, depth - 1));
+            recycleNode(child);
+            if (match) {
+                return true;
             }
         }
-        return null;
+        return false;
     }
 
-    private boolean clickNodeByHints(AccessibilityNodeInfo root, String[] hints, boolean allowParent) {
-        if (root == null || hints == null) {
-            return false;
+    private static boolean showsHint(AccessibilityNodeInfo node, HintMatcher hints) {
+        return hints.matches(HintMatcher.normalize(node.getText()))
+                || hints.matches(HintMatcher.normalize(node.getContentDescription()));
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void recycleNode(AccessibilityNodeInfo node) {
+        try {
+            node.recycle();
+        } catch (IllegalStateException ignore) {
         }
-        List<AccessibilityNodeInfo> nodes = new ArrayList<>();
-        collectNodes(root, nodes);
-        for (AccessibilityNodeInfo node : nodes) {
-            if (node == null) {
-                continue;
+    }
+
+    private NodeSnapshot.Entry findBestInput(NodeSnapshot snapshot, final HintMatcher hints) {
+        if (snapshot.isEmpty()) {
+            return null;
+        }
+        NodeSnapshot.Entry editText = snapshot.firstEditText();
+        if (editText != null) {
+            return editText;
+        }
+        if (hints == null || hints.isEmpty()) {
+            return null;
+        }
+        return snapshot.first(new NodeSnapshot.Filter() {
+            @Override
+            public boolean accept(NodeSnapshot.Entry entry) {
+                return hints.matches(entry.hint) || hints.matches(entry.desc);
             }
-            if (!matchNode(node, hints)) {
+        });
+    }
+
+    // Returns the node that was actually clicked (the match or its clickable ancestor).
+    private NodeSnapshot.Entry clickNodeByHints(NodeSnapshot snapshot, HintMatcher hints, boolean allowParent) {
+        if (snapshot.isEmpty() || hints == null) {
+            return null;
+        }
+        NodeSnapshot.Entry entry;
+        for (int i = 0; (entry = snapshot.entryAt(i)) != null; i++) {
+            if (!hints.matches(entry.text) && !hints.matches(entry.desc)) {
                 continue;
             }
-            if (clickNode(node, allowParent)) {
-                return true;
+            NodeSnapshot.Entry target = snapshot.clickTarget(entry, allowParent);
+            if (target != null && target.node.performAction(AccessibilityNodeInfo.ACTION_CLICK)) {
+                return target;
             }
         }
-        return false;
+        return null;
     }
 
-    private boolean clickLikelySendNode(AccessibilityNodeInfo root) {
-        if (root == null) {
+    private boolean clickLikelySendNode(NodeSnapshot snapshot, HintMatcher hints) {
+        if (snapshot.isEmpty()) {
             return false;
         }
         Rect screen = new Rect();
-        root.getBoundsInScreen(screen);
+        snapshot.root().getBoundsInScreen(screen);
         if (screen.width() <= 0 || screen.height() <= 0) {
             return false;
         }
 
-        List<AccessibilityNodeInfo> nodes = new ArrayList<>();
-        collectNodes(root, nodes);
-        AccessibilityNodeInfo best = null;
+        NodeSnapshot.Entry best = null;
         double bestScore = Double.NEGATIVE_INFINITY;
         final double minX = screen.left + screen.width() * 0.58d;
         final double minY = screen.top + screen.height() * 0.55d;
         final double maxArea = screen.width() * screen.height() * 0.18d;
 
-        for (AccessibilityNodeInfo node : nodes) {
-            if (node == null || !node.isClickable()) {
-                continue;
-            }
-            Rect b = new Rect();
-            node.getBoundsInScreen(b);
+        for (NodeSnapshot.Entry entry : snapshot.clickables()) {
+            Rect b = entry.bounds();
             if (b.width() <= 0 || b.height() <= 0) {
                 continue;
             }
@@ -384,87 +520,20 @@ public class ReachAccessibilityService extends AccessibilityService {
                 continue;
             }
 
-            CharSequence className = node.getClassName();
-            String classNameText = className == null ? "" : className.toString().toLowerCase(Locale.ROOT);
             double score = b.centerX() + b.centerY() - area * 0.02d;
-            if (classNameText.contains("image") || classNameText.contains("button")) {
+            if (entry.className.contains("image") || entry.className.contains("button")) {
                 score += 2200d;
             }
-            CharSequence desc = node.getContentDescription();
-            CharSequence text = node.getText();
-            if (containsHint(desc, "send", "gui", "goi") || containsHint(text, "send", "gui", "goi")) {
-                score += 3200d;
+            if (hints != null) {
+                score += 3200d * hints.score(entry.desc, entry.text);
             }
 
             if (score > bestScore) {
                 bestScore = score;
-                best = node;
-            }
-        }
-        return clickNode(best, true);
-    }
-
-    private boolean matchNode(AccessibilityNodeInfo node, String[] hints) {
-        String text = node.getText() == null ? "" : node.getText().toString().toLowerCase(Locale.ROOT);
-        String desc = node.getContentDescription() == null ? "" : node.getContentDescription().toString().toLowerCase(Locale.ROOT);
-        for (String hint : hints) {
-            String key = hint == null ? "" : hint.toLowerCase(Locale.ROOT);
-            if (key.isEmpty()) {
-                continue;
-            }
-            if (text.contains(key) || desc.contains(key)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private boolean containsHint(CharSequence value, String... hints) {
-        if (value == null) {
-            return false;
-        }
-        String text = value.toString().toLowerCase(Locale.ROOT);
-        for (String hint : hints) {
-            if (text.contains(hint.toLowerCase(Locale.ROOT))) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private boolean clickNode(AccessibilityNodeInfo node, boolean allowParent) {
-        if (node == null) {
-            return false;
-        }
-        if (node.isClickable()) {
-            return node.performAction(AccessibilityNodeInfo.ACTION_CLICK);
-        }
-        if (!allowParent) {
-            return false;
-        }
-        AccessibilityNodeInfo parent = node.getParent();
-        int guard = 0;
-        while (parent != null && guard < 6) {
-            if (parent.isClickable()) {
-                return parent.performAction(AccessibilityNodeInfo.ACTION_CLICK);
-            }
-            parent = parent.getParent();
-            guard++;
-        }
-        return false;
-    }
-
-    private void collectNodes(AccessibilityNodeInfo node, List<AccessibilityNodeInfo> out) {
-        if (node == null || out == null) {
-            return;
-        }
-        out.add(node);
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo child = node.getChild(i);
-            if (child != null) {
-                collectNodes(child, out);
+                best = entry;
             }
         }
+        return snapshot.click(best, true);
     }
 
     private void toast(String message) {
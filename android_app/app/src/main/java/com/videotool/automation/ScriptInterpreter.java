@@ -0,0 +1,280 @@
+package com.videotool.automation;
+
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import com.videotool.agent.AdaptiveTimeouts;
+import com.videotool.agent.AgentMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Turns an AutomationScript into StepEngine steps. The script only says what
+// to look for and how long to wait; finding and touching nodes stays in the
+// service (Host), which keeps the selector cache and the input fallbacks.
+public final class ScriptInterpreter {
+    private static final String TEXT_PLACEHOLDER = "${text}";
+    // Bubbles and previews can cut long messages; a prefix is enough to recognise ours.
+    private static final int CONFIRM_KEY_CHARS = 40;
+    private static final long MIN_RETRY_MS = 250L;
+    // Timing key suffix for steps that only succeeded after waiting; their spacing
+    // is what a retry should follow, first-attempt hits say nothing about it.
+    private static final String WAITED_SUFFIX = "#waited";
+    private static final NodeSnapshot.Filter EDITABLE = new NodeSnapshot.Filter() {
+        @Override
+        public boolean accept(NodeSnapshot.Entry entry) {
+            return entry.editable;
+        }
+    };
+
+    public interface Host {
+        boolean isTargetWindow(AccessibilityNodeInfo root);
+
+        AccessibilityNodeInfo findInput(NodeSnapshot snapshot, String role, HintMatcher hints);
+
+        boolean click(NodeSnapshot snapshot, String role, HintMatcher hints);
+
+        boolean clickHints(NodeSnapshot snapshot, HintMatcher hints);
+
+        // Last resort for send buttons without a label: a positional guess.
+        boolean clickGuess(NodeSnapshot snapshot, HintMatcher hints);
+
+        void fillInput(AccessibilityNodeInfo input, String text);
+
+        void copyClipboard(String text);
+    }
+
+    private ScriptInterpreter() {
+    }
+
+    // timings holds this device's step durations under "<timingPrefix><step name>";
+    // a step's timeout and retry spacing follow them once there is enough history,
+    // with the script's values as the defaults.
+    public static List<StepEngine.Step> compile(AutomationScript script, String text, String expect, Host host,
+                                                AdaptiveTimeouts timings, String timingPrefix) {
+        List<StepEngine.Step> steps = new ArrayList<>();
+        SendProbe probe = script.confirmsSend ? new SendProbe(text) : null;
+        HintMatcher expectHints = HintMatcher.of(expect == null ? "" : expect);
+        for (AutomationScript.StepSpec spec : script.steps) {
+            String key = timingPrefix + spec.name;
+            // Never below half the scripted value: most steps finish on the first
+            // attempt, which would otherwise leave no room for a slow frame.
+            long timeoutMs = timings == null
+                    ? spec.timeoutMs
+                    : Math.max(spec.timeoutMs / 2, timings.timeoutFor(key, spec.timeoutMs));
+            long retryMs = spec.retryMs;
+            if (timings != null && retryMs > 0) {
+                long learned = timings.typicalFor(key + WAITED_SUFFIX, spec.retryMs);
+                long floor = Math.max(MIN_RETRY_MS, spec.retryMs / 2);
+                retryMs = Math.max(floor, Math.min(spec.retryMs * 2, learned));
+            }
+            StepEngine.Step step = new ScriptStep(spec, expand(spec.text, text), host, probe,
+                    spec.expectTarget ? expectHints : spec.hints, timeoutMs, retryMs, timings, key);
+            steps.add(spec.afterUiChange ? step.afterUiChange() : step);
+        }
+        return steps;
+    }
+
+    // Longest the compiled steps can run when every one of them hits its timeout.
+    public static long budgetMs(List<StepEngine.Step> steps) {
+        long total = 0L;
+        for (StepEngine.Step step : steps) {
+            total += step.timeoutMs;
+        }
+        return total;
+    }
+
+    private static String expand(String template, String text) {
+        return template.replace(TEXT_PLACEHOLDER, text == null ? "" : text);
+    }
+
+    // What the screen looked like right before the send click, so confirm_sent
+    // can tell our message apart from an identical earlier one.
+    private static final class SendProbe {
+        final String key;
+        boolean inputHeldText = false;
+        int bubblesBefore = -1;
+
+        SendProbe(String text) {
+            String normalized = HintMatcher.normalize(text);
+            this.key = normalized.length() > CONFIRM_KEY_CHARS ? normalized.substring(0, CONFIRM_KEY_CHARS) : normalized;
+        }
+
+        void recordBeforeSend(NodeSnapshot snapshot) {
+            inputHeldText = inputHolds(snapshot);
+            bubblesBefore = countBubbles(snapshot);
+        }
+
+        boolean confirmed(NodeSnapshot snapshot) {
+            if (key.isEmpty()) {
+                return true;
+            }
+            if (bubblesBefore >= 0 && countBubbles(snapshot) > bubblesBefore) {
+                return true;
+            }
+            // Cleared only counts if we saw our text in the input before the click;
+            // otherwise a fill that never landed would look like a sent message.
+            return inputHeldText && snapshot.first(EDITABLE) != null && !inputHolds(snapshot);
+        }
+
+        private boolean inputHolds(NodeSnapshot snapshot) {
+            return snapshot.first(new NodeSnapshot.Filter() {
+                @Override
+                public boolean accept(NodeSnapshot.Entry entry) {
+                    return entry.editable && entry.text.contains(key);
+                }
+            }) != null;
+        }
+
+        private int countBubbles(NodeSnapshot snapshot) {
+            int count = 0;
+            for (NodeSnapshot.Entry entry : snapshot.entries()) {
+                if (!entry.editable && !entry.isEditText() && entry.text.contains(key)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private static final class ScriptStep extends StepEngine.Step {
+        private final AutomationScript.StepSpec spec;
+        private final String text;
+        private final Host host;
+        private final SendProbe probe;
+        // What find/wait_for/verify look for: the scripted hints or the command's expect text.
+        private final HintMatcher lookFor;
+        private final long retryMs;
+        private final AdaptiveTimeouts timings;
+        private final String timingKey;
+        private int attempts = 0;
+        private long lastFocusClickAt = Long.MIN_VALUE / 2;
+
+        ScriptStep(AutomationScript.StepSpec spec, String text, Host host, SendProbe probe, HintMatcher lookFor,
+                   long timeoutMs, long retryMs, AdaptiveTimeouts timings, String timingKey) {
+            super(spec.name, timeoutMs);
+            this.spec = spec;
+            this.text = text;
+            this.host = host;
+            this.probe = probe;
+            this.lookFor = lookFor;
+            this.retryMs = retryMs;
+            this.timings = timings;
+            this.timingKey = timingKey;
+        }
+
+        @Override
+        public StepEngine.Outcome attempt(NodeSnapshot snapshot, long elapsedMs) {
+            StepEngine.Outcome outcome = run(snapshot, elapsedMs);
+            if (outcome == StepEngine.Outcome.done() && timings != null) {
+                timings.record(timingKey, elapsedMs);
+                if (attempts > 1) {
+                    timings.record(timingKey + WAITED_SUFFIX, elapsedMs);
+                }
+            }
+            return outcome;
+        }
+
+        private StepEngine.Outcome run(NodeSnapshot snapshot, long elapsedMs) {
+            attempts++;
+            if (snapshot.isEmpty()) {
+                missReason = spec.rootMissingReason;
+                return retry();
+            }
+            if (spec.targetWindow && !host.isTargetWindow(snapshot.root())) {
+                // The target app is still launching or another window is on top.
+                missReason = spec.wrongWindowReason;
+                return retry();
+            }
+            missReason = spec.failReason;
+            switch (spec.op) {
+                case AutomationScript.OP_WAIT_FOR:
+                    return lookFor.isEmpty() || present(snapshot) ? StepEngine.Outcome.done() : retry();
+                case AutomationScript.OP_FIND:
+                    return present(snapshot) ? StepEngine.Outcome.done() : retry();
+                case AutomationScript.OP_VERIFY:
+                    boolean shown = present(snapshot);
+                    boolean wantShown = !AutomationScript.EXPECT_GONE.equals(spec.expect);
+                    return shown == wantShown ? StepEngine.Outcome.done() : retry();
+                case AutomationScript.OP_SET_TEXT:
+                    return setText(snapshot, elapsedMs);
+                case AutomationScript.OP_CLICK:
+                    return click(snapshot, elapsedMs);
+                case AutomationScript.OP_CONFIRM_SENT:
+                    if (probe == null || probe.confirmed(snapshot)) {
+                        AgentMetrics.get().recordLatency(AgentMetrics.SEND_CONFIRM, elapsedMs);
+                        return StepEngine.Outcome.done();
+                    }
+                    return retry();
+                default:
+                    return StepEngine.Outcome.fail(spec.failReason);
+            }
+        }
+
+        @Override
+        public StepEngine.Outcome onTimeout() {
+            if (timings != null) {
+                timings.recordTimeout(timingKey, timeoutMs);
+            }
+            return giveUp();
+        }
+
+        private StepEngine.Outcome setText(NodeSnapshot snapshot, long elapsedMs) {
+            AccessibilityNodeInfo input = host.findInput(snapshot, spec.role, spec.hints);
+            if (input != null) {
+                host.fillInput(input, text);
+                return StepEngine.Outcome.done();
+            }
+            // Chat inputs often only appear once their placeholder row is tapped.
+            if (!spec.focusHints.isEmpty() && elapsedMs - lastFocusClickAt >= retryMs) {
+                lastFocusClickAt = elapsedMs;
+                host.clickHints(snapshot, spec.focusHints);
+            }
+            return retry();
+        }
+
+        private StepEngine.Outcome click(NodeSnapshot snapshot, long elapsedMs) {
+            if (probe != null) {
+                probe.recordBeforeSend(snapshot);
+            }
+            if (host.click(snapshot, spec.role, spec.hints)) {
+                return StepEngine.Outcome.done();
+            }
+            if (spec.guessAfterMs <= 0) {
+                return retry();
+            }
+            // The guess is only safe once the real button had a chance to appear.
+            if (elapsedMs < spec.guessAfterMs) {
+                return StepEngine.Outcome.recheckIn(spec.guessAfterMs - elapsedMs);
+            }
+            return host.clickGuess(snapshot, spec.hints) ? StepEngine.Outcome.done() : retry();
+        }
+
+        private boolean present(NodeSnapshot snapshot) {
+            return snapshot.first(new NodeSnapshot.Filter() {
+                @Override
+                public boolean accept(NodeSnapshot.Entry entry) {
+                    return lookFor.matches(entry.text) || lookFor.matches(entry.desc) || lookFor.matches(entry.hint);
+                }
+            }) != null;
+        }
+
+        private StepEngine.Outcome retry() {
+            if (spec.maxAttempts > 0 && attempts >= spec.maxAttempts) {
+                return giveUp();
+            }
+            return retryMs > 0 ? StepEngine.Outcome.recheckIn(retryMs) : StepEngine.Outcome.waitForUi();
+        }
+
+        private StepEngine.Outcome giveUp() {
+            if (AutomationScript.ON_TIMEOUT_CONTINUE.equals(spec.onTimeout)) {
+                return StepEngine.Outcome.done();
+            }
+            if (AutomationScript.ON_TIMEOUT_CLIPBOARD.equals(spec.onTimeout)) {
+                // Leave the text for the user to paste and still go on to the next step.
+                host.copyClipboard(text);
+                return StepEngine.Outcome.done();
+            }
+            return StepEngine.Outcome.fail(missReason.isEmpty() ? spec.failReason : missReason);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.videotool.automation;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import com.videotool.R;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+// Holds the active automation scripts: the set bundled in res/raw, replaced
+// by a server update when that one carries a higher version. Updates are
+// kept in prefs so a UI change in TikTok/Zalo can be handled by shipping a
+// new script instead of a new APK.
+public class ScriptStore {
+    private static final String PREF_NAME = "reach_automation_scripts";
+    private static final String KEY_SCRIPTS = "scripts";
+
+    private static ScriptStore instance;
+
+    private final Context context;
+    private List<AutomationScript> scripts;
+    private int version = -1;
+    private String lastRaw = "";
+
+    public static synchronized ScriptStore get(Context context) {
+        if (instance == null) {
+            instance = new ScriptStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ScriptStore(Context context) {
+        this.context = context;
+    }
+
+    // Most specific script for the mode and target app, or null when none applies.
+    public synchronized AutomationScript find(String mode, String targetPackage) {
+        ensureLoaded();
+        for (AutomationScript script : scripts) {
+            if (script.appliesTo(mode, targetPackage)) {
+                return script;
+            }
+        }
+        return null;
+    }
+
+    public synchronized void update(String raw) {
+        if (TextUtils.isEmpty(raw) || raw.equals(lastRaw)) {
+            return;
+        }
+        lastRaw = raw;
+        ensureLoaded();
+        if (AutomationScript.versionOf(raw) <= version) {
+            return;
+        }
+        List<AutomationScript> parsed;
+        try {
+            parsed = AutomationScript.parseAll(raw);
+        } catch (JSONException e) {
+            // A broken update never replaces scripts that parse.
+            return;
+        }
+        if (parsed.isEmpty()) {
+            return;
+        }
+        scripts = parsed;
+        version = AutomationScript.versionOf(raw);
+        prefs().edit().putString(KEY_SCRIPTS, raw).apply();
+    }
+
+    private void ensureLoaded() {
+        if (scripts != null) {
+            return;
+        }
+        scripts = Collections.emptyList();
+        String bundled = readBundled();
+        load(bundled);
+        String stored = prefs().getString(KEY_SCRIPTS, "");
+        // An older download is dropped once the APK ships a newer bundle.
+        if (!TextUtils.isEmpty(stored) && AutomationScript.versionOf(stored) > version) {
+            load(stored);
+        }
+    }
+
+    private void load(String raw) {
+        if (TextUtils.isEmpty(raw)) {
+            return;
+        }
+        try {
+            List<AutomationScript> parsed = AutomationScript.parseAll(raw);
+            if (!parsed.isEmpty()) {
+                scripts = parsed;
+                version = AutomationScript.versionOf(raw);
+            }
+        } catch (JSONException ignore) {
+        }
+    }
+
+    private String readBundled() {
+        try (InputStream in = context.getResources().openRawResource(R.raw.automation_scripts)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private SharedPreferences prefs() {
+        return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,402 @@
+package com.videotool.automation;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.text.TextUtils;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Remembers which node actually worked for a role (send button, input, ...)
+// per target app and versionCode, so the next run can go straight to it by
+// view id or structural path instead of searching the whole tree. Click roles
+// only ever use a unique view id: a child-index path lands on whatever row or
+// button sits there now. Learned selectors win over server seeds; a selector
+// that keeps missing is dropped and the heuristics take over again. A seed
+// cannot be dropped, so its misses are kept as a learned entry without a
+// selector ({"seed": ..., "misses": n}) that blocks that seed once it is full.
+public class SelectorCache {
+    public static final String ROLE_COMMENT_OPEN = "comment_open";
+    public static final String ROLE_COMMENT_INPUT = "comment_input";
+    public static final String ROLE_COMMENT_SEND = "comment_send";
+    public static final String ROLE_IM_INPUT = "im_input";
+    public static final String ROLE_IM_SEND = "im_send";
+
+    private static final String PREF_NAME = "reach_selector_cache";
+    private static final String KEY_LEARNED = "learned";
+    private static final String KEY_SEEDS = "seeds";
+    private static final int MAX_MISSES = 3;
+    private static final int MAX_APPS = 32;
+    private static final int MAX_PATH_DEPTH = 40;
+
+    private static SelectorCache instance;
+
+    private final Context context;
+    private final Map<String, Long> versionCodes = new HashMap<>();
+    private JSONObject learned;
+    private JSONObject seeds;
+    private String lastSeedRaw = "";
+
+    public static synchronized SelectorCache get(Context context) {
+        if (instance == null) {
+            instance = new SelectorCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SelectorCache(Context context) {
+        this.context = context;
+    }
+
+    // Finds the cached node for role in the window, or null on a miss. The
+    // caller owns (and recycles) the returned node and still has to check it
+    // is the right one, calling recordMiss when it is not.
+    public synchronized AccessibilityNodeInfo find(AccessibilityNodeInfo root, String role, boolean click) {
+        String packageName = packageOf(root);
+        if (packageName.isEmpty()) {
+            return null;
+        }
+        JSONObject selector = selectorFor(packageName, role);
+        if (selector == null) {
+            return null;
+        }
+        AccessibilityNodeInfo node = null;
+        String viewId = selector.optString("id", "");
+        if (!viewId.isEmpty()) {
+            node = findById(root, viewId);
+        }
+        String path = selector.optString("path", "");
+        if (node == null && !click && selector.has("path")) {
+            node = findByPath(root, path);
+        }
+        // Not found is not a miss: the UI may simply not be there yet.
+        return node;
+    }
+
+    public synchronized void recordHit(AccessibilityNodeInfo root, String role) {
+        String packageName = packageOf(root);
+        if (packageName.isEmpty()) {
+            return;
+        }
+        JSONObject selector = learnedSelector(packageName, role);
+        if (selector == null) {
+            // The seed worked after all; forget the misses it had collected.
+            JSONObject app = learned().optJSONObject(appKey(packageName));
+            if (app != null && app.remove(role) != null) {
+                save();
+            }
+            return;
+        }
+        try {
+            // Counted in memory only; the next learn or miss persists it.
+            selector.put("hits", selector.optInt("hits", 0) + 1);
+            selector.put("misses", 0);
+        } catch (JSONException ignore) {
+        }
+    }
+
+    // The cached node was found but is the wrong node for the role.
+    public synchronized void recordMiss(AccessibilityNodeInfo root, String role) {
+        String packageName = packageOf(root);
+        if (!packageName.isEmpty()) {
+            recordMiss(packageName, role);
+        }
+    }
+
+    // Stores the node the heuristics settled on. A view id is preferred when
+    // it is unique in the window; list rows share ids, so inputs get a path
+    // and click roles are not cached at all (any old selector is dropped).
+    public synchronized void learn(NodeSnapshot snapshot, NodeSnapshot.Entry entry, String role, boolean click) {
+        String packageName = packageOf(snapshot.root());
+        if (packageName.isEmpty() || entry == null) {
+            return;
+        }
+        boolean uniqueId = !entry.viewId.isEmpty() && snapshot.countViewId(entry.viewId) == 1;
+        if (click && !uniqueId) {
+            forget(packageName, role);
+            return;
+        }
+        try {
+            JSONObject selector = new JSONObject();
+            if (uniqueId) {
+                selector.put("id", entry.viewId);
+            } else {
+                selector.put("path", snapshot.pathOf(entry));
+            }
+            selector.put("hits", 1);
+            selector.put("misses", 0);
+            JSONObject app = learned().optJSONObject(appKey(packageName));
+            if (app == null) {
+                trimApps();
+                app = new JSONObject();
+                learned().put(appKey(packageName), app);
+            }
+            app.put(role, selector);
+            save();
+        } catch (JSONException ignore) {
+        }
+    }
+
+    // The app may have been updated since its versionCode was read; the next
+    // lookup reads it again.
+    public synchronized void onWindowChanged(String packageName) {
+        if (packageName != null) {
+            versionCodes.remove(packageName);
+        }
+    }
+
+    // Server seeds: {"<package>": {"version_code": 0, "<role>": {"id": "..."} | {"path": "0/1"}}}.
+    // version_code 0 (or missing) applies to every version of the app; paths are ignored for click roles.
+    public synchronized void seed(String raw) {
+        if (TextUtils.isEmpty(raw) || raw.equals(lastSeedRaw)) {
+            return;
+        }
+        try {
+            seeds = new JSONObject(raw);
+            lastSeedRaw = raw;
+            prefs().edit().putString(KEY_SEEDS, raw).apply();
+        } catch (JSONException ignore) {
+        }
+    }
+
+    private JSONObject selectorFor(String packageName, String role) {
+        JSONObject selector = learnedSelector(packageName, role);
+        if (selector != null) {
+            return selector;
+        }
+        JSONObject seed = seedSelector(packageName, role);
+        if (seed == null) {
+            return null;
+        }
+        JSONObject misses = learnedEntry(packageName, role);
+        if (misses != null && misses.optInt("misses", 0) >= MAX_MISSES
+                && seed.toString().equals(misses.optString("seed", ""))) {
+            return null;
+        }
+        return seed;
+    }
+
+    private JSONObject seedSelector(String packageName, String role) {
+        JSONObject app = seeds().optJSONObject(packageName);
+        if (app == null) {
+            return null;
+        }
+        long version = app.optLong("version_code", 0L);
+        if (version > 0 && version != versionCode(packageName)) {
+            return null;
+        }
+        return app.optJSONObject(role);
+    }
+
+    // Only entries that are a selector; seed miss counters are not.
+    private JSONObject learnedSelector(String packageName, String role) {
+        JSONObject entry = learnedEntry(packageName, role);
+        return entry != null && (entry.has("id") || entry.has("path")) ? entry : null;
+    }
+
+    private JSONObject learnedEntry(String packageName, String role) {
+        JSONObject app = learned().optJSONObject(appKey(packageName));
+        return app == null ? null : app.optJSONObject(role);
+    }
+
+    private void recordMiss(String packageName, String role) {
+        JSONObject app = learned().optJSONObject(appKey(packageName));
+        JSONObject selector = learnedSelector(packageName, role);
+        if (selector == null) {
+            recordSeedMiss(packageName, role);
+            return;
+        }
+        int misses = selector.optInt("misses", 0) + 1;
+        try {
+            if (misses >= MAX_MISSES) {
+                app.remove(role);
+            } else {
+                selector.put("misses", misses);
+            }
+            save();
+        } catch (JSONException ignore) {
+        }
+    }
+
+    private void recordSeedMiss(String packageName, String role) {
+        JSONObject seed = seedSelector(packageName, role);
+        if (seed == null) {
+            return;
+        }
+        String seedKey = seed.toString();
+        JSONObject previous = learnedEntry(packageName, role);
+        // A new seed from the server starts over.
+        int misses = previous != null && seedKey.equals(previous.optString("seed", ""))
+                ? previous.optInt("misses", 0) + 1
+                : 1;
+        try {
+            JSONObject entry = new JSONObject();
+            entry.put("seed", seedKey);
+            entry.put("misses", misses);
+            JSONObject app = learned().optJSONObject(appKey(packageName));
+            if (app == null) {
+                trimApps();
+                app = new JSONObject();
+                learned().put(appKey(packageName), app);
+            }
+            app.put(role, entry);
+            save();
+        } catch (JSONException ignore) {
+        }
+    }
+
+    // Drops a learned selector; a seed's miss counter stays so the seed remains blocked.
+    private void forget(String packageName, String role) {
+        JSONObject app = learned().optJSONObject(appKey(packageName));
+        if (app != null && learnedSelector(packageName, role) != null) {
+            app.remove(role);
+            save();
+        }
+    }
+
+    private AccessibilityNodeInfo findById(AccessibilityNodeInfo root, String viewId) {
+        List<AccessibilityNodeInfo> found = root.findAccessibilityNodeInfosByViewId(viewId);
+        if (found == null || found.isEmpty()) {
+            return null;
+        }
+        AccessibilityNodeInfo pick = null;
+        for (AccessibilityNodeInfo node : found) {
+            if (pick == null && node.isVisibleToUser()) {
+                pick = node;
+            } else {
+                recycle(node);
+            }
+        }
+        return pick;
+    }
+
+    // Walks child indexes from the root: one getChild() per level instead of the whole tree.
+    private AccessibilityNodeInfo findByPath(AccessibilityNodeInfo root, String path) {
+        if (path.isEmpty()) {
+            return AccessibilityNodeInfo.obtain(root);
+        }
+        String[] parts = path.split("/");
+        if (parts.length > MAX_PATH_DEPTH) {
+            return null;
+        }
+        AccessibilityNodeInfo current = null;
+        AccessibilityNodeInfo parent = root;
+        for (String part : parts) {
+            int index;
+            try {
+                index = Integer.parseInt(part);
+            } catch (NumberFormatException e) {
+                index = -1;
+            }
+            AccessibilityNodeInfo child = index >= 0 && index < parent.getChildCount() ? parent.getChild(index) : null;
+            if (parent != root) {
+                recycle(parent);
+            }
+            if (child == null) {
+                return null;
+            }
+            current = child;
+            parent = child;
+        }
+        if (current != null && !current.isVisibleToUser()) {
+            recycle(current);
+            return null;
+        }
+        return current;
+    }
+
+    private void trimApps() {
+        if (learned().length() < MAX_APPS) {
+            return;
+        }
+        // Oldest insertion is not tracked; drop any one entry to stay bounded.
+        Iterator<String> keys = learned().keys();
+        if (keys.hasNext()) {
+            learned().remove(keys.next());
+        }
+    }
+
+    private String appKey(String packageName) {
+        return packageName + "@" + versionCode(packageName);
+    }
+
+    private long versionCode(String packageName) {
+        Long cached = versionCodes.get(packageName);
+        if (cached != null) {
+            return cached;
+        }
+        long version = 0L;
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(packageName, 0);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                version = info.getLongVersionCode();
+            } else {
+                version = legacyVersionCode(info);
+            }
+        } catch (PackageManager.NameNotFoundException ignore) {
+        }
+        // Cached until the app's next window change, see onWindowChanged().
+        versionCodes.put(packageName, version);
+        return version;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long legacyVersionCode(PackageInfo info) {
+        return info.versionCode;
+    }
+
+    private JSONObject learned() {
+        if (learned == null) {
+            learned = parse(prefs().getString(KEY_LEARNED, ""));
+        }
+        return learned;
+    }
+
+    private JSONObject seeds() {
+        if (seeds == null) {
+            lastSeedRaw = prefs().getString(KEY_SEEDS, "");
+            seeds = parse(lastSeedRaw);
+        }
+        return seeds;
+    }
+
+    private void save() {
+        prefs().edit().putString(KEY_LEARNED, learned().toString()).apply();
+    }
+
+    private SharedPreferences prefs() {
+        return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static JSONObject parse(String raw) {
+        if (TextUtils.isEmpty(raw)) {
+            return new JSONObject();
+        }
+        try {
+            return new JSONObject(raw);
+        } catch (JSONException e) {
+            return new JSONObject();
+        }
+    }
+
+    private static String packageOf(AccessibilityNodeInfo root) {
+        return root == null || root.getPackageName() == null ? "" : root.getPackageName().toString();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void recycle(AccessibilityNodeInfo node) {
+        try {
+            node.recycle();
+        } catch (IllegalStateException ignore) {
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.videotool.automation;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs an automation as a list of steps. A step is tried right away and again
+// on every window change event until it reports done or fails; its timeout is
+// only the fallback when the expected UI never shows up. All calls must come
+// from the handler's thread.
+public class StepEngine {
+    // Content-changed events arrive in bursts while a sheet animates in.
+    private static final long EVENT_DEBOUNCE_MS = 40L;
+
+    public interface RootProvider {
+        AccessibilityNodeInfo getRoot();
+    }
+
+    public interface Listener {
+        void onStepWaiting(String step);
+
+        void onFinished(boolean success, String reason);
+    }
+
+    public abstract static class Step {
+        final String name;
+        final long timeoutMs;
+        boolean awaitUiChange = false;
+        // Why the last attempt missed; becomes the failure reason on timeout.
+        protected String missReason = "";
+
+        protected Step(String name, long timeoutMs) {
+            this.name = name;
+            this.timeoutMs = timeoutMs;
+        }
+
+        // Skips the immediate attempt: the step only runs once the UI has reacted
+        // to the previous one, so it cannot match the screen we are leaving.
+        public Step afterUiChange() {
+            awaitUiChange = true;
+            return this;
+        }
+
+        // The snapshot is empty while the window is switching and is released
+        // once the attempt returns; elapsedMs counts from the step start.
+        public abstract Outcome attempt(NodeSnapshot snapshot, long elapsedMs);
+
+        public Outcome onTimeout() {
+            return Outcome.fail(missReason.isEmpty() ? name + "_timeout" : missReason);
+        }
+    }
+
+    public static final class Outcome {
+        static final int DONE = 0;
+        static final int WAIT = 1;
+        static final int FAIL = 2;
+        private static final Outcome DONE_NOW = new Outcome(DONE, "", 0L);
+        private static final Outcome WAIT_FOR_EVENT = new Outcome(WAIT, "", 0L);
+
+        final int kind;
+        final String reason;
+        final long recheckMs;
+
+        private Outcome(int kind, String reason, long recheckMs) {
+            this.kind = kind;
+            this.reason = reason == null ? "" : reason;
+            this.recheckMs = recheckMs;
+        }
+
+        public static Outcome done() {
+            return DONE_NOW;
+        }
+
+        public static Outcome waitForUi() {
+            return WAIT_FOR_EVENT;
+        }
+
+        // Waits for the next event, but tries again after recheckMs even if none arrives.
+        public static Outcome recheckIn(long recheckMs) {
+            return new Outcome(WAIT, "", Math.max(EVENT_DEBOUNCE_MS, recheckMs));
+        }
+
+        public static Outcome fail(String reason) {
+            return new Outcome(FAIL, reason, 0L);
+        }
+    }
+
+    private final Handler handler;
+    private final RootProvider roots;
+    private final List<Step> steps = new ArrayList<>();
+    private Listener listener;
+    private int index = -1;
+    private long stepStartedAt = 0L;
+    private boolean waitingReported = false;
+    private boolean eventQueued = false;
+    private boolean attempting = false;
+
+    // The event debounce and the step's own recheck timer are separate, so an event
+    // never has to wait out a pending recheck.
+    private final Runnable eventRunnable = new Runnable() {
+        @Override
+        public void run() {
+            eventQueued = false;
+            attemptCurrent();
+        }
+    };
+
+    private final Runnable recheckRunnable = new Runnable() {
+        @Override
+        public void run() {
+            attemptCurrent();
+        }
+    };
+
+    private final Runnable timeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Step step = current();
+            if (step != null) {
+                apply(step.onTimeout());
+            }
+        }
+    };
+
+    public StepEngine(Handler handler, RootProvider roots) {
+        this.handler = handler;
+        this.roots = roots;
+    }
+
+    public boolean isRunning() {
+        return index >= 0;
+    }
+
+    public void start(List<Step> plan, Listener listener) {
+        cancel();
+        steps.addAll(plan);
+        this.listener = listener;
+        index = 0;
+        enterStep();
+    }
+
+    public void cancel() {
+        handler.removeCallbacks(eventRunnable);
+        handler.removeCallbacks(recheckRunnable);
+        handler.removeCallbacks(timeoutRunnable);
+        eventQueued = false;
+        steps.clear();
+        listener = null;
+        index = -1;
+    }
+
+    public void onAccessibilityEvent(AccessibilityEvent event) {
+        if (!isRunning() || event == null || eventQueued) {
+            return;
+        }
+        int type = event.getEventType();
+        if (type != AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED
+                && type != AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
+            return;
+        }
+        // The debounced attempt supersedes the recheck; a still-waiting step re-arms it.
+        handler.removeCallbacks(recheckRunnable);
+        eventQueued = true;
+        handler.postDelayed(eventRunnable, EVENT_DEBOUNCE_MS);
+    }
+
+    private Step current() {
+        return index >= 0 && index < steps.size() ? steps.get(index) : null;
+    }
+
+    private void enterStep() {
+        Step step = current();
+        if (step == null) {
+            finish(true, "");
+            return;
+        }
+        stepStartedAt = SystemClock.uptimeMillis();
+        waitingReported = false;
+        handler.removeCallbacks(timeoutRunnable);
+        handler.postDelayed(timeoutRunnable, step.timeoutMs);
+        if (!step.awaitUiChange) {
+            attemptCurrent();
+        }
+    }
+
+    private void attemptCurrent() {
+        Step step = current();
+        if (step == null || attempting) {
+            return;
+        }
+        attempting = true;
+        Outcome outcome;
+        NodeSnapshot snapshot = NodeSnapshot.capture(roots.getRoot());
+        try {
+            outcome = step.attempt(snapshot, SystemClock.uptimeMillis() - stepStartedAt);
+        } catch (RuntimeException e) {
+            // Nodes can go stale between the event and our query; treat it as "not yet".
+            outcome = Outcome.waitForUi();
+        } finally {
+            snapshot.release();
+            attempting = false;
+        }
+        if (current() == step) {
+            apply(outcome);
+        }
+    }
+
+    private void apply(Outcome outcome) {
+        Step step = current();
+        if (step == null) {
+            return;
+        }
+        if (outcome.kind == Outcome.DONE) {
+            handler.removeCallbacks(timeoutRunnable);
+            handler.removeCallbacks(eventRunnable);
+            handler.removeCallbacks(recheckRunnable);
+            eventQueued = false;
+            index++;
+            enterStep();
+        } else if (outcome.kind == Outcome.WAIT) {
+            handler.removeCallbacks(recheckRunnable);
+            if (outcome.recheckMs > 0) {
+                handler.postDelayed(recheckRunnable, outcome.recheckMs);
+            }
+            if (!waitingReported && listener != null) {
+                waitingReported = true;
+                listener.onStepWaiting(step.name);
+            }
+        } else {
+            finish(false, outcome.reason);
+        }
+    }
+
+    private void finish(boolean success, String reason) {
+        Listener done = listener;
+        cancel();
+        if (done != null) {
+            done.onFinished(success, reason);
+        }
+    }
+}
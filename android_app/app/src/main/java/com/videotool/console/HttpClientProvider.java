@@ -2,6 +2,8 @@ package com.videotool.console;
 
 import android.content.Context;
 
+import com.videotool.agent.NetworkStack;
+
 import okhttp3.OkHttpClient;
 
 public class HttpClientProvider
@@ -15,11 +17,7 @@ public class HttpClientProvider
             return client;
         }
         cookieJar = new PersistentCookieJar(context.getApplicationContext());
-        client = new OkHttpClient.Builder()
-                .cookieJar(cookieJar)
-                .followRedirects(true)
-                .followSslRedirects(true)
-                .build();
+        client = NetworkStack.session(cookieJar);
         return client;
     }
 
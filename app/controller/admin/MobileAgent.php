@@ -214,6 +214,21 @@ class MobileAgent extends BaseController
             return $this->jsonErr('task_device_mismatch', 403, null, 'common.forbidden');
         }
 
+        $idempotencyKey = $this->resolveIdempotencyKey($payload);
+        $replayed = $this->findReplayedReport('mobile_action_logs', $idempotencyKey, (int) $task->id);
+        if ($replayed !== null) {
+            return $this->jsonOk([
+                'accepted' => true,
+                'task_status' => (int) ($task->task_status ?? 0),
+                'event' => (string) ($replayed['event_type'] ?? ''),
+                'duplicate' => true,
+            ]);
+        }
+
+        if (MobileOutreachService::isReleaseEvent($eventRaw)) {
+            return $this->releaseMobileTask($task, $payload, $deviceId, $tenantId);
+        }
+
         $event = MobileOutreachService::normalizeActionEvent($eventRaw, (string) ($task->task_type ?? ''));
         $nextStatus = MobileOutreachService::mapReportEventToStatus($eventRaw);
         $now = date('Y-m-d H:i:s');
@@ -236,7 +251,8 @@ class MobileAgent extends BaseController
             $screenshotPath,
             $payload,
             $deviceId,
-            $tenantId
+            $tenantId,
+            $idempotencyKey
         ): void {
             $task->device_id = $deviceId;
             $task->task_status = $nextStatus;
@@ -278,6 +294,7 @@ class MobileAgent extends BaseController
                 'duration_ms' => $durationMs,
                 'screenshot_path' => $screenshotPath !== '' ? mb_substr($screenshotPath, 0, 255) : null,
                 'payload_json' => json_encode($payload, JSON_UNESCAPED_UNICODE),
+                'idempotency_key' => $idempotencyKey,
             ]);
 
             if (MobileOutreachService::shouldTouchLastCommentedAt($eventRaw, (string) ($task->task_type ?? ''))) {
@@ -635,7 +652,21 @@ class MobileAgent extends BaseController
             return $this->jsonErr('task_device_mismatch', 403, null, 'common.forbidden');
         }
 
+        $idempotencyKey = $this->resolveIdempotencyKey($payload);
+        $replayed = $this->findReplayedReport('auto_dm_events', $idempotencyKey, (int) $task->id);
+        if ($replayed !== null) {
+            return $this->jsonOk([
+                'accepted' => true,
+                'task_status' => (int) ($task->task_status ?? 0),
+                'event' => (string) ($replayed['event_type'] ?? ''),
+                'duplicate' => true,
+            ]);
+        }
+
         $event = $this->normalizeAutoReportEvent($eventRaw);
+        if ($event === AutoDmService::EVENT_RELEASED) {
+            return $this->releaseAutoTask($task, $payload, $deviceId, $tenantId);
+        }
         $nextStatus = $this->mapAutoReportEventToStatus($event);
         $now = date('Y-m-d H:i:s');
         $renderedText = trim((string) ($payload['rendered_text'] ?? $payload['text'] ?? ''));
@@ -681,7 +712,8 @@ class MobileAgent extends BaseController
             $deliveryStatus,
             $replyDetected,
             $replyAt,
-            $conversationSnippet
+            $conversationSnippet,
+            $idempotencyKey
         ): void {
             $task->device_id = $deviceId;
             $task->task_status = $nextStatus;
@@ -750,6 +782,7 @@ class MobileAgent extends BaseController
                 'duration_ms' => $durationMs,
                 'screenshot_path' => $screenshotPath !== '' ? mb_substr($screenshotPath, 0, 255) : null,
                 'payload_json' => AutoDmService::encodeJson($payload),
+                'idempotency_key' => $idempotencyKey,
             ]);
             if ($replyDetected) {
                 $this->appendAutoEvent([
@@ -909,6 +942,73 @@ class MobileAgent extends BaseController
         ]);
     }
 
+    /**
+     * A released task was leased but never started on the device, so it goes back
+     * to pending without touching completion, error fields or the risk window.
+     * Tasks that already moved past assigned keep their status.
+     *
+     * @param array<string, mixed> $payload
+     */
+    private function releaseMobileTask(MobileActionTaskModel $task, array $payload, int $deviceId, int $tenantId)
+    {
+        $now = date('Y-m-d H:i:s');
+        $reason = trim((string) ($payload['error_code'] ?? ''));
+        $affected = Db::name('mobile_action_tasks')
+            ->where('id', (int) $task->id)
+            ->where('task_status', MobileOutreachService::STATUS_ASSIGNED)
+            ->update([
+                'task_status' => MobileOutreachService::STATUS_PENDING,
+                'device_id' => null,
+                'assigned_at' => null,
+                'updated_at' => $now,
+            ]);
+        $this->appendTaskLog([
+            'tenant_id' => $tenantId,
+            'task_id' => (int) $task->id,
+            'device_id' => $deviceId,
+            'influencer_id' => (int) ($task->influencer_id ?? 0),
+            'event_type' => MobileOutreachService::EVENT_RELEASE,
+            'event_status' => 1,
+            'error_code' => $reason !== '' ? $reason : null,
+            'payload_json' => json_encode($payload, JSON_UNESCAPED_UNICODE),
+            'idempotency_key' => $this->resolveIdempotencyKey($payload),
+        ]);
+
+        return $this->jsonOk([
+            'accepted' => true,
+            'task_status' => (int) $affected > 0 ? MobileOutreachService::STATUS_PENDING : (int) ($task->task_status ?? 0),
+            'event' => MobileOutreachService::EVENT_RELEASE,
+        ]);
+    }
+
+    /**
+     * @param array<string, mixed> $payload
+     */
+    private function releaseAutoTask(AutoDmTaskModel $task, array $payload, int $deviceId, int $tenantId)
+    {
+        $before = (int) ($task->task_status ?? 0);
+        $reason = trim((string) ($payload['error_code'] ?? ''));
+        $this->releaseAutoTaskForRedispatch(['id' => (int) $task->id]);
+        $this->appendAutoEvent([
+            'tenant_id' => $tenantId,
+            'campaign_id' => (int) ($task->campaign_id ?? 0),
+            'task_id' => (int) $task->id,
+            'device_id' => $deviceId,
+            'influencer_id' => (int) ($task->influencer_id ?? 0),
+            'event_type' => AutoDmService::EVENT_RELEASED,
+            'event_status' => 1,
+            'error_code' => $reason !== '' ? $reason : null,
+            'payload_json' => AutoDmService::encodeJson($payload),
+            'idempotency_key' => $this->resolveIdempotencyKey($payload),
+        ]);
+
+        return $this->jsonOk([
+            'accepted' => true,
+            'task_status' => $before === AutoDmService::TASK_STATUS_ASSIGNED ? AutoDmService::TASK_STATUS_PENDING : $before,
+            'event' => AutoDmService::EVENT_RELEASED,
+        ]);
+    }
+
     /**
      * @param mixed $raw
      * @return list<string>
@@ -1212,6 +1312,10 @@ class MobileAgent extends BaseController
             'screenshot_path' => isset($payload['screenshot_path']) && $payload['screenshot_path'] !== null ? mb_substr((string) $payload['screenshot_path'], 0, 255) : null,
             'payload_json' => isset($payload['payload_json']) && $payload['payload_json'] !== null ? (string) $payload['payload_json'] : null,
         ], 'auto_dm_events');
+        $idempotencyKey = (string) ($payload['idempotency_key'] ?? '');
+        if ($idempotencyKey !== '' && $this->columnExists('auto_dm_events', 'idempotency_key')) {
+            $insert['idempotency_key'] = $idempotencyKey;
+        }
         AutoDmEventModel::create($insert);
     }
 
@@ -1236,6 +1340,9 @@ class MobileAgent extends BaseController
         if (in_array($key, [AutoDmService::EVENT_REPLY_STOP, 'reply_stop', 'unsubscribe'], true)) {
             return AutoDmService::EVENT_REPLY_STOP;
         }
+        if (in_array($key, [AutoDmService::EVENT_RELEASED, MobileOutreachService::EVENT_RELEASE, 'released'], true)) {
+            return AutoDmService::EVENT_RELEASED;
+        }
 
         return AutoDmService::EVENT_FAILED;
     }
@@ -1255,6 +1362,9 @@ class MobileAgent extends BaseController
         if ($evt === AutoDmService::EVENT_COOLING) {
             return AutoDmService::TASK_STATUS_COOLING;
         }
+        if ($evt === AutoDmService::EVENT_RELEASED) {
+            return AutoDmService::TASK_STATUS_PENDING;
+        }
 
         return AutoDmService::TASK_STATUS_FAILED;
     }
@@ -1472,9 +1582,44 @@ class MobileAgent extends BaseController
             'screenshot_path' => isset($payload['screenshot_path']) && $payload['screenshot_path'] !== null ? mb_substr((string) $payload['screenshot_path'], 0, 255) : null,
             'payload_json' => isset($payload['payload_json']) && $payload['payload_json'] !== null ? (string) $payload['payload_json'] : null,
         ], 'mobile_action_logs');
+        $idempotencyKey = (string) ($payload['idempotency_key'] ?? '');
+        if ($idempotencyKey !== '' && $this->columnExists('mobile_action_logs', 'idempotency_key')) {
+            $insert['idempotency_key'] = $idempotencyKey;
+        }
         MobileActionLogModel::create($insert);
     }
 
+    private function resolveIdempotencyKey(array $payload): string
+    {
+        $key = trim((string) ($payload['idempotency_key'] ?? ''));
+        if ($key === '') {
+            $key = trim((string) $this->request->header('idempotency-key', ''));
+        }
+
+        return mb_substr($key, 0, 64);
+    }
+
+    /**
+     * The agent resends a report when it never saw the answer (read timeout, 5xx after commit).
+     * The first delivery is recorded with its idempotency key, so a repeat is answered
+     * from that row instead of applying the event a second time.
+     *
+     * @return ?array<string, mixed>
+     */
+    private function findReplayedReport(string $table, string $idempotencyKey, int $taskId): ?array
+    {
+        if ($idempotencyKey === '' || !$this->columnExists($table, 'idempotency_key')) {
+            return null;
+        }
+        $row = Db::name($table)
+            ->where('idempotency_key', $idempotencyKey)
+            ->where('task_id', $taskId)
+            ->field('id,event_type,event_status')
+            ->find();
+
+        return is_array($row) ? $row : null;
+    }
+
     private function applyDeviceRiskWindow(int $deviceId, int $taskStatus, string $now): void
     {
         if (!in_array($taskStatus, [
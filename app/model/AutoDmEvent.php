@@ -23,6 +23,7 @@ class AutoDmEvent extends Model
         'duration_ms' => 'int',
         'screenshot_path' => 'string',
         'payload_json' => 'string',
+        'idempotency_key' => 'string',
         'created_at' => 'datetime',
         'updated_at' => 'datetime',
     ];
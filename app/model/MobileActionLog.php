@@ -22,6 +22,7 @@ class MobileActionLog extends Model
         'duration_ms' => 'int',
         'screenshot_path' => 'string',
         'payload_json' => 'string',
+        'idempotency_key' => 'string',
         'created_at' => 'datetime',
         'updated_at' => 'datetime',
     ];
@@ -35,6 +35,7 @@ class AutoDmService
     public const EVENT_BLOCKED = 'auto_dm_blocked';
     public const EVENT_COOLING = 'auto_dm_cooling';
     public const EVENT_REPLY_STOP = 'auto_dm_reply_stop';
+    public const EVENT_RELEASED = 'auto_dm_released';
     public const EVENT_REPLY_DETECTED = 'auto_dm_reply_detected';
     public const EVENT_REPLY_CONFIRMED = 'auto_dm_reply_confirmed';
 
@@ -22,6 +22,8 @@ class MobileOutreachService
     public const EVENT_COMMENT_SENT = 'comment_sent';
     public const EVENT_DM_PREPARED = 'dm_prepared';
     public const EVENT_IM_PREPARED = 'im_prepared';
+    // An agent hands back a task it leased but never started (stopped, lease ran out).
+    public const EVENT_RELEASE = 'release';
 
     /**
      * @return list<string>
@@ -202,6 +204,9 @@ class MobileOutreachService
     public static function mapReportEventToStatus(string $event): int
     {
         $key = strtolower(trim($event));
+        if (self::isReleaseEvent($key)) {
+            return self::STATUS_PENDING;
+        }
         if (in_array($key, ['prepared', self::EVENT_COMMENT_PREPARED, self::EVENT_DM_PREPARED, self::EVENT_IM_PREPARED], true)) {
             return self::STATUS_PREPARED;
         }
@@ -218,6 +223,11 @@ class MobileOutreachService
         return self::STATUS_FAILED;
     }
 
+    public static function isReleaseEvent(string $event): bool
+    {
+        return in_array(strtolower(trim($event)), [self::EVENT_RELEASE, 'released'], true);
+    }
+
     public static function normalizeActionEvent(string $event, string $taskType): string
     {
         $key = strtolower(trim($event));
@@ -0,0 +1,96 @@
+<?php
+/**
+ * Mobile agent report idempotency migration.
+ * Stores the agent's idempotency_key with each report so a resent report is
+ * answered from the first delivery instead of being applied twice.
+ *
+ * Windows: php database\run_migration_mobile_agent_idempotency.php
+ * Linux:   php database/run_migration_mobile_agent_idempotency.php
+ */
+declare(strict_types=1);
+
+if (php_sapi_name() !== 'cli') {
+    fwrite(STDERR, "Please run this script in CLI.\n");
+    exit(1);
+}
+
+$root = dirname(__DIR__);
+require $root . '/vendor/autoload.php';
+
+if (!function_exists('env')) {
+    function env(?string $name = null, $default = null)
+    {
+        return $default;
+    }
+}
+
+$config = require $root . '/config/database.php';
+$mysql = $config['connections']['mysql'] ?? null;
+if (!$mysql) {
+    fwrite(STDERR, "Missing mysql connection config.\n");
+    exit(1);
+}
+
+$dsn = sprintf(
+    'mysql:host=%s;port=%s;dbname=%s;charset=%s',
+    $mysql['hostname'],
+    $mysql['hostport'],
+    $mysql['database'],
+    $mysql['charset'] ?? 'utf8mb4'
+);
+
+try {
+    $pdo = new PDO($dsn, $mysql['username'], $mysql['password'], [
+        PDO::ATTR_ERRMODE => PDO::ERRMODE_EXCEPTION,
+    ]);
+} catch (PDOException $e) {
+    fwrite(STDERR, 'DB connect failed: ' . $e->getMessage() . "\n");
+    exit(1);
+}
+
+$pdo->exec('SET NAMES utf8mb4');
+$dbName = (string) $mysql['database'];
+
+$hasTable = static function (string $table) use ($pdo, $dbName): bool {
+    $st = $pdo->prepare('SELECT COUNT(*) FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?');
+    $st->execute([$dbName, $table]);
+    return (int) $st->fetchColumn() > 0;
+};
+
+$hasColumn = static function (string $table, string $column) use ($pdo, $dbName): bool {
+    $st = $pdo->prepare('SELECT COUNT(*) FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? AND COLUMN_NAME = ?');
+    $st->execute([$dbName, $table, $column]);
+    return (int) $st->fetchColumn() > 0;
+};
+
+$hasIndex = static function (string $table, string $index) use ($pdo, $dbName): bool {
+    $st = $pdo->prepare('SELECT COUNT(*) FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? AND INDEX_NAME = ?');
+    $st->execute([$dbName, $table, $index]);
+    return (int) $st->fetchColumn() > 0;
+};
+
+$tables = [
+    'mobile_action_logs' => 'run_migration_mobile_outreach.php',
+    'auto_dm_events' => 'run_migration_auto_dm_v1.php',
+];
+$step = 0;
+foreach ($tables as $table => $creator) {
+    $step++;
+    echo "[{$step}/" . count($tables) . "] Check {$table}.idempotency_key...\n";
+    if (!$hasTable($table)) {
+        echo "  - {$table} table not found, please run {$creator} first\n";
+        continue;
+    }
+    if (!$hasColumn($table, 'idempotency_key')) {
+        $pdo->exec("ALTER TABLE `{$table}` ADD COLUMN `idempotency_key` VARCHAR(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci DEFAULT NULL AFTER `payload_json`");
+        echo "  - added {$table}.idempotency_key\n";
+    } else {
+        echo "  - {$table}.idempotency_key exists\n";
+    }
+    if (!$hasIndex($table, 'uk_idempotency_key')) {
+        $pdo->exec("ALTER TABLE `{$table}` ADD UNIQUE INDEX `uk_idempotency_key` (`idempotency_key`)");
+        echo "  - added {$table}.uk_idempotency_key\n";
+    }
+}
+
+echo "Done.\n";